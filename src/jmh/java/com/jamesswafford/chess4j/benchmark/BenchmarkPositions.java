@@ -0,0 +1,43 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.exceptions.ParseException;
+import com.jamesswafford.chess4j.io.FenParser;
+
+
+/**
+ * The standard position set every benchmark runs on: the opening, a busy middle game, two tactical
+ * positions and a pawn endgame.
+ */
+final class BenchmarkPositions {
+
+    static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    static final String TACTICAL = "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1";
+    static final String PROMOTIONS = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+    static final String[] ALL = {START, KIWIPETE, TACTICAL, PROMOTIONS, ENDGAME};
+
+    private BenchmarkPositions() {
+    }
+
+    static Board load(String fen) {
+        Board board = new Board();
+        try {
+            FenParser.setPos(board, fen);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("bad benchmark position: " + fen, e);
+        }
+        return board;
+    }
+
+    static Board[] loadAll() {
+        Board[] boards = new Board[ALL.length];
+        for (int i = 0; i < ALL.length; i++) {
+            boards[i] = load(ALL[i]);
+        }
+        return boards;
+    }
+}
@@ -0,0 +1,26 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.utils.ColdStartBenchmark;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Engine cold start: static table initialization plus the first move generation, measured once in each
+ * of several fresh JVMs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class ColdStartBench {
+
+    @Benchmark
+    public String coldStart() {
+        return ColdStartBenchmark.run();
+    }
+}
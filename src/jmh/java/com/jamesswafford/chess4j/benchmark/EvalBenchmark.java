@@ -0,0 +1,58 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.eval.Eval;
+import com.jamesswafford.chess4j.search.EngineContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Static evaluation of every position one legal move away from the position set, the way quiescence
+ * nodes see it. The pawn hash is warm, as it is during a search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class EvalBenchmark {
+
+    private EngineContext ctx;
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        ctx = new EngineContext();
+        Board[] roots = BenchmarkPositions.loadAll();
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int numBoards = 0;
+        for (Board root : roots) {
+            numBoards += MoveGen.genLegalMoves(root, moves);
+        }
+
+        boards = new Board[numBoards];
+        int ind = 0;
+        for (Board root : roots) {
+            int numMoves = MoveGen.genLegalMoves(root, moves);
+            for (int i = 0; i < numMoves; i++) {
+                Board board = root.deepCopy();
+                board.applyMove(moves[i]);
+                boards[ind++] = board;
+            }
+        }
+    }
+
+    @Benchmark
+    public int eval() {
+        int total = 0;
+        for (Board board : boards) {
+            total += Eval.eval(ctx, board);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,49 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Board.applyMove followed by Board.undoLastMove, for every legal move of every position in the set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class MakeUnmakeBenchmark {
+
+    private Board[] boards;
+    private int[][] moves;
+    private int[] numMoves;
+
+    @Setup
+    public void setUp() {
+        boards = BenchmarkPositions.loadAll();
+        moves = new int[boards.length][MoveGen.MAX_MOVES];
+        numMoves = new int[boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            numMoves[i] = MoveGen.genLegalMoves(boards[i], moves[i]);
+        }
+    }
+
+    @Benchmark
+    public long applyAndUndo() {
+        long keys = 0;
+        for (int i = 0; i < boards.length; i++) {
+            Board board = boards[i];
+            for (int j = 0; j < numMoves[i]; j++) {
+                board.applyMove(moves[i][j]);
+                keys ^= board.getZobristKey();
+                board.undoLastMove();
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,56 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Move generation over the whole position set; one operation generates the moves of every position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class MoveGenBenchmark {
+
+    private Board[] boards;
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+
+    @Setup
+    public void setUp() {
+        boards = BenchmarkPositions.loadAll();
+    }
+
+    @Benchmark
+    public int genPseudoLegalMoves() {
+        int total = 0;
+        for (Board board : boards) {
+            total += MoveGen.genPseudoLegalMoves(board, moves, false);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int genPseudoLegalCaptures() {
+        int total = 0;
+        for (Board board : boards) {
+            total += MoveGen.genPseudoLegalMoves(board, moves, true);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int genLegalMoves() {
+        int total = 0;
+        for (Board board : boards) {
+            total += MoveGen.genLegalMoves(board, moves);
+        }
+        return total;
+    }
+}
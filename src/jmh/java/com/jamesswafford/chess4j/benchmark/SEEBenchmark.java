@@ -0,0 +1,58 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
+import com.jamesswafford.chess4j.search.SEE;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Static exchange evaluation of every legal capture in the tactical positions of the set. SEE expects
+ * the capture to be on the board already, so each operation includes applying and undoing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class SEEBenchmark {
+
+    private Board[] boards;
+    private int[][] captures;
+    private int[] numCaptures;
+
+    @Setup
+    public void setUp() {
+        boards = new Board[]{BenchmarkPositions.load(BenchmarkPositions.KIWIPETE), BenchmarkPositions.load(BenchmarkPositions.TACTICAL), BenchmarkPositions.load(BenchmarkPositions.PROMOTIONS)};
+        captures = new int[boards.length][MoveGen.MAX_MOVES];
+        numCaptures = new int[boards.length];
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        for (int i = 0; i < boards.length; i++) {
+            int numMoves = MoveGen.genLegalMoves(boards[i], moves);
+            for (int j = 0; j < numMoves; j++) {
+                if (PackedMove.isCapture(moves[j])) {
+                    captures[i][numCaptures[i]++] = moves[j];
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int see() {
+        int total = 0;
+        for (int i = 0; i < boards.length; i++) {
+            Board board = boards[i];
+            for (int j = 0; j < numCaptures[i]; j++) {
+                board.applyMove(captures[i][j]);
+                total += SEE.see(board, captures[i][j]);
+                board.undoLastMove();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,53 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.search.EngineContext;
+import com.jamesswafford.chess4j.search.SearchIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Fixed depth iterative search of each position in the set, starting from empty hash tables every time.
+ * The search is deterministic, so a change in the score here is either a change in speed or a change in
+ * the tree searched; the perft and search node counts tell which.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 6, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(3)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int position;
+
+    @Param({"6"})
+    public int depth;
+
+    private EngineContext ctx;
+    private Board board;
+
+    @Setup
+    public void setUp() {
+        ctx = new EngineContext();
+        ctx.setMaxDepth(depth);
+        ctx.setShowThinking(false);
+        // never stop on time
+        ctx.setMaxTime(Integer.MAX_VALUE);
+        board = BenchmarkPositions.load(BenchmarkPositions.ALL[position]);
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) {
+        ctx.getTranspositionTable().clear();
+        ctx.getPawnTranspositionTable().clear();
+        ctx.getKillerMoves().clear();
+        ctx.getHistoryTable().clear();
+        bh.consume(SearchIterator.iterate(ctx, board.deepCopy(), true));
+    }
+}
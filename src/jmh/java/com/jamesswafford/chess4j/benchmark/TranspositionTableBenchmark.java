@@ -0,0 +1,64 @@
+package com.jamesswafford.chess4j.benchmark;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.hash.TranspositionTable;
+import com.jamesswafford.chess4j.hash.TranspositionTableEntryType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Probes and stores on a full size table with random keys, so nearly every access misses the CPU caches
+ * the way it does deep in a search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class TranspositionTableBenchmark {
+
+    private static final int NUM_KEYS = 1 << 16;
+
+    @Param({"8"})
+    public int sizeMB;
+
+    private TranspositionTable table;
+    private final long[] keys = new long[NUM_KEYS];
+    private int move;
+    private int ind;
+
+    @Setup
+    public void setUp() {
+        table = new TranspositionTable(sizeMB, 4);
+        Random r = new Random(1);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keys[i] = r.nextLong();
+        }
+        Board board = new Board();
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        MoveGen.genLegalMoves(board, moves);
+        move = moves[0];
+        // half the keys are in the table
+        for (int i = 0; i < NUM_KEYS; i += 2) {
+            table.store(TranspositionTableEntryType.EXACT_MATCH, keys[i], i & 1023, i & 63, move);
+        }
+    }
+
+    @Benchmark
+    public long probe() {
+        ind = (ind + 1) & (NUM_KEYS - 1);
+        return table.probe(keys[ind]);
+    }
+
+    @Benchmark
+    public void store() {
+        ind = (ind + 1) & (NUM_KEYS - 1);
+        table.store(TranspositionTableEntryType.LOWER_BOUND, keys[ind], ind & 1023, ind & 63, move);
+    }
+}
@@ -2,20 +2,23 @@ package com.jamesswafford.chess4j;
 
 
 import com.jamesswafford.chess4j.book.AbstractOpeningBook;
+import com.jamesswafford.chess4j.book.OpeningBookMappedImpl;
 import com.jamesswafford.chess4j.book.OpeningBookSQLiteImpl;
+import com.jamesswafford.chess4j.hash.PositionCache;
+import com.jamesswafford.chess4j.hash.Zobrist;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.List;
 
 
 public final class ChessEngineApp {
     private static final Log LOGGER = LogFactory.getLog(ChessEngineApp.class);
 
-    private static AbstractOpeningBook openingBook;
-    private static String bookPath = null;
+    private static volatile AbstractOpeningBook openingBook;
     private static String testSuiteFile = null;
     private static int testSuiteTime = 5; // default to five seconds
 
@@ -26,26 +29,61 @@ public final class ChessEngineApp {
         return openingBook;
     }
 
-    private static void initBook() throws Exception {
+    /**
+     * Open the opening book in <bookPath> and use it from now on, in place of the one open before:
+     * a binary book if the path ends in .bin, otherwise an SQLite book, created if it doesn't exist
+     * yet.
+     * <p>
+     * A book built with other Zobrist keys switches the engine to its keys, and with that changes the
+     * key of every position. That is only safe before any game has a board, so with
+     * <keysInUse> such a book is refused instead.
+     *
+     * @return whether the engine's Zobrist keys changed. Boards and tables keyed before then must
+     * be rebuilt.
+     */
+    public static synchronized boolean initBook(String bookPath, boolean keysInUse) throws Exception {
         LOGGER.info("# initializing book: " + bookPath);
 
+        AbstractOpeningBook book;
         File bookFile = new File(bookPath);
-        boolean initBook = !bookFile.exists();
+        if (bookPath.endsWith(".bin")) {
+            book = OpeningBookMappedImpl.open(bookFile);
+        } else {
+            boolean initBook = !bookFile.exists();
 
-        Class.forName("org.sqlite.JDBC");
-        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + bookPath);
-        OpeningBookSQLiteImpl sqlOpeningBook = new OpeningBookSQLiteImpl(conn);
+            Class.forName("org.sqlite.JDBC");
+            Connection conn = DriverManager.getConnection("jdbc:sqlite:" + bookPath);
+            OpeningBookSQLiteImpl sqlOpeningBook = new OpeningBookSQLiteImpl(conn);
 
-        if (initBook) {
-            LOGGER.info("# could not find " + bookPath + ", creating...");
-            sqlOpeningBook.initializeBook();
-            LOGGER.info("# ... finished.");
-        } else {
-            sqlOpeningBook.loadZobristKeys();
+            if (initBook) {
+                LOGGER.info("# could not find " + bookPath + ", creating...");
+                sqlOpeningBook.initializeBook();
+                LOGGER.info("# ... finished.");
+            }
+            book = sqlOpeningBook;
         }
 
-        openingBook = sqlOpeningBook;
+        List<Long> zobristKeys = book.getZobristKeys();
+        boolean keysChanged = zobristKeys != null && !zobristKeys.equals(Zobrist.getAllKeys());
+        if (keysChanged) {
+            if (keysInUse) {
+                book.close();
+                throw new IllegalStateException(bookPath + " was built with other zobrist keys, it can only be opened before any game is started");
+            }
+            LOGGER.info("# opening book was built with other zobrist keys, switching to them");
+            Zobrist.setKeys(zobristKeys);
+            PositionCache positionCache = PositionCache.getInstance();
+            if (positionCache != null) {
+                positionCache.clear();
+            }
+        }
+
+        if (openingBook != null) {
+            openingBook.close();
+        }
+        openingBook = book;
 
         LOGGER.info("# book initialization complete. " + openingBook.getTotalMoveCount() + " moves in book file.");
+        return keysChanged;
     }
 }
@@ -12,7 +12,7 @@ public final class AttackDetector {
     }
 
     /**
-     * Is <sq> attacked by <player>?
+     * Is <sq> attacked by <player>? One attackers-to query against the current occupancy.
      *
      * @param board
      * @param sq
@@ -20,23 +20,7 @@ public final class AttackDetector {
      * @return
      */
     public static boolean attacked(Board board, Square sq, Color player) {
-        if (attackedByPawn(board, sq, player)) {
-            return true;
-        }
-        if (attackedByRook(board, sq, player)) {
-            return true;
-        }
-        if (attackedByKnight(board, sq, player)) {
-            return true;
-        }
-        if (attackedByBishop(board, sq, player)) {
-            return true;
-        }
-        if (attackedByQueen(board, sq, player)) {
-            return true;
-        }
-        return attackedByKing(board, sq, player);
-
+        return getAttackers(board, sq.value(), player, board.getWhitePieces() | board.getBlackPieces()) != 0;
     }
 
     public static boolean attackedByBishop(Board board, Square sq, Color player) {
@@ -74,24 +58,33 @@ public final class AttackDetector {
         return (Magic.getRookMoves(board, sq.value(), player == Color.WHITE ? board.getWhiteRooks() : board.getBlackRooks())) != 0;
     }
 
-    public static long getAttackers(Board board, Square sq, Color color) {
-
-        int sqVal = sq.value();
-        long attackers = Bitboard.knightMoves[sqVal] & (color == Color.WHITE ? board.getWhiteKnights() : board.getBlackKnights());
-        attackers |= Bitboard.kingMoves[sqVal] & Bitboard.squares[board.getKingSquare(color).value()];
-        attackers |= Magic.getRookMoves(board, sqVal, (color == Color.WHITE ? board.getWhiteRooks() : board.getBlackRooks()));
-        attackers |= Magic.getBishopMoves(board, sqVal, (color == Color.WHITE ? board.getWhiteBishops() : board.getBlackBishops()));
-        attackers |= Magic.getQueenMoves(board, sqVal, (color == Color.WHITE ? board.getWhiteQueens() : board.getBlackQueens()));
-
-        if (color == Color.WHITE) {
-            attackers |= ((Bitboard.squares[sqVal] & ~Bitboard.files[File.FILE_A.getValue()]) << 7) & board.getWhitePawns();
-            attackers |= ((Bitboard.squares[sqVal] & ~Bitboard.files[File.FILE_H.getValue()]) << 9) & board.getWhitePawns();
+    /**
+     * The pieces of <color> attacking <sq> if the squares in <occupied> were the occupied ones; pieces
+     * off those squares are treated as gone. Lets a king move be tested with the king already off its
+     * square, so it can't hide behind itself from a slider.
+     */
+    public static long getAttackers(Board board, int sq, Color color, long occupied) {
+        boolean white = color == Color.WHITE;
+        long attackers = Bitboard.knightMoves[sq] & (white ? board.getWhiteKnights() : board.getBlackKnights());
+        attackers |= Bitboard.kingMoves[sq] & Bitboard.squares[board.getKingSquare(color).value()];
+        long rookAttacks = Magic.getRookAttacks(sq, occupied);
+        attackers |= rookAttacks & (white ? board.getWhiteRooks() | board.getWhiteQueens() : board.getBlackRooks() | board.getBlackQueens());
+        long bishopAttacks = Magic.getBishopAttacks(sq, occupied);
+        attackers |= bishopAttacks & (white ? board.getWhiteBishops() | board.getWhiteQueens() : board.getBlackBishops() | board.getBlackQueens());
+
+        if (white) {
+            attackers |= ((Bitboard.squares[sq] & ~Bitboard.files[File.FILE_A.getValue()]) << 7) & board.getWhitePawns();
+            attackers |= ((Bitboard.squares[sq] & ~Bitboard.files[File.FILE_H.getValue()]) << 9) & board.getWhitePawns();
         } else {
-            attackers |= ((Bitboard.squares[sqVal] & ~Bitboard.files[File.FILE_A.getValue()]) >> 9) & board.getBlackPawns();
-            attackers |= ((Bitboard.squares[sqVal] & ~Bitboard.files[File.FILE_H.getValue()]) >> 7) & board.getBlackPawns();
+            attackers |= ((Bitboard.squares[sq] & ~Bitboard.files[File.FILE_A.getValue()]) >> 9) & board.getBlackPawns();
+            attackers |= ((Bitboard.squares[sq] & ~Bitboard.files[File.FILE_H.getValue()]) >> 7) & board.getBlackPawns();
         }
 
-        return attackers;
+        return attackers & occupied;
+    }
+
+    public static long getAttackers(Board board, Square sq, Color color) {
+        return getAttackers(board, sq.value(), color, board.getWhitePieces() | board.getBlackPieces());
     }
 
 }
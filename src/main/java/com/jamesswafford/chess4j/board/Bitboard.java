@@ -12,6 +12,10 @@ public class Bitboard {
     public static long[][] rays = new long[64][8];
     public static long[] knightMoves = new long[64];
     public static long[] kingMoves = new long[64];
+    // squares strictly between two squares on a common rank, file or diagonal; 0 for unaligned squares
+    public static long[][] between = new long[64][64];
+    // the whole rank, file or diagonal through two aligned squares; 0 for unaligned squares
+    public static long[][] line = new long[64][64];
 
     static {
         for (int i = 0; i < 64; i++) {
@@ -53,6 +57,20 @@ public class Bitboard {
         }
     }
 
+    // initialize between and line, from the rays
+    static {
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < 64; j++) {
+                Direction dir = Direction.directionTo[i][j];
+                Direction back = Direction.directionTo[j][i];
+                if (i != j && dir != null) {
+                    between[i][j] = rays[i][dir.value()] & rays[j][back.value()];
+                    line[i][j] = rays[i][dir.value()] | rays[j][back.value()];
+                }
+            }
+        }
+    }
+
     // initialize knight moves
     static {
         for (int i = 0; i < 64; i++) {
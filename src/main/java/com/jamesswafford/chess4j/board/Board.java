@@ -3,6 +3,7 @@ package com.jamesswafford.chess4j.board;
 
 import com.jamesswafford.chess4j.Color;
 import com.jamesswafford.chess4j.board.squares.*;
+import com.jamesswafford.chess4j.eval.Eval;
 import com.jamesswafford.chess4j.hash.Zobrist;
 import com.jamesswafford.chess4j.pieces.*;
 
@@ -11,11 +12,32 @@ import java.util.*;
 
 public final class Board {
 
-    public static final Board INSTANCE = new Board();
-
-    private List<Undo> undoStack = new ArrayList<Undo>();
-    private Map<Square, Piece> pieceMap = new HashMap<Square, Piece>();
-    private Map<Piece, Integer> pieceCountsMap = new HashMap<Piece, Integer>();
+    // the undo stack, kept in parallel primitive arrays so applying a move allocates nothing. the arrays
+    // are only ever grown, for games running past the initial capacity.
+    private static final int INITIAL_UNDO_CAPACITY = 1024;
+    private int numUndos;
+    private int[] undoMoves = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoFiftyCounters = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoCastlingRights = new int[INITIAL_UNDO_CAPACITY];
+    private byte[] undoEPSquares = new byte[INITIAL_UNDO_CAPACITY];
+    private long[] undoZobristKeys = new long[INITIAL_UNDO_CAPACITY];
+    private long[] undoPawnKeys = new long[INITIAL_UNDO_CAPACITY];
+    private int[] undoLastIrreversible = new int[INITIAL_UNDO_CAPACITY];
+    // undo index of the position after the last capture, pawn move or change of castling rights. no
+    // position before it can come back.
+    private int lastIrreversible;
+    // how many keys on the undo stack fall in each slot, by the low bits of the key. a position whose
+    // slot is empty can't have occurred before, which spares the repetition check its loop.
+    private static final int REPETITION_FILTER_MASK = 1023;
+    private short[] repetitionFilter = new short[REPETITION_FILTER_MASK + 1];
+    private final List<Undo> undoView = new UndoView();
+    // piece index (see Piece#getIndex()) on each square, 0 for empty
+    private final byte[] mailbox = new byte[64];
+    private final int[] pieceCounts = new int[13];
+    // running material and piece-square sums, indexed white=0, black=1. see Eval#getMidgamePieceSquareValue.
+    private final int[] nonPawnMaterial = new int[2];
+    private final int[] midgameScores = new int[2];
+    private final int[] endgameScores = new int[2];
     private MyCastlingRights castlingRights = new MyCastlingRights();
     private Color playerToMove;
     private Square epSquare;
@@ -31,7 +53,7 @@ public final class Board {
     private long zobristKey;
     private long pawnKey;
 
-    private Board() {
+    public Board() {
         resetBoard();
     }
 
@@ -63,8 +85,9 @@ public final class Board {
 
     public void addPiece(Piece p, Square s) {
         if (p != null) {
-            pieceMap.put(s, p);
-            pieceCountsMap.put(p, pieceCountsMap.get(p) + 1);
+            mailbox[s.value()] = (byte) p.getIndex();
+            pieceCounts[p.getIndex()]++;
+            updateScores(p, s.value(), 1);
             zobristKey ^= Zobrist.getPieceKey(s, p);
 
             long bb = Bitboard.squares[s.value()];
@@ -100,29 +123,29 @@ public final class Board {
         }
     }
 
-    private void applyKingSpecialCases(Move m) {
+    private void applyKingSpecialCases(Square from, Square to) {
         if (playerToMove.isWhite()) {
-            whiteKingSquare = m.to();
+            whiteKingSquare = to;
             clearCastlingRight(CastlingRights.WHITE_KINGSIDE);
             clearCastlingRight(CastlingRights.WHITE_QUEENSIDE);
-            if (m.from().equals(Square.valueOf(File.FILE_E, Rank.RANK_1))) {
-                if (m.to().equals(Square.valueOf(File.FILE_G, Rank.RANK_1))) {
+            if (from.equals(Square.valueOf(File.FILE_E, Rank.RANK_1))) {
+                if (to.equals(Square.valueOf(File.FILE_G, Rank.RANK_1))) {
                     fiftyCounter = 0;
                     movePiece(Square.valueOf(File.FILE_H, Rank.RANK_1), Square.valueOf(File.FILE_F, Rank.RANK_1));
-                } else if (m.to().equals(Square.valueOf(File.FILE_C, Rank.RANK_1))) {
+                } else if (to.equals(Square.valueOf(File.FILE_C, Rank.RANK_1))) {
                     fiftyCounter = 0;
                     movePiece(Square.valueOf(File.FILE_A, Rank.RANK_1), Square.valueOf(File.FILE_D, Rank.RANK_1));
                 }
             }
         } else {
-            blackKingSquare = m.to();
+            blackKingSquare = to;
             clearCastlingRight(CastlingRights.BLACK_KINGSIDE);
             clearCastlingRight(CastlingRights.BLACK_QUEENSIDE);
-            if (m.from().equals(Square.valueOf(File.FILE_E, Rank.RANK_8))) {
-                if (m.to().equals(Square.valueOf(File.FILE_G, Rank.RANK_8))) {
+            if (from.equals(Square.valueOf(File.FILE_E, Rank.RANK_8))) {
+                if (to.equals(Square.valueOf(File.FILE_G, Rank.RANK_8))) {
                     fiftyCounter = 0;
                     movePiece(Square.valueOf(File.FILE_H, Rank.RANK_8), Square.valueOf(File.FILE_F, Rank.RANK_8));
-                } else if (m.to().equals(Square.valueOf(File.FILE_C, Rank.RANK_8))) {
+                } else if (to.equals(Square.valueOf(File.FILE_C, Rank.RANK_8))) {
                     fiftyCounter = 0;
                     movePiece(Square.valueOf(File.FILE_A, Rank.RANK_8), Square.valueOf(File.FILE_D, Rank.RANK_8));
                 }
@@ -131,97 +154,111 @@ public final class Board {
     }
 
     public void applyMove(Move m) {
+        applyMove(PackedMove.fromMove(this, m));
+    }
+
+    /**
+     * Apply a move encoded as a {@link PackedMove}.
+     */
+    public void applyMove(int mv) {
         assert (verify());
-        undoStack.add(new Undo(m, fiftyCounter, castlingRights.getValue(), epSquare, zobristKey));
+        pushUndo(mv);
+
+        Square from = Square.valueOf(PackedMove.from(mv));
+        Square to = Square.valueOf(PackedMove.to(mv));
 
         moveCounter++;
-        if (m.captured() == null) {
+        if (!PackedMove.isCapture(mv)) {
             // note: fifty counter may still get set to 0
             fiftyCounter++;
         } else {
             fiftyCounter = 0;
-            if (m.to().equals(Square.valueOf(File.FILE_H, Rank.RANK_1))) {
+            if (to.equals(Square.valueOf(File.FILE_H, Rank.RANK_1))) {
                 clearCastlingRight(CastlingRights.WHITE_KINGSIDE);
-            } else if (m.to().equals(Square.valueOf(File.FILE_A, Rank.RANK_1))) {
+            } else if (to.equals(Square.valueOf(File.FILE_A, Rank.RANK_1))) {
                 clearCastlingRight(CastlingRights.WHITE_QUEENSIDE);
             }
-            if (m.to().equals(Square.valueOf(File.FILE_H, Rank.RANK_8))) {
+            if (to.equals(Square.valueOf(File.FILE_H, Rank.RANK_8))) {
                 clearCastlingRight(CastlingRights.BLACK_KINGSIDE);
-            } else if (m.to().equals(Square.valueOf(File.FILE_A, Rank.RANK_8))) {
+            } else if (to.equals(Square.valueOf(File.FILE_A, Rank.RANK_8))) {
                 clearCastlingRight(CastlingRights.BLACK_QUEENSIDE);
             }
         }
 
-        Piece p = clearSquare(m.from());
+        Piece p = clearSquare(from);
         Square oldEPSquare = clearEPSquare();
 
         if (p instanceof Pawn) {
-            applyPawnMove(p, m, oldEPSquare);
+            applyPawnMove(p, from, to, PackedMove.getPiece(PackedMove.promotion(mv)), oldEPSquare);
         } else {
-            if (m.captured() != null) {
-                clearSquare(m.to());
+            if (PackedMove.isCapture(mv)) {
+                clearSquare(to);
             }
-            addPiece(p, m.to());
+            addPiece(p, to);
             if (p instanceof King) {
-                applyKingSpecialCases(m);
+                applyKingSpecialCases(from, to);
             } else if (p instanceof Rook) {
-                applyRookSpecialCases(m);
+                applyRookSpecialCases(from);
             }
         }
 
+        if (p instanceof Pawn || PackedMove.isCapture(mv) || castlingRights.getValue() != undoCastlingRights[numUndos - 1]) {
+            lastIrreversible = numUndos;
+        }
+
         swapPlayer();
         assert (verify());
     }
 
-    private void applyPawnMove(Piece p, Move m, Square oldEPSquare) {
+    private void applyPawnMove(Piece p, Square from, Square to, Piece promotion, Square oldEPSquare) {
         fiftyCounter = 0;
         if (p.isWhite()) {
-            if (m.from().rank().equals(Rank.RANK_2) && m.to().rank().equals(Rank.RANK_4)) {
-                addPiece(p, m.to());
-                epSquare = Square.valueOf(m.to().file(), m.to().rank().south());
+            if (from.rank().equals(Rank.RANK_2) && to.rank().equals(Rank.RANK_4)) {
+                addPiece(p, to);
+                epSquare = Square.valueOf(to.file(), to.rank().south());
                 zobristKey ^= Zobrist.getEnPassantKey(epSquare);
-            } else if (m.to().equals(oldEPSquare)) {
+            } else if (to.equals(oldEPSquare)) {
                 clearSquare(Square.valueOf(oldEPSquare.file(), oldEPSquare.rank().south()));
-                addPiece(p, m.to());
-            } else if (m.to().rank().equals(Rank.RANK_8)) {
-                clearSquare(m.to());
-                addPiece(m.promotion(), m.to());
+                addPiece(p, to);
+            } else if (to.rank().equals(Rank.RANK_8)) {
+                clearSquare(to);
+                addPiece(promotion, to);
             } else {
-                clearSquare(m.to());
-                addPiece(p, m.to());
+                clearSquare(to);
+                addPiece(p, to);
             }
         } else {
-            if (m.from().rank().equals(Rank.RANK_7) && m.to().rank().equals(Rank.RANK_5)) {
-                addPiece(p, m.to());
-                epSquare = Square.valueOf(m.to().file(), m.to().rank().north());
+            if (from.rank().equals(Rank.RANK_7) && to.rank().equals(Rank.RANK_5)) {
+                addPiece(p, to);
+                epSquare = Square.valueOf(to.file(), to.rank().north());
                 zobristKey ^= Zobrist.getEnPassantKey(epSquare);
-            } else if (m.to().equals(oldEPSquare)) {
+            } else if (to.equals(oldEPSquare)) {
                 clearSquare(Square.valueOf(oldEPSquare.file(), oldEPSquare.rank().north()));
-                addPiece(p, m.to());
-            } else if (m.to().rank().equals(Rank.RANK_1)) {
-                clearSquare(m.to());
-                addPiece(m.promotion(), m.to());
+                addPiece(p, to);
+            } else if (to.rank().equals(Rank.RANK_1)) {
+                clearSquare(to);
+                addPiece(promotion, to);
             } else {
-                clearSquare(m.to());
-                addPiece(p, m.to());
+                clearSquare(to);
+                addPiece(p, to);
             }
         }
     }
 
-    private void applyRookSpecialCases(Move m) {
+    private void applyRookSpecialCases(Square from) {
         if (playerToMove.isWhite()) {
-            if (m.from().equals(Square.valueOf(File.FILE_H, Rank.RANK_1))) {
+            if (from.equals(Square.valueOf(File.FILE_H, Rank.RANK_1))) {
                 fiftyCounter = 0;
                 clearCastlingRight(CastlingRights.WHITE_KINGSIDE);
-            } else if (m.from().equals(Square.valueOf(File.FILE_A, Rank.RANK_1))) {
+            } else if (from.equals(Square.valueOf(File.FILE_A, Rank.RANK_1))) {
                 fiftyCounter = 0;
                 clearCastlingRight(CastlingRights.WHITE_QUEENSIDE);
             }
         } else {
-            if (m.from().equals(Square.valueOf(File.FILE_H, Rank.RANK_8))) {
+            if (from.equals(Square.valueOf(File.FILE_H, Rank.RANK_8))) {
                 fiftyCounter = 0;
                 clearCastlingRight(CastlingRights.BLACK_KINGSIDE);
-            } else if (m.from().equals(Square.valueOf(File.FILE_A, Rank.RANK_8))) {
+            } else if (from.equals(Square.valueOf(File.FILE_A, Rank.RANK_8))) {
                 fiftyCounter = 0;
                 clearCastlingRight(CastlingRights.BLACK_QUEENSIDE);
             }
@@ -282,18 +319,20 @@ public final class Board {
             clearCastlingRight(cr);
         }
         fiftyCounter = 0;
-        undoStack.clear();
-
-        assert (pieceCountsMap.get(Pawn.WHITE_PAWN) == 0);
-        assert (pieceCountsMap.get(Pawn.BLACK_PAWN) == 0);
-        assert (pieceCountsMap.get(Queen.WHITE_QUEEN) == 0);
-        assert (pieceCountsMap.get(Queen.BLACK_QUEEN) == 0);
-        assert (pieceCountsMap.get(Rook.WHITE_ROOK) == 0);
-        assert (pieceCountsMap.get(Rook.BLACK_ROOK) == 0);
-        assert (pieceCountsMap.get(Knight.WHITE_KNIGHT) == 0);
-        assert (pieceCountsMap.get(Knight.BLACK_KNIGHT) == 0);
-        assert (pieceCountsMap.get(Bishop.WHITE_BISHOP) == 0);
-        assert (pieceCountsMap.get(Bishop.BLACK_BISHOP) == 0);
+        numUndos = 0;
+        lastIrreversible = 0;
+        Arrays.fill(repetitionFilter, (short) 0);
+
+        assert (getNumPieces(Pawn.WHITE_PAWN) == 0);
+        assert (getNumPieces(Pawn.BLACK_PAWN) == 0);
+        assert (getNumPieces(Queen.WHITE_QUEEN) == 0);
+        assert (getNumPieces(Queen.BLACK_QUEEN) == 0);
+        assert (getNumPieces(Rook.WHITE_ROOK) == 0);
+        assert (getNumPieces(Rook.BLACK_ROOK) == 0);
+        assert (getNumPieces(Knight.WHITE_KNIGHT) == 0);
+        assert (getNumPieces(Knight.BLACK_KNIGHT) == 0);
+        assert (getNumPieces(Bishop.WHITE_BISHOP) == 0);
+        assert (getNumPieces(Bishop.BLACK_BISHOP) == 0);
     }
 
     public void clearCastlingRight(CastlingRights castlingRight) {
@@ -331,11 +370,23 @@ public final class Board {
         return sq;
     }
 
+    private void updateScores(Piece p, int sq, int sign) {
+        int side = p.isWhite() ? 0 : 1;
+        int ind = p.getIndex();
+        midgameScores[side] += sign * Eval.getMidgamePieceSquareValue(ind, sq);
+        endgameScores[side] += sign * Eval.getEndgamePieceSquareValue(ind, sq);
+        int type = p.getType();
+        if (type != Piece.PAWN && type != Piece.KING) {
+            nonPawnMaterial[side] += sign * Eval.getPieceValue(type);
+        }
+    }
+
     private Piece clearSquare(Square s) {
         Piece p = getPiece(s);
         if (p != null) {
-            pieceMap.remove(s);
-            pieceCountsMap.put(p, pieceCountsMap.get(p) - 1);
+            mailbox[s.value()] = 0;
+            pieceCounts[p.getIndex()]--;
+            updateScores(p, s.value(), -1);
             zobristKey ^= Zobrist.getPieceKey(s, p);
             long bb = Bitboard.squares[s.value()];
             if (p.isWhite()) {
@@ -373,12 +424,21 @@ public final class Board {
 
     public synchronized Board deepCopy() {
         Board b = new Board();
-        b.undoStack.clear();
-        b.undoStack.addAll(undoStack);
-        b.pieceMap.clear();
-        for (Square sq : pieceMap.keySet()) {
-            b.pieceMap.put(sq, pieceMap.get(sq));
-        }
+        b.numUndos = numUndos;
+        b.undoMoves = Arrays.copyOf(undoMoves, undoMoves.length);
+        b.undoFiftyCounters = Arrays.copyOf(undoFiftyCounters, undoFiftyCounters.length);
+        b.undoCastlingRights = Arrays.copyOf(undoCastlingRights, undoCastlingRights.length);
+        b.undoEPSquares = Arrays.copyOf(undoEPSquares, undoEPSquares.length);
+        b.undoZobristKeys = Arrays.copyOf(undoZobristKeys, undoZobristKeys.length);
+        b.undoPawnKeys = Arrays.copyOf(undoPawnKeys, undoPawnKeys.length);
+        b.undoLastIrreversible = Arrays.copyOf(undoLastIrreversible, undoLastIrreversible.length);
+        b.lastIrreversible = lastIrreversible;
+        System.arraycopy(repetitionFilter, 0, b.repetitionFilter, 0, repetitionFilter.length);
+        System.arraycopy(mailbox, 0, b.mailbox, 0, mailbox.length);
+        System.arraycopy(pieceCounts, 0, b.pieceCounts, 0, pieceCounts.length);
+        System.arraycopy(nonPawnMaterial, 0, b.nonPawnMaterial, 0, 2);
+        System.arraycopy(midgameScores, 0, b.midgameScores, 0, 2);
+        System.arraycopy(endgameScores, 0, b.endgameScores, 0, 2);
         b.castlingRights.setValue(castlingRights.getValue());
         b.playerToMove = playerToMove;
         b.epSquare = epSquare;
@@ -400,17 +460,14 @@ public final class Board {
         b.moveCounter = moveCounter;
         b.zobristKey = zobristKey;
         b.pawnKey = pawnKey;
-        for (Piece p : pieceCountsMap.keySet()) {
-            b.pieceCountsMap.put(p, pieceCountsMap.get(p));
-        }
         return b;
     }
 
     public boolean equalExceptMoveHistory(Board otherBoard, boolean strict) {
-        if (!this.pieceMap.equals(otherBoard.pieceMap)) {
+        if (!Arrays.equals(this.mailbox, otherBoard.mailbox)) {
             return false;
         }
-        if (!this.pieceCountsMap.equals(otherBoard.pieceCountsMap)) {
+        if (!Arrays.equals(this.pieceCounts, otherBoard.pieceCounts)) {
             return false;
         }
         if (!this.castlingRights.equals(otherBoard.castlingRights)) {
@@ -500,7 +557,15 @@ public final class Board {
         if (!equalExceptMoveHistory(that, true)) {
             return false;
         }
-        return this.undoStack.equals(that.undoStack);
+        if (this.numUndos != that.numUndos) {
+            return false;
+        }
+        for (int i = 0; i < numUndos; i++) {
+            if (this.undoMoves[i] != that.undoMoves[i] || this.undoFiftyCounters[i] != that.undoFiftyCounters[i] || this.undoCastlingRights[i] != that.undoCastlingRights[i] || this.undoEPSquares[i] != that.undoEPSquares[i] || this.undoZobristKeys[i] != that.undoZobristKeys[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private Square findKingSquare(King kingSquare) {
@@ -520,16 +585,15 @@ public final class Board {
     public void flipVertical() {
 
         List<Square> squares = Square.allSquares();
-        Map<Square, Piece> myPieceMap = new HashMap<Square, Piece>();
+        Piece[] myPieces = new Piece[squares.size()];
         // remove pieces, remembering where they were
         for (Square sq : squares) {
-            Piece p = clearSquare(sq);
-            myPieceMap.put(sq, p);
+            myPieces[sq.value()] = clearSquare(sq);
         }
 
         // now flip them around
         for (Square sq : squares) {
-            Piece p = myPieceMap.get(sq);
+            Piece p = myPieces[sq.value()];
             if (p != null) {
                 addPiece(p.getOppositeColorPiece(), sq.flipVertical());
             }
@@ -592,7 +656,28 @@ public final class Board {
     }
 
     public int getNumPieces(Piece p) {
-        return pieceCountsMap.get(p);
+        return pieceCounts[p.getIndex()];
+    }
+
+    /**
+     * @return the material <player> has in knights, bishops, rooks and queens
+     */
+    public int getNonPawnMaterial(Color player) {
+        return nonPawnMaterial[player.isWhite() ? 0 : 1];
+    }
+
+    /**
+     * @return material plus middle game piece-square values of <player>'s pieces
+     */
+    public int getMidgameScore(Color player) {
+        return midgameScores[player.isWhite() ? 0 : 1];
+    }
+
+    /**
+     * @return material plus endgame piece-square values of <player>'s pieces
+     */
+    public int getEndgameScore(Color player) {
+        return endgameScores[player.isWhite() ? 0 : 1];
     }
 
     public long getPawnKey() {
@@ -601,15 +686,74 @@ public final class Board {
     }
 
     public Piece getPiece(Square square) {
-        return pieceMap.get(square);
+        return PackedMove.getPiece(mailbox[square.value()]);
+    }
+
+    /**
+     * @return the index (see {@link Piece#getIndex()}) of the piece on <square>, 0 if it is empty
+     */
+    public int getPieceIndex(int square) {
+        return mailbox[square];
     }
 
     public Color getPlayerToMove() {
         return playerToMove;
     }
 
+    /**
+     * @return a read only view of the undo stack. The {@link Undo} records are created on access, so
+     * hot code should prefer {@link #getNumUndos()}, {@link #getUndoMove(int)} and
+     * {@link #getUndoZobristKey(int)}.
+     */
     public List<Undo> getUndos() {
-        return Collections.unmodifiableList(undoStack);
+        return undoView;
+    }
+
+    public int getNumUndos() {
+        return numUndos;
+    }
+
+    /**
+     * @return how many moves of the game history the repetition check looks at: the moves played since
+     * the last capture, pawn move or change of castling rights
+     */
+    public int getNumReversibleMoves() {
+        return numUndos - lastIrreversible;
+    }
+
+    /**
+     * @return how many times the current position occurred before. Only positions since the last
+     * capture, pawn move or change of castling rights can repeat, and only every second one of them
+     * has the same side to move.
+     */
+    public int getNumRepetitions() {
+        if (repetitionFilter[(int) zobristKey & REPETITION_FILTER_MASK] == 0) {
+            return 0;
+        }
+
+        int visits = 0;
+        for (int i = numUndos - 2; i >= lastIrreversible; i -= 2) {
+            if (undoZobristKeys[i] == zobristKey) {
+                visits++;
+            }
+        }
+        return visits;
+    }
+
+    /**
+     * @return the {@link PackedMove} applied by undo entry <ind>
+     */
+    public int getUndoMove(int ind) {
+        assert (ind >= 0 && ind < numUndos);
+        return undoMoves[ind];
+    }
+
+    /**
+     * @return the zobrist key of the position before undo entry <ind>'s move was applied
+     */
+    public long getUndoZobristKey(int ind) {
+        assert (ind >= 0 && ind < numUndos);
+        return undoZobristKeys[ind];
     }
 
     private Square getWhiteKingSquare() {
@@ -640,13 +784,16 @@ public final class Board {
     @Override
     public int hashCode() {
         int hash = hashCodeWithoutMoveHistory(true);
-        hash = hash * 31 + undoStack.hashCode();
+        for (int i = 0; i < numUndos; i++) {
+            hash = hash * 31 + undoMoves[i];
+            hash = hash * 17 + (int) (undoZobristKeys[i] ^ (undoZobristKeys[i] >>> 32));
+        }
 
         return hash;
     }
 
     public int hashCodeWithoutMoveHistory(boolean strict) {
-        int hash = pieceMap.hashCode();
+        int hash = Arrays.hashCode(mailbox);
         hash = hash * 17 + castlingRights.hashCode();
         hash = hash * 13 + playerToMove.hashCode();
         hash = hash * 31 + (epSquare == null ? 0 : epSquare.hashCode());
@@ -673,15 +820,15 @@ public final class Board {
     }
 
     public boolean isEmpty(Square square) {
-        return pieceMap.get(square) == null;
+        return mailbox[square.value()] == 0;
     }
 
     public boolean isOpponentInCheck() {
-        return AttackDetector.attacked(this, getKingSquare(Color.swap(playerToMove)), playerToMove);
+        return AttackDetector.getAttackers(this, getKingSquare(Color.swap(playerToMove)).value(), playerToMove, whitePieces | blackPieces) != 0;
     }
 
     public boolean isPlayerInCheck() {
-        return AttackDetector.attacked(this, getKingSquare(playerToMove), Color.swap(playerToMove));
+        return AttackDetector.getAttackers(this, getKingSquare(playerToMove).value(), Color.swap(playerToMove), whitePieces | blackPieces) != 0;
     }
 
     public void movePiece(Square from, Square to) {
@@ -692,20 +839,14 @@ public final class Board {
     }
 
     public void resetBoard() {
-        undoStack.clear();
-        pieceMap.clear();
-        pieceCountsMap.put(Queen.WHITE_QUEEN, 0);
-        pieceCountsMap.put(Queen.BLACK_QUEEN, 0);
-        pieceCountsMap.put(Rook.WHITE_ROOK, 0);
-        pieceCountsMap.put(Rook.BLACK_ROOK, 0);
-        pieceCountsMap.put(Knight.WHITE_KNIGHT, 0);
-        pieceCountsMap.put(Knight.BLACK_KNIGHT, 0);
-        pieceCountsMap.put(Bishop.WHITE_BISHOP, 0);
-        pieceCountsMap.put(Bishop.BLACK_BISHOP, 0);
-        pieceCountsMap.put(King.WHITE_KING, 0);
-        pieceCountsMap.put(King.BLACK_KING, 0);
-        pieceCountsMap.put(Pawn.WHITE_PAWN, 0);
-        pieceCountsMap.put(Pawn.BLACK_PAWN, 0);
+        numUndos = 0;
+        lastIrreversible = 0;
+        Arrays.fill(repetitionFilter, (short) 0);
+        Arrays.fill(mailbox, (byte) 0);
+        Arrays.fill(pieceCounts, 0);
+        Arrays.fill(nonPawnMaterial, 0);
+        Arrays.fill(midgameScores, 0);
+        Arrays.fill(endgameScores, 0);
 
         whitePawns = blackPawns = 0;
         whiteKnights = blackKnights = 0;
@@ -775,79 +916,109 @@ public final class Board {
         zobristKey ^= Zobrist.getPlayerKey(playerToMove);
     }
 
-    private void undoKingMove(Undo u, Piece p) {
+    private void undoKingMove(Square from, Square to, Piece p) {
         if (p.isWhite()) {
-            whiteKingSquare = u.getMove().from();
-            if (u.getMove().from().equals(Square.valueOf(File.FILE_E, Rank.RANK_1))) {
-                if (u.getMove().to().equals(Square.valueOf(File.FILE_G, Rank.RANK_1))) {
+            whiteKingSquare = from;
+            if (from.equals(Square.valueOf(File.FILE_E, Rank.RANK_1))) {
+                if (to.equals(Square.valueOf(File.FILE_G, Rank.RANK_1))) {
                     movePiece(Square.valueOf(File.FILE_F, Rank.RANK_1), Square.valueOf(File.FILE_H, Rank.RANK_1));
-                } else if (u.getMove().to().equals(Square.valueOf(File.FILE_C, Rank.RANK_1))) {
+                } else if (to.equals(Square.valueOf(File.FILE_C, Rank.RANK_1))) {
                     movePiece(Square.valueOf(File.FILE_D, Rank.RANK_1), Square.valueOf(File.FILE_A, Rank.RANK_1));
                 }
             }
         } else {
-            blackKingSquare = u.getMove().from();
-            if (u.getMove().from().equals(Square.valueOf(File.FILE_E, Rank.RANK_8))) {
-                if (u.getMove().to().equals(Square.valueOf(File.FILE_G, Rank.RANK_8))) {
+            blackKingSquare = from;
+            if (from.equals(Square.valueOf(File.FILE_E, Rank.RANK_8))) {
+                if (to.equals(Square.valueOf(File.FILE_G, Rank.RANK_8))) {
                     movePiece(Square.valueOf(File.FILE_F, Rank.RANK_8), Square.valueOf(File.FILE_H, Rank.RANK_8));
-                } else if (u.getMove().to().equals(Square.valueOf(File.FILE_C, Rank.RANK_8))) {
+                } else if (to.equals(Square.valueOf(File.FILE_C, Rank.RANK_8))) {
                     movePiece(Square.valueOf(File.FILE_D, Rank.RANK_8), Square.valueOf(File.FILE_A, Rank.RANK_8));
                 }
             }
         }
     }
 
+    private void pushUndo(int mv) {
+        if (numUndos == undoMoves.length) {
+            int newCapacity = numUndos * 2;
+            undoMoves = Arrays.copyOf(undoMoves, newCapacity);
+            undoFiftyCounters = Arrays.copyOf(undoFiftyCounters, newCapacity);
+            undoCastlingRights = Arrays.copyOf(undoCastlingRights, newCapacity);
+            undoEPSquares = Arrays.copyOf(undoEPSquares, newCapacity);
+            undoZobristKeys = Arrays.copyOf(undoZobristKeys, newCapacity);
+            undoPawnKeys = Arrays.copyOf(undoPawnKeys, newCapacity);
+            undoLastIrreversible = Arrays.copyOf(undoLastIrreversible, newCapacity);
+        }
+        undoMoves[numUndos] = mv;
+        undoFiftyCounters[numUndos] = fiftyCounter;
+        undoCastlingRights[numUndos] = castlingRights.getValue();
+        undoEPSquares[numUndos] = (byte) (epSquare == null ? -1 : epSquare.value());
+        undoZobristKeys[numUndos] = zobristKey;
+        undoPawnKeys[numUndos] = pawnKey;
+        undoLastIrreversible[numUndos] = lastIrreversible;
+        repetitionFilter[(int) zobristKey & REPETITION_FILTER_MASK]++;
+        numUndos++;
+    }
+
     public void undoLastMove() {
         assert (verify());
-        assert (undoStack.size() > 0);
-        int ind = undoStack.size() - 1;
-        Undo u = undoStack.remove(ind);
+        assert (numUndos > 0);
+        int ind = --numUndos;
         swapPlayer();
-        epSquare = u.getEpSquare();
+        epSquare = undoEPSquares[ind] < 0 ? null : Square.valueOf(undoEPSquares[ind]);
         moveCounter--;
-        fiftyCounter = u.getFiftyCounter();
-        castlingRights.setValue(u.getCastlingRights());
+        fiftyCounter = undoFiftyCounters[ind];
+        castlingRights.setValue(undoCastlingRights[ind]);
+
+        int mv = undoMoves[ind];
+        Square from = Square.valueOf(PackedMove.from(mv));
+        Square to = Square.valueOf(PackedMove.to(mv));
+        Piece captured = PackedMove.getPiece(PackedMove.captured(mv));
 
-        Piece p = clearSquare(u.getMove().to());
-        if (u.getMove().promotion() != null) {
-            undoPromotion(u);
+        Piece p = clearSquare(to);
+        if (PackedMove.isPromotion(mv)) {
+            undoPromotion(from, to, captured);
         } else if (p instanceof Pawn) {
-            undoPawnMove(u, p);
+            undoPawnMove(from, to, captured, p);
         } else {
             if (p instanceof King) {
-                undoKingMove(u, p);
+                undoKingMove(from, to, p);
             }
-            addPiece(u.getMove().captured(), u.getMove().to());
-            addPiece(p, u.getMove().from());
+            addPiece(captured, to);
+            addPiece(p, from);
         }
 
-        zobristKey = u.getZobristKey();
+        zobristKey = undoZobristKeys[ind];
+        lastIrreversible = undoLastIrreversible[ind];
+        repetitionFilter[(int) zobristKey & REPETITION_FILTER_MASK]--;
+        assert (pawnKey == undoPawnKeys[ind]);
+        pawnKey = undoPawnKeys[ind];
         assert (verify());
     }
 
-    private void undoPawnMove(Undo u, Piece p) {
+    private void undoPawnMove(Square from, Square to, Piece captured, Piece p) {
         if (p.isWhite()) {
-            if (u.getMove().to().equals(epSquare)) {
-                addPiece(u.getMove().captured(), Square.valueOf(epSquare.file(), epSquare.rank().south()));
-                addPiece(p, u.getMove().from());
+            if (to.equals(epSquare)) {
+                addPiece(captured, Square.valueOf(epSquare.file(), epSquare.rank().south()));
+                addPiece(p, from);
             } else {
-                addPiece(u.getMove().captured(), u.getMove().to());
-                addPiece(p, u.getMove().from());
+                addPiece(captured, to);
+                addPiece(p, from);
             }
         } else {
-            if (u.getMove().to().equals(epSquare)) {
-                addPiece(u.getMove().captured(), Square.valueOf(epSquare.file(), epSquare.rank().north()));
-                addPiece(p, u.getMove().from());
+            if (to.equals(epSquare)) {
+                addPiece(captured, Square.valueOf(epSquare.file(), epSquare.rank().north()));
+                addPiece(p, from);
             } else {
-                addPiece(u.getMove().captured(), u.getMove().to());
-                addPiece(p, u.getMove().from());
+                addPiece(captured, to);
+                addPiece(p, from);
             }
         }
     }
 
-    private void undoPromotion(Undo u) {
-        addPiece(u.getMove().captured(), u.getMove().to());
-        addPiece(playerToMove.equals(Color.WHITE) ? Pawn.WHITE_PAWN : Pawn.BLACK_PAWN, u.getMove().from());
+    private void undoPromotion(Square from, Square to, Piece captured) {
+        addPiece(captured, to);
+        addPiece(playerToMove.equals(Color.WHITE) ? Pawn.WHITE_PAWN : Pawn.BLACK_PAWN, from);
     }
 
     private boolean whiteCanCastleKingSide() {
@@ -980,16 +1151,16 @@ public final class Board {
         assert (whitePieces == myWhitePieces);
         assert (blackPieces == myBlackPieces);
 
-        assert (pieceCountsMap.get(Pawn.WHITE_PAWN) == numWhitePawns);
-        assert (pieceCountsMap.get(Pawn.BLACK_PAWN) == numBlackPawns);
-        assert (pieceCountsMap.get(Knight.WHITE_KNIGHT) == numWhiteKnights);
-        assert (pieceCountsMap.get(Knight.BLACK_KNIGHT) == numBlackKnights);
-        assert (pieceCountsMap.get(Bishop.WHITE_BISHOP) == numWhiteBishops);
-        assert (pieceCountsMap.get(Bishop.BLACK_BISHOP) == numBlackBishops);
-        assert (pieceCountsMap.get(Rook.WHITE_ROOK) == numWhiteRooks);
-        assert (pieceCountsMap.get(Rook.BLACK_ROOK) == numBlackRooks);
-        assert (pieceCountsMap.get(Queen.WHITE_QUEEN) == numWhiteQueens);
-        assert (pieceCountsMap.get(Queen.BLACK_QUEEN) == numBlackQueens);
+        assert (getNumPieces(Pawn.WHITE_PAWN) == numWhitePawns);
+        assert (getNumPieces(Pawn.BLACK_PAWN) == numBlackPawns);
+        assert (getNumPieces(Knight.WHITE_KNIGHT) == numWhiteKnights);
+        assert (getNumPieces(Knight.BLACK_KNIGHT) == numBlackKnights);
+        assert (getNumPieces(Bishop.WHITE_BISHOP) == numWhiteBishops);
+        assert (getNumPieces(Bishop.BLACK_BISHOP) == numBlackBishops);
+        assert (getNumPieces(Rook.WHITE_ROOK) == numWhiteRooks);
+        assert (getNumPieces(Rook.BLACK_ROOK) == numBlackRooks);
+        assert (getNumPieces(Queen.WHITE_QUEEN) == numWhiteQueens);
+        assert (getNumPieces(Queen.BLACK_QUEEN) == numBlackQueens);
 
         return true;
     }
@@ -1042,6 +1213,22 @@ public final class Board {
         return blackPieces;
     }
 
+    private final class UndoView extends AbstractList<Undo> {
+        @Override
+        public Undo get(int ind) {
+            if (ind < 0 || ind >= numUndos) {
+                throw new IndexOutOfBoundsException("undo index: " + ind + ", size: " + numUndos);
+            }
+            Square ep = undoEPSquares[ind] < 0 ? null : Square.valueOf(undoEPSquares[ind]);
+            return new Undo(undoMoves[ind], undoFiftyCounters[ind], undoCastlingRights[ind], ep, undoZobristKeys[ind]);
+        }
+
+        @Override
+        public int size() {
+            return numUndos;
+        }
+    }
+
 }
 
 
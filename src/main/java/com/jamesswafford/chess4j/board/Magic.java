@@ -1,327 +1,202 @@
 package com.jamesswafford.chess4j.board;
 
 
-import com.jamesswafford.chess4j.board.squares.*;
-import com.jamesswafford.chess4j.utils.BoardUtils;
-
-import java.util.Random;
-
-
+/**
+ * Slider attacks through "fancy" magic bitboards. The relevant blockers of a square are multiplied by
+ * a fixed magic number; the top bits of the product index that square's slice of one flattened attack
+ * table per slider type.
+ * <p>
+ * The magic numbers were found offline by a seeded random search for this board's square numbering
+ * (A8 = 0 ... H1 = 63), using the full mask width as index size. Only the attack tables are built at
+ * class load, which is a single pass over every occupancy variation. A magic that maps two different
+ * attack sets to one slot fails loudly here rather than producing wrong moves later.
+ */
 public class Magic {
 
-    private static long[] rookMasks = new long[64];
-    private static long[][] rookOcc = new long[64][4096];
-    private static long[][] rookAttacks = new long[64][4096];
-    private static long[] magicNumbersRooks = new long[64];
-    private static long[] magicNumbersShiftRooks = new long[64];
-    private static long[][] magicRookMoves = new long[64][4096]; // 4096 = 2^12. 12=max bits for mask
-
-    private static long[] bishopMasks = new long[64];
-    private static long[][] bishopOcc = new long[64][1024];
-    private static long[][] bishopAttacks = new long[64][1024];
-    private static long[] magicNumbersBishops = new long[64];
-    private static long[] magicNumbersShiftBishops = new long[64];
-    private static long[][] magicBishopMoves = new long[64][1024];
+    private static final int[][] ROOK_DIRECTIONS = {{-1, 0}, {1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{-1, 1}, {1, 1}, {1, -1}, {-1, -1}};
+
+    private static final long[] ROOK_MAGICS = {
+            0x2A00104100802200L, 0x024010004000E000L, 0x0200081020804200L, 0x4100040810002300L,
+            0x6080040081020800L, 0x0100040001000208L, 0xE200008804212200L, 0x4100004100002082L,
+            0x0000800020804015L, 0x8024400840201000L, 0x4044802004801004L, 0x2000800800100086L,
+            0x08018008000C0080L, 0x0012001008020004L, 0x0100808001000200L, 0x8001000080410002L,
+            0x0000908000204000L, 0x200141401000A002L, 0x0002410020041102L, 0x000101001000200BL,
+            0x000081801C004800L, 0x1002808002000400L, 0x0080C40008100912L, 0x430CA20000409C01L,
+            0x2000800080204000L, 0x00110042002A0080L, 0x1012002200108044L, 0x0268080080801000L,
+            0x0405040080080280L, 0x24A1100801044020L, 0x0100010400424850L, 0x005803020020508CL,
+            0x8C80002004400040L, 0x1020210081004000L, 0x2211410013002000L, 0xA400800804801000L,
+            0x1030800800800400L, 0x1510040080800200L, 0x5012004152000468L, 0x00042C0092000049L,
+            0x4800804000208001L, 0x0410500020004000L, 0x4400102082020040L, 0x800800801002800AL,
+            0x0401000800130004L, 0x000400050049000DL, 0x0280020001008080L, 0x4090404100820004L,
+            0x0009298000400180L, 0x0060400080210100L, 0x4402200080100480L, 0x0001830804100080L,
+            0x0008040801001100L, 0x63A1000400080300L, 0x002E000401080200L, 0x0001208408D50200L,
+            0x0005A0C100188001L, 0x0600802040010213L, 0x08A0004010082101L, 0x0018100100200905L,
+            0x0002000421885002L, 0x4001001218140005L, 0x0D80102088010204L, 0x40140504004090AAL
+    };
+    private static final long[] BISHOP_MAGICS = {
+            0x0910021000408100L, 0x00031C04008208C0L, 0x4010142048400002L, 0x10020A0600014220L,
+            0x1002121000080420L, 0x000B05A010084000L, 0x0000481414200004L, 0x4202004402080200L,
+            0x1010102002009202L, 0x0000282688004109L, 0x0004082204002081L, 0x1028080483008080L,
+            0x000002021000008DL, 0x0000609010084200L, 0x0010206208244000L, 0x0201004400880880L,
+            0x1021000802048806L, 0x300A281922280204L, 0x2002001000820408L, 0x4808082082004210L,
+            0x0055011820080044L, 0x0102040840422000L, 0x2000610202122010L, 0x300C200100821000L,
+            0x00242000C0028428L, 0x0904A00004181080L, 0x0005100021004200L, 0x0A01040040440080L,
+            0x0202002022008040L, 0x00110202A10080B1L, 0x1004010000611005L, 0x8080484806010400L,
+            0x2001204880A02846L, 0x0208010430482800L, 0x0000802082100088L, 0x00820080204A0200L,
+            0x0001080200022200L, 0x00F0004600804108L, 0x001802A11A028800L, 0x3708022040442100L,
+            0x0002105008000400L, 0x1904108410400480L, 0x4C91412401005000L, 0x1000212011014800L,
+            0x0000200208804400L, 0x4040500100404208L, 0x0082820C04200502L, 0x2208084080225081L,
+            0x2C04008490A81C00L, 0x0142240208048001L, 0x0010060100884534L, 0x0850000020880044L,
+            0x4002200890242080L, 0x0554040488020200L, 0x01C0129806008040L, 0x310A8C8801810000L,
+            0x0001010290013800L, 0x000808814C0A2080L, 0x8080C0204424040CL, 0x3914020008208801L,
+            0x0400000024050C04L, 0x0040804008210440L, 0x0800441122080304L, 0x0B02029004010340L
+    };
+
+    private static final long[] rookMasks = new long[64];
+    private static final int[] rookShifts = new int[64];
+    private static final int[] rookOffsets = new int[64];
+    private static final long[] rookMoves;
+
+    private static final long[] bishopMasks = new long[64];
+    private static final int[] bishopShifts = new int[64];
+    private static final int[] bishopOffsets = new int[64];
+    private static final long[] bishopMoves;
 
-    // initialize rook and bishop masks
     static {
-
-        for (int i = 0; i < 64; i++) {
-            rookMasks[i] = 0;
-
-            Square sq = Square.valueOf(i);
-
-            // if on the same rank or file. "End Points" can be ignored.
-            for (int j = 0; j < 64; j++) {
-                Square sq2 = Square.valueOf(j);
-                if (i != j) {
-                    if ((sq2.rank() == sq.rank() && sq2.file() != File.FILE_A && sq2.file() != File.FILE_H) || (sq2.file() == sq.file() && sq2.rank() != Rank.RANK_1 && sq2.rank() != Rank.RANK_8)) {
-                        rookMasks[i] |= Bitboard.squares[j];
-                    }
-                    if (BoardUtils.isDiagonal(sq, sq2) && sq2.rank() != Rank.RANK_1 && sq2.rank() != Rank.RANK_8 && sq2.file() != File.FILE_A && sq2.file() != File.FILE_H) {
-                        bishopMasks[i] |= Bitboard.squares[j];
-                    }
-                }
-            }
-        }
+        rookMoves = TableBuilder.initSlider(ROOK_DIRECTIONS, ROOK_MAGICS, rookMasks, rookShifts, rookOffsets);
+        bishopMoves = TableBuilder.initSlider(BISHOP_DIRECTIONS, BISHOP_MAGICS, bishopMasks, bishopShifts, bishopOffsets);
     }
 
-    // initialize rook attack sets
-    static {
-
-        for (int sq = 0; sq < 64; sq++) {
-            long mask = rookMasks[sq];
-            int numVariations = 1 << Long.bitCount(mask); // 2 ^ num bits
-
-            for (int i = 0; i < numVariations; i++) {
-                rookOcc[sq][i] = rookAttacks[sq][i] = 0;
-
-                // map the index to an occupancy variation
-                int index = i;
-                while (index != 0) {
-                    int indexBit = Bitboard.lsb(index);
-                    rookOcc[sq][i] |= Bitboard.isolateLSB(mask, indexBit);
-                    index ^= 1 << indexBit;
-                }
-
-                // sanity check
-                for (int j = 0; j < i; j++) {
-                    assert (rookOcc[sq][i] != rookOcc[sq][j]);
-                }
-
-                // create the attack set. that's the first "blocker" in every direction
-                Square toSq = North.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((rookOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        rookAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = North.getInstance().next(toSq);
-                }
-
-                toSq = South.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((rookOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        rookAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = South.getInstance().next(toSq);
-                }
-
-                toSq = East.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((rookOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        rookAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = East.getInstance().next(toSq);
-                }
-
-                toSq = West.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((rookOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        rookAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = West.getInstance().next(toSq);
-                }
-            }
-        }
+    public static long getBishopMoves(Board board, int fromSq, long targets) {
+        return getBishopAttacks(fromSq, board.getBlackPieces() | board.getWhitePieces()) & targets;
     }
 
-    // initialize bishop attack sets
-    static {
-
-        for (int sq = 0; sq < 64; sq++) {
-            long mask = bishopMasks[sq];
-            int numVariations = 1 << Long.bitCount(mask); // 2 ^ num bits
-
-            for (int i = 0; i < numVariations; i++) {
-                bishopOcc[sq][i] = bishopAttacks[sq][i] = 0;
-
-                // map the index to an occupancy variation
-                int index = i;
-                while (index != 0) {
-                    int indexBit = Bitboard.lsb(index);
-                    bishopOcc[sq][i] |= Bitboard.isolateLSB(mask, indexBit);
-                    index ^= 1 << indexBit;
-                }
-
-                // sanity check
-                for (int j = 0; j < i; j++) {
-                    assert (bishopOcc[sq][i] != bishopOcc[sq][j]);
-                }
+    public static long getQueenMoves(Board board, int fromSq, long targets) {
+        return getBishopMoves(board, fromSq, targets) | getRookMoves(board, fromSq, targets);
+    }
 
-                // create the attack set. that's the first "blocker" in every direction
-                Square toSq = NorthEast.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((bishopOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        bishopAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = NorthEast.getInstance().next(toSq);
-                }
+    public static long getRookMoves(Board board, int fromSq, long targets) {
+        return getRookAttacks(fromSq, board.getBlackPieces() | board.getWhitePieces()) & targets;
+    }
 
-                toSq = SouthEast.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((bishopOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        bishopAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = SouthEast.getInstance().next(toSq);
-                }
+    /**
+     * @return the squares a bishop on <fromSq> attacks when the squares in <occupied> are occupied
+     */
+    public static long getBishopAttacks(int fromSq, long occupied) {
+        long blockers = occupied & bishopMasks[fromSq];
+        int magicInd = bishopOffsets[fromSq] + (int) ((blockers * BISHOP_MAGICS[fromSq]) >>> bishopShifts[fromSq]);
+        return bishopMoves[magicInd];
+    }
 
-                toSq = SouthWest.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((bishopOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        bishopAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
-                    }
-                    toSq = SouthWest.getInstance().next(toSq);
-                }
+    /**
+     * @return the squares a rook on <fromSq> attacks when the squares in <occupied> are occupied
+     */
+    public static long getRookAttacks(int fromSq, long occupied) {
+        long blockers = occupied & rookMasks[fromSq];
+        int magicInd = rookOffsets[fromSq] + (int) ((blockers * ROOK_MAGICS[fromSq]) >>> rookShifts[fromSq]);
+        return rookMoves[magicInd];
+    }
 
-                toSq = NorthWest.getInstance().next(Square.valueOf(sq));
-                while (toSq != null) {
-                    if ((bishopOcc[sq][i] & Bitboard.squares[toSq.value()]) != 0) {
-                        bishopAttacks[sq][i] |= Bitboard.squares[toSq.value()];
-                        break;
+    /**
+     * Builds the tables. Kept out of Magic itself: while a class is being initialized, the JVM can't link
+     * calls to its own static methods, so running the build inside Magic's initializer would take several
+     * times longer.
+     */
+    private static final class TableBuilder {
+
+        /**
+         * Fill in the masks, shifts and table offsets of one slider type and return its flattened attack table.
+         */
+        private static long[] initSlider(int[][] directions, long[] magics, long[] masks, int[] shifts, int[] offsets) {
+            long[][] rays = genRays(directions);
+
+            int tableSize = 0;
+            for (int sq = 0; sq < 64; sq++) {
+                // "end points" can be ignored, a blocker there doesn't change anything
+                for (int d = 0; d < directions.length; d++) {
+                    long ray = rays[sq][d];
+                    if (ray != 0) {
+                        masks[sq] |= ray ^ Bitboard.squares[lastSquare(ray, directions[d])];
                     }
-                    toSq = NorthWest.getInstance().next(toSq);
                 }
+                int numMaskBits = Long.bitCount(masks[sq]);
+                shifts[sq] = 64 - numMaskBits;
+                offsets[sq] = tableSize;
+                tableSize += 1 << numMaskBits;
             }
-        }
-    }
 
-    static {
-
-        for (int sq = 0; sq < 64; sq++) {
-            long mask = rookMasks[sq];
-            long numMaskBits = Long.bitCount(mask);
-            int numVariations = 1 << numMaskBits; // 2 ^ num bits
-
-            long magic;
-            long magicShift = 64 - numMaskBits;
-
-            boolean fail;
-            boolean[] isUsed = new boolean[4096];
-            long[] usedBy = new long[4096];
-
-            Random r = new Random();
-            do {
-                magic = r.nextLong() & r.nextLong() & r.nextLong();
-
-                for (int i = 0; i < numVariations; i++) {
-                    isUsed[i] = false;
-                }
-                fail = false;
-
-                for (int i = 0; i < numVariations; i++) {
-                    long occupied = rookOcc[sq][i];
-                    int index = (int) ((occupied * magic) >>> magicShift);
-                    assert (index <= (1 << numMaskBits) && index <= 4096);
-
-                    // fail if this index is used by an attack set that is incorrect
-                    // for this occupancy variation
-                    long attackSet = rookAttacks[sq][i];
-
-                    fail = isUsed[index] && (usedBy[index] != attackSet);
-                    if (fail) {
-                        break;
+            long[] table = new long[tableSize];
+            for (int sq = 0; sq < 64; sq++) {
+                long mask = masks[sq];
+
+                // visit every subset of the mask ("carry rippler"), starting and ending with the empty set
+                long occupied = 0;
+                do {
+                    long attacks = genAttacks(sq, occupied, directions, rays);
+                    int magicInd = offsets[sq] + (int) ((occupied * magics[sq]) >>> shifts[sq]);
+                    // a slider always attacks something, so 0 marks an unused slot
+                    if (table[magicInd] != 0 && table[magicInd] != attacks) {
+                        throw new IllegalStateException("bad magic number for square " + sq);
                     }
-                    isUsed[index] = true;
-                    usedBy[index] = attackSet;
-                }
-
+                    table[magicInd] = attacks;
+                    occupied = (occupied - mask) & mask;
+                } while (occupied != 0);
             }
-            while (fail);
 
-            magicNumbersRooks[sq] = magic;
-            magicNumbersShiftRooks[sq] = magicShift;
+            return table;
         }
-    }
-
-    static {
-
-        for (int sq = 0; sq < 64; sq++) {
-            long mask = bishopMasks[sq];
-            long numMaskBits = Long.bitCount(mask);
-            int numVariations = 1 << numMaskBits; // 2 ^ num bits
-
-            long magic;
-            long magicShift = 64 - numMaskBits;
-
-            boolean fail;
-            boolean[] isUsed = new boolean[1024];
-            long[] usedBy = new long[1024];
-
-            Random r = new Random();
-            do {
-                magic = r.nextLong() & r.nextLong() & r.nextLong();
 
-                for (int i = 0; i < numVariations; i++) {
-                    isUsed[i] = false;
-                }
-                fail = false;
-
-                for (int i = 0; i < numVariations; i++) {
-                    long occupied = bishopOcc[sq][i];
-                    int index = (int) ((occupied * magic) >>> magicShift);
-                    assert (index <= (1 << numMaskBits) && index <= 1024);
-
-                    // fail if this index is used by an attack set that is incorrect
-                    // for this occupancy variation
-                    long attackSet = bishopAttacks[sq][i];
-
-                    fail = isUsed[index] && (usedBy[index] != attackSet);
-                    if (fail) {
-                        break;
+        /**
+         * @return for every square and direction, the squares a slider would cross on an empty board
+         */
+        private static long[][] genRays(int[][] directions) {
+            long[][] rays = new long[64][directions.length];
+            for (int sq = 0; sq < 64; sq++) {
+                for (int d = 0; d < directions.length; d++) {
+                    int rank = sq / 8 + directions[d][0], file = sq % 8 + directions[d][1];
+                    while (onBoard(rank, file)) {
+                        rays[sq][d] |= Bitboard.squares[rank * 8 + file];
+                        rank += directions[d][0];
+                        file += directions[d][1];
                     }
-                    isUsed[index] = true;
-                    usedBy[index] = attackSet;
                 }
-
             }
-            while (fail);
-
-            magicNumbersBishops[sq] = magic;
-            magicNumbersShiftBishops[sq] = magicShift;
+            return rays;
         }
-    }
 
-    // initialize magic moves
-    static {
-        for (int sqVal = 0; sqVal < 64; sqVal++) {
-            Square sq = Square.valueOf(sqVal);
-            long mask = rookMasks[sqVal];
-            int numVariations = 1 << Long.bitCount(mask);
-
-            for (int i = 0; i < numVariations; i++) {
-                int magicInd = (int) ((rookOcc[sqVal][i] * magicNumbersRooks[sqVal]) >>> magicNumbersShiftRooks[sqVal]);
-                magicRookMoves[sqVal][magicInd] = genMovesMask(sq, rookOcc[sqVal][i], North.getInstance()) | genMovesMask(sq, rookOcc[sqVal][i], South.getInstance()) | genMovesMask(sq, rookOcc[sqVal][i], East.getInstance()) | genMovesMask(sq, rookOcc[sqVal][i], West.getInstance());
+        /**
+         * The attack set of a slider on <sq>. That's everything up to and including the first blocker in every direction.
+         */
+        private static long genAttacks(int sq, long occupied, int[][] directions, long[][] rays) {
+            long attacks = 0;
+            for (int d = 0; d < directions.length; d++) {
+                long ray = rays[sq][d];
+                long blockers = ray & occupied;
+                if (blockers != 0) {
+                    ray ^= rays[firstSquare(blockers, directions[d])][d];
+                }
+                attacks |= ray;
             }
+            return attacks;
         }
 
-        for (int sqVal = 0; sqVal < 64; sqVal++) {
-            Square sq = Square.valueOf(sqVal);
-            long mask = bishopMasks[sqVal];
-            int numVariations = 1 << Long.bitCount(mask);
-
-            for (int i = 0; i < numVariations; i++) {
-                int magicInd = (int) ((bishopOcc[sqVal][i] * magicNumbersBishops[sqVal]) >>> magicNumbersShiftBishops[sqVal]);
-                magicBishopMoves[sqVal][magicInd] = genMovesMask(sq, bishopOcc[sqVal][i], NorthEast.getInstance()) | genMovesMask(sq, bishopOcc[sqVal][i], SouthEast.getInstance()) | genMovesMask(sq, bishopOcc[sqVal][i], SouthWest.getInstance()) | genMovesMask(sq, bishopOcc[sqVal][i], NorthWest.getInstance());
-            }
+        // squares along a direction either all increase or all decrease in value
+        private static boolean isIncreasing(int[] direction) {
+            return direction[0] * 8 + direction[1] > 0;
         }
-    }
-
-    private static long genMovesMask(Square sq, long occupied, Direction direction) {
-        long mask = 0;
 
-        Square to = direction.next(sq);
-        while (to != null) {
-            mask |= Bitboard.squares[to.value()];
-            if ((Bitboard.squares[to.value()] & occupied) != 0) {
-                break;
-            }
-            to = direction.next(to);
+        private static int firstSquare(long squares, int[] direction) {
+            return isIncreasing(direction) ? Long.numberOfTrailingZeros(squares) : 63 - Long.numberOfLeadingZeros(squares);
         }
 
-        return mask;
-    }
-
-    public static long getBishopMoves(Board board, int fromSq, long targets) {
-        long blockers = (board.getBlackPieces() | board.getWhitePieces()) & bishopMasks[fromSq];
-        int magicInd = (int) ((blockers * magicNumbersBishops[fromSq]) >>> magicNumbersShiftBishops[fromSq]);
-        return magicBishopMoves[fromSq][magicInd] & targets;
-    }
-
-    public static long getQueenMoves(Board board, int fromSq, long targets) {
-        return getBishopMoves(board, fromSq, targets) | getRookMoves(board, fromSq, targets);
-    }
+        private static int lastSquare(long squares, int[] direction) {
+            return isIncreasing(direction) ? 63 - Long.numberOfLeadingZeros(squares) : Long.numberOfTrailingZeros(squares);
+        }
 
-    public static long getRookMoves(Board board, int fromSq, long targets) {
-        long blockers = (board.getBlackPieces() | board.getWhitePieces()) & rookMasks[fromSq];
-        int magicInd = (int) ((blockers * magicNumbersRooks[fromSq]) >>> magicNumbersShiftRooks[fromSq]);
-        return magicRookMoves[fromSq][magicInd] & targets;
+        private static boolean onBoard(int rank, int file) {
+            return rank >= 0 && rank < 8 && file >= 0 && file < 8;
+        }
     }
 
 }
@@ -9,204 +9,342 @@ import java.util.ArrayList;
 import java.util.List;
 
 
+/**
+ * Move generation. The search uses the variants filling an int array with {@link PackedMove}s,
+ * which allocate nothing; the variants returning lists of {@link Move} are for everything else.
+ */
 public final class MoveGen {
 
+    /**
+     * Upper bound on the number of pseudo legal moves in any position; move arrays passed to the
+     * generator must be at least this long.
+     */
+    public static final int MAX_MOVES = 256;
+
+    private static final long ALL_SQUARES = -1L;
+
+    private static final int E1 = Square.valueOf(File.FILE_E, Rank.RANK_1).value();
+    private static final int E8 = Square.valueOf(File.FILE_E, Rank.RANK_8).value();
+
     private MoveGen() {
     }
 
-    private static void addMoves(Board board, Square fromSq, long moveMap, List<Move> moves) {
+    private static int addMoves(Board board, int fromSq, int piece, long moveMap, int[] moves, int numMoves) {
         while (moveMap != 0) {
             int toVal = Bitboard.lsb(moveMap);
-            Square toSq = Square.valueOf(toVal);
-            Piece toPiece = board.getPiece(toSq);
-            moves.add(new Move(fromSq, toSq, toPiece));
+            moves[numMoves++] = PackedMove.encode(fromSq, toVal, piece, board.getPieceIndex(toVal), 0, 0);
             moveMap ^= Bitboard.squares[toVal];
         }
+        return numMoves;
     }
 
-    private static void addPawnMove(List<Move> moves, Square fromSq, Square toSq, Piece captured) {
-        if (toSq.rank() == Rank.RANK_1 || toSq.rank() == Rank.RANK_8) {
-            boolean isWhite = toSq.rank() == Rank.RANK_8;
-            moves.add(new Move(fromSq, toSq, captured, isWhite ? Queen.WHITE_QUEEN : Queen.BLACK_QUEEN));
-            moves.add(new Move(fromSq, toSq, captured, isWhite ? Rook.WHITE_ROOK : Rook.BLACK_ROOK));
-            moves.add(new Move(fromSq, toSq, captured, isWhite ? Bishop.WHITE_BISHOP : Bishop.BLACK_BISHOP));
-            moves.add(new Move(fromSq, toSq, captured, isWhite ? Knight.WHITE_KNIGHT : Knight.BLACK_KNIGHT));
+    private static int addPawnMove(int[] moves, int numMoves, int fromSq, int toSq, int piece, int captured, int flags) {
+        if (toSq >= 56 || toSq < 8) {
+            boolean isWhite = toSq < 8;
+            moves[numMoves++] = PackedMove.encode(fromSq, toSq, piece, captured, isWhite ? Queen.WHITE_QUEEN.getIndex() : Queen.BLACK_QUEEN.getIndex(), 0);
+            moves[numMoves++] = PackedMove.encode(fromSq, toSq, piece, captured, isWhite ? Rook.WHITE_ROOK.getIndex() : Rook.BLACK_ROOK.getIndex(), 0);
+            moves[numMoves++] = PackedMove.encode(fromSq, toSq, piece, captured, isWhite ? Bishop.WHITE_BISHOP.getIndex() : Bishop.BLACK_BISHOP.getIndex(), 0);
+            moves[numMoves++] = PackedMove.encode(fromSq, toSq, piece, captured, isWhite ? Knight.WHITE_KNIGHT.getIndex() : Knight.BLACK_KNIGHT.getIndex(), 0);
         } else {
-            moves.add(new Move(fromSq, toSq, captured));
+            moves[numMoves++] = PackedMove.encode(fromSq, toSq, piece, captured, 0, flags);
         }
+        return numMoves;
     }
 
-    private static void genBishopMoves(Board board, List<Move> moves, boolean onlyCaps) {
-        long pieceMap = board.getPlayerToMove() == Color.WHITE ? board.getWhiteBishops() : board.getBlackBishops();
+    private static int genBishopMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+        long pieceMap = white ? board.getWhiteBishops() : board.getBlackBishops();
+        int piece = white ? Bishop.WHITE_BISHOP.getIndex() : Bishop.BLACK_BISHOP.getIndex();
         while (pieceMap != 0) {
             int sqVal = Bitboard.msb(pieceMap);
-            long moveMap = Magic.getBishopMoves(board, sqVal, getTargetSquares(board, true, !onlyCaps));
-            addMoves(board, Square.valueOf(sqVal), moveMap, moves);
+            long moveMap = Magic.getBishopMoves(board, sqVal, getTargetSquares(board, caps, noncaps) & mask);
+            numMoves = addMoves(board, sqVal, piece, moveMap, moves, numMoves);
             pieceMap ^= Bitboard.squares[sqVal];
         }
+        return numMoves;
     }
 
-    private static void genCastlingMoves(Board board, List<Move> moves) {
+    private static int genCastlingMoves(Board board, int[] moves, int numMoves) {
         Color player = board.getPlayerToMove();
 
         if (player.isWhite()) {
-            Square fromSq = Square.valueOf(File.FILE_E, Rank.RANK_1);
+            int king = King.WHITE_KING.getIndex();
             if (board.canCastle(CastlingRights.WHITE_KINGSIDE)) {
-                moves.add(new Move(fromSq, Square.valueOf(File.FILE_G, Rank.RANK_1), null));
+                moves[numMoves++] = PackedMove.encode(E1, E1 + 2, king, 0, 0, PackedMove.FLAG_CASTLE);
             }
             if (board.canCastle(CastlingRights.WHITE_QUEENSIDE)) {
-                moves.add(new Move(fromSq, Square.valueOf(File.FILE_C, Rank.RANK_1), null));
+                moves[numMoves++] = PackedMove.encode(E1, E1 - 2, king, 0, 0, PackedMove.FLAG_CASTLE);
             }
         } else {
-            Square fromSq = Square.valueOf(File.FILE_E, Rank.RANK_8);
+            int king = King.BLACK_KING.getIndex();
             if (board.canCastle(CastlingRights.BLACK_KINGSIDE)) {
-                moves.add(new Move(fromSq, Square.valueOf(File.FILE_G, Rank.RANK_8), null));
+                moves[numMoves++] = PackedMove.encode(E8, E8 + 2, king, 0, 0, PackedMove.FLAG_CASTLE);
             }
             if (board.canCastle(CastlingRights.BLACK_QUEENSIDE)) {
-                moves.add(new Move(fromSq, Square.valueOf(File.FILE_C, Rank.RANK_8), null));
+                moves[numMoves++] = PackedMove.encode(E8, E8 - 2, king, 0, 0, PackedMove.FLAG_CASTLE);
             }
         }
+        return numMoves;
     }
 
-    private static void genKingMoves(Board board, List<Move> moves, boolean onlyCaps) {
-        Square fromSq = board.getKingSquare(board.getPlayerToMove());
+    private static int genKingMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        Color player = board.getPlayerToMove();
+        int fromSq = board.getKingSquare(player).value();
+        int piece = player.isWhite() ? King.WHITE_KING.getIndex() : King.BLACK_KING.getIndex();
 
-        long moveMap = Bitboard.kingMoves[fromSq.value()] & getTargetSquares(board, true, !onlyCaps);
-        addMoves(board, fromSq, moveMap, moves);
+        long moveMap = Bitboard.kingMoves[fromSq] & getTargetSquares(board, caps, noncaps);
+        numMoves = addMoves(board, fromSq, piece, moveMap, moves, numMoves);
 
-        if (!onlyCaps) {
-            genCastlingMoves(board, moves);
+        // a masked generation is a check evasion, and a king in check can't castle
+        if (noncaps && mask == ALL_SQUARES) {
+            numMoves = genCastlingMoves(board, moves, numMoves);
         }
+        return numMoves;
     }
 
-    private static void genKnightMoves(Board board, List<Move> moves, boolean onlyCaps) {
-        long pieceMap = board.getPlayerToMove() == Color.WHITE ? board.getWhiteKnights() : board.getBlackKnights();
+    private static int genKnightMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+        long pieceMap = white ? board.getWhiteKnights() : board.getBlackKnights();
+        int piece = white ? Knight.WHITE_KNIGHT.getIndex() : Knight.BLACK_KNIGHT.getIndex();
 
         while (pieceMap != 0) {
             int sqVal = Bitboard.msb(pieceMap);
-            long moveMap = Bitboard.knightMoves[sqVal] & getTargetSquares(board, true, !onlyCaps);
-            addMoves(board, Square.valueOf(sqVal), moveMap, moves);
+            long moveMap = Bitboard.knightMoves[sqVal] & getTargetSquares(board, caps, noncaps) & mask;
+            numMoves = addMoves(board, sqVal, piece, moveMap, moves, numMoves);
             pieceMap ^= Bitboard.squares[sqVal];
         }
+        return numMoves;
     }
 
     public static List<Move> genLegalMoves(Board board) {
-        List<Move> pseudoLegalMoves = genPseudoLegalMoves(board);
-        List<Move> legalMoves = new ArrayList<Move>();
+        int[] moves = new int[MAX_MOVES];
+        int numMoves = genLegalMoves(board, moves);
+        return toMoveList(moves, numMoves);
+    }
 
-        for (Move m : pseudoLegalMoves) {
-            board.applyMove(m);
+    /**
+     * Fill <moves> with the legal moves in the position. The checkers and pinned pieces are worked out
+     * first, so only en passant captures are ever tried on the board.
+     *
+     * @return the number of moves
+     */
+    public static int genLegalMoves(Board board, int[] moves) {
+        long checkers = getCheckers(board);
+        long pinned = getPinned(board);
+        int numPseudoLegal = checkers == 0 ? genPseudoLegalMoves(board, moves, false) : genPseudoLegalEvasions(board, moves, checkers);
+        int numMoves = 0;
+
+        for (int i = 0; i < numPseudoLegal; i++) {
+            int m = moves[i];
+            if (isLegalMove(board, m, checkers, pinned)) {
+                moves[numMoves++] = m;
+            }
+        }
+
+        return numMoves;
+    }
 
-            if (!board.isOpponentInCheck()) {
-                legalMoves.add(m);
+    /**
+     * Fill <moves> with the pseudo legal moves that might get the player out of check by <checkers>:
+     * king moves, and with a single checker, captures of the checker and moves onto the squares in
+     * between.
+     *
+     * @return the number of moves
+     */
+    public static int genPseudoLegalEvasions(Board board, int[] moves, long checkers) {
+        assert (checkers != 0);
+        long mask = 0;
+        if ((checkers & (checkers - 1)) == 0) {
+            int kingSq = board.getKingSquare(board.getPlayerToMove()).value();
+            mask = checkers | Bitboard.between[kingSq][Bitboard.lsb(checkers)];
+        }
+        return genPseudoLegalMoves(board, moves, 0, true, true, mask);
+    }
+
+    /**
+     * @return the opponent's pieces giving check to the player to move
+     */
+    public static long getCheckers(Board board) {
+        Color player = board.getPlayerToMove();
+        int kingSq = board.getKingSquare(player).value();
+        return AttackDetector.getAttackers(board, kingSq, Color.swap(player), board.getWhitePieces() | board.getBlackPieces());
+    }
+
+    /**
+     * @return the pieces of the player to move that are pinned to their king
+     */
+    public static long getPinned(Board board) {
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+        int kingSq = board.getKingSquare(board.getPlayerToMove()).value();
+        long ours = white ? board.getWhitePieces() : board.getBlackPieces();
+        long theirs = white ? board.getBlackPieces() : board.getWhitePieces();
+        long rookSliders = white ? board.getBlackRooks() | board.getBlackQueens() : board.getWhiteRooks() | board.getWhiteQueens();
+        long bishopSliders = white ? board.getBlackBishops() | board.getBlackQueens() : board.getWhiteBishops() | board.getWhiteQueens();
+
+        // sliders that would attack the king if none of our pieces were in the way
+        long snipers = (Magic.getRookAttacks(kingSq, theirs) & rookSliders) | (Magic.getBishopAttacks(kingSq, theirs) & bishopSliders);
+        long pinned = 0;
+        while (snipers != 0) {
+            int sniperSq = Bitboard.lsb(snipers);
+            long blockers = Bitboard.between[kingSq][sniperSq] & (ours | theirs);
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & ours;
             }
+            snipers ^= Bitboard.squares[sniperSq];
+        }
+        return pinned;
+    }
+
+    /**
+     * Whether the pseudo legal move <mv> is legal, given the position's checkers and pinned pieces
+     * from {@link #getCheckers} and {@link #getPinned}.
+     */
+    public static boolean isLegalMove(Board board, int mv, long checkers, long pinned) {
+        Color player = board.getPlayerToMove();
+        int kingSq = board.getKingSquare(player).value();
+        int from = PackedMove.from(mv);
+        int to = PackedMove.to(mv);
+
+        if (from == kingSq) {
+            // castling through check is ruled out by the generator, only the destination is left
+            long occupied = (board.getWhitePieces() | board.getBlackPieces()) ^ Bitboard.squares[kingSq];
+            return AttackDetector.getAttackers(board, to, Color.swap(player), occupied) == 0;
+        }
+
+        if (PackedMove.isEnPassant(mv)) {
+            // two pawns leave the rank at once, which can uncover a check along it. rare enough to just try.
+            board.applyMove(mv);
+            boolean legal = !board.isOpponentInCheck();
             board.undoLastMove();
+            return legal;
+        }
+
+        if (checkers != 0) {
+            if ((checkers & (checkers - 1)) != 0) {
+                return false;
+            }
+            long evasionSquares = checkers | Bitboard.between[kingSq][Bitboard.lsb(checkers)];
+            if ((evasionSquares & Bitboard.squares[to]) == 0) {
+                return false;
+            }
         }
 
-        return legalMoves;
+        return (pinned & Bitboard.squares[from]) == 0 || (Bitboard.line[kingSq][from] & Bitboard.squares[to]) != 0;
     }
 
-    private static void genPawnMoves(Board board, List<Move> moves, boolean onlyCaps) {
+    private static int genPawnMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
 
         long allPieces = board.getWhitePieces() | board.getBlackPieces();
+        int epSq = board.getEPSquare() == null ? -1 : board.getEPSquare().value();
         long pmap;
 
         if (board.getPlayerToMove() == Color.WHITE) {
-            long targets = board.getBlackPieces();
-            if (board.getEPSquare() != null)
-                targets |= Bitboard.squares[board.getEPSquare().value()];
+            int pawn = Pawn.WHITE_PAWN.getIndex();
+            long targets = board.getBlackPieces() & mask;
+            if (epSq != -1 && (mask & (Bitboard.squares[epSq] | Bitboard.squares[epSq + 8])) != 0)
+                targets |= Bitboard.squares[epSq];
 
             // attacks west
-            pmap = ((board.getWhitePawns() & ~Bitboard.files[File.FILE_A.getValue()]) >> 9) & targets;
+            pmap = !caps ? 0 : ((board.getWhitePawns() & ~Bitboard.files[File.FILE_A.getValue()]) >> 9) & targets;
             while (pmap != 0) {
                 int toSqVal = Bitboard.msb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                Piece captured = toSq == board.getEPSquare() ? Pawn.BLACK_PAWN : board.getPiece(toSq);
-                addPawnMove(moves, SouthEast.getInstance().next(toSq), toSq, captured);
+                if (toSqVal == epSq) {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal + 9, toSqVal, pawn, Pawn.BLACK_PAWN.getIndex(), PackedMove.FLAG_EN_PASSANT);
+                } else {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal + 9, toSqVal, pawn, board.getPieceIndex(toSqVal), 0);
+                }
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // attacks east
-            pmap = ((board.getWhitePawns() & ~Bitboard.files[File.FILE_H.getValue()]) >> 7) & targets;
+            pmap = !caps ? 0 : ((board.getWhitePawns() & ~Bitboard.files[File.FILE_H.getValue()]) >> 7) & targets;
             while (pmap != 0) {
                 int toSqVal = Bitboard.msb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                Piece captured = toSq == board.getEPSquare() ? Pawn.BLACK_PAWN : board.getPiece(toSq);
-                addPawnMove(moves, SouthWest.getInstance().next(toSq), toSq, captured);
+                if (toSqVal == epSq) {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal + 7, toSqVal, pawn, Pawn.BLACK_PAWN.getIndex(), PackedMove.FLAG_EN_PASSANT);
+                } else {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal + 7, toSqVal, pawn, board.getPieceIndex(toSqVal), 0);
+                }
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // push promotions
-            pmap = ((board.getWhitePawns() & Bitboard.ranks[Rank.RANK_7.getValue()]) >> 8) & ~allPieces;
+            pmap = !caps ? 0 : ((board.getWhitePawns() & Bitboard.ranks[Rank.RANK_7.getValue()]) >> 8) & ~allPieces & mask;
             while (pmap != 0) {
                 int toSqVal = Bitboard.msb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                addPawnMove(moves, South.getInstance().next(toSq), toSq, null);
+                numMoves = addPawnMove(moves, numMoves, toSqVal + 8, toSqVal, pawn, 0, 0);
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // pawn pushes less promotions
-            if (!onlyCaps) {
+            if (noncaps) {
                 pmap = ((board.getWhitePawns() & ~Bitboard.ranks[Rank.RANK_7.getValue()]) >> 8) & ~allPieces;
                 while (pmap != 0) {
                     int toSqVal = Bitboard.msb(pmap);
-                    Square toSq = Square.valueOf(toSqVal);
-                    moves.add(new Move(South.getInstance().next(toSq), toSq, null));
-                    if (toSq.rank() == Rank.RANK_3 && board.getPiece(North.getInstance().next(toSq)) == null) {
-                        moves.add(new Move(South.getInstance().next(toSq), North.getInstance().next(toSq), null));
+                    if ((mask & Bitboard.squares[toSqVal]) != 0) {
+                        moves[numMoves++] = PackedMove.encode(toSqVal + 8, toSqVal, pawn, 0, 0, 0);
+                    }
+                    if (toSqVal >= 40 && (allPieces & Bitboard.squares[toSqVal - 8]) == 0 && (mask & Bitboard.squares[toSqVal - 8]) != 0) {
+                        moves[numMoves++] = PackedMove.encode(toSqVal + 8, toSqVal - 8, pawn, 0, 0, PackedMove.FLAG_DOUBLE_PUSH);
                     }
                     pmap ^= Bitboard.squares[toSqVal];
                 }
             }
         } else {
-            long targets = board.getWhitePieces();
-            if (board.getEPSquare() != null)
-                targets |= Bitboard.squares[board.getEPSquare().value()];
+            int pawn = Pawn.BLACK_PAWN.getIndex();
+            long targets = board.getWhitePieces() & mask;
+            if (epSq != -1 && (mask & (Bitboard.squares[epSq] | Bitboard.squares[epSq - 8])) != 0)
+                targets |= Bitboard.squares[epSq];
 
             // attacks west
-            pmap = ((board.getBlackPawns() & ~Bitboard.files[File.FILE_A.getValue()]) << 7) & targets;
+            pmap = !caps ? 0 : ((board.getBlackPawns() & ~Bitboard.files[File.FILE_A.getValue()]) << 7) & targets;
             while (pmap != 0) {
                 int toSqVal = Bitboard.lsb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                Piece captured = toSq == board.getEPSquare() ? Pawn.WHITE_PAWN : board.getPiece(toSq);
-                addPawnMove(moves, NorthEast.getInstance().next(toSq), toSq, captured);
+                if (toSqVal == epSq) {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal - 7, toSqVal, pawn, Pawn.WHITE_PAWN.getIndex(), PackedMove.FLAG_EN_PASSANT);
+                } else {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal - 7, toSqVal, pawn, board.getPieceIndex(toSqVal), 0);
+                }
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // attacks east
-            pmap = ((board.getBlackPawns() & ~Bitboard.files[File.FILE_H.getValue()]) << 9) & targets;
+            pmap = !caps ? 0 : ((board.getBlackPawns() & ~Bitboard.files[File.FILE_H.getValue()]) << 9) & targets;
             while (pmap != 0) {
                 int toSqVal = Bitboard.lsb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                Piece captured = toSq == board.getEPSquare() ? Pawn.WHITE_PAWN : board.getPiece(toSq);
-                addPawnMove(moves, NorthWest.getInstance().next(toSq), toSq, captured);
+                if (toSqVal == epSq) {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal - 9, toSqVal, pawn, Pawn.WHITE_PAWN.getIndex(), PackedMove.FLAG_EN_PASSANT);
+                } else {
+                    numMoves = addPawnMove(moves, numMoves, toSqVal - 9, toSqVal, pawn, board.getPieceIndex(toSqVal), 0);
+                }
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // push promotions
-            pmap = ((board.getBlackPawns() & Bitboard.ranks[Rank.RANK_2.getValue()]) << 8) & ~allPieces;
+            pmap = !caps ? 0 : ((board.getBlackPawns() & Bitboard.ranks[Rank.RANK_2.getValue()]) << 8) & ~allPieces & mask;
             while (pmap != 0) {
                 int toSqVal = Bitboard.lsb(pmap);
-                Square toSq = Square.valueOf(toSqVal);
-                addPawnMove(moves, North.getInstance().next(toSq), toSq, null);
+                numMoves = addPawnMove(moves, numMoves, toSqVal - 8, toSqVal, pawn, 0, 0);
                 pmap ^= Bitboard.squares[toSqVal];
             }
 
             // pawn pushes less promotions
-            if (!onlyCaps) {
+            if (noncaps) {
                 pmap = ((board.getBlackPawns() & ~Bitboard.ranks[Rank.RANK_2.getValue()]) << 8) & ~allPieces;
                 while (pmap != 0) {
                     int toSqVal = Bitboard.lsb(pmap);
-                    Square toSq = Square.valueOf(toSqVal);
-                    moves.add(new Move(North.getInstance().next(toSq), toSq, null));
-                    if (toSq.rank() == Rank.RANK_6 && board.getPiece(South.getInstance().next(toSq)) == null) {
-                        moves.add(new Move(North.getInstance().next(toSq), South.getInstance().next(toSq), null));
+                    if ((mask & Bitboard.squares[toSqVal]) != 0) {
+                        moves[numMoves++] = PackedMove.encode(toSqVal - 8, toSqVal, pawn, 0, 0, 0);
+                    }
+                    if (toSqVal < 24 && (allPieces & Bitboard.squares[toSqVal + 8]) == 0 && (mask & Bitboard.squares[toSqVal + 8]) != 0) {
+                        moves[numMoves++] = PackedMove.encode(toSqVal - 8, toSqVal + 8, pawn, 0, 0, PackedMove.FLAG_DOUBLE_PUSH);
                     }
                     pmap ^= Bitboard.squares[toSqVal];
                 }
             }
         }
 
+        return numMoves;
     }
 
     public static List<Move> genPseudoLegalMoves(Board board) {
@@ -214,38 +352,157 @@ public final class MoveGen {
     }
 
     public static List<Move> genPseudoLegalMoves(Board board, boolean onlyCapsPromos) {
-        List<Move> moves = new ArrayList<Move>(100);
+        int[] moves = new int[MAX_MOVES];
+        int numMoves = genPseudoLegalMoves(board, moves, onlyCapsPromos);
+        return toMoveList(moves, numMoves);
+    }
 
-        genPawnMoves(board, moves, onlyCapsPromos);
-        genKnightMoves(board, moves, onlyCapsPromos);
-        genBishopMoves(board, moves, onlyCapsPromos);
-        genRookMoves(board, moves, onlyCapsPromos);
-        genQueenMoves(board, moves, onlyCapsPromos);
-        genKingMoves(board, moves, onlyCapsPromos);
+    /**
+     * Fill <moves> with the pseudo legal moves in the position.
+     *
+     * @return the number of moves
+     */
+    public static int genPseudoLegalMoves(Board board, int[] moves, boolean onlyCapsPromos) {
+        return genPseudoLegalMoves(board, moves, 0, true, !onlyCapsPromos);
+    }
 
-        return moves;
+    /**
+     * Add the pseudo legal moves in the position that are neither captures nor promotions to <moves>,
+     * starting at index <numMoves>. Together with the moves generated with <code>onlyCapsPromos</code>
+     * set, these are all the pseudo legal moves.
+     *
+     * @return the number of moves in <moves> afterwards
+     */
+    public static int genPseudoLegalNonCaptures(Board board, int[] moves, int numMoves) {
+        return genPseudoLegalMoves(board, moves, numMoves, false, true);
     }
 
-    private static void genQueenMoves(Board board, List<Move> moves, boolean onlyCaps) {
-        long pieceMap = board.getPlayerToMove() == Color.WHITE ? board.getWhiteQueens() : board.getBlackQueens();
+    private static int genPseudoLegalMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps) {
+        return genPseudoLegalMoves(board, moves, numMoves, caps, noncaps, ALL_SQUARES);
+    }
+
+    /**
+     * Generate the moves of every piece but the king only to the squares in <mask>.
+     */
+    private static int genPseudoLegalMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        numMoves = genPawnMoves(board, moves, numMoves, caps, noncaps, mask);
+        numMoves = genKnightMoves(board, moves, numMoves, caps, noncaps, mask);
+        numMoves = genBishopMoves(board, moves, numMoves, caps, noncaps, mask);
+        numMoves = genRookMoves(board, moves, numMoves, caps, noncaps, mask);
+        numMoves = genQueenMoves(board, moves, numMoves, caps, noncaps, mask);
+        numMoves = genKingMoves(board, moves, numMoves, caps, noncaps, mask);
+
+        return numMoves;
+    }
+
+    /**
+     * Whether <mv> is a pseudo legal move in the position, i.e. one of the moves the generator would
+     * produce. Used to check moves suggested from elsewhere (hash table, killers) before they are
+     * played without generating the moves first.
+     */
+    public static boolean isPseudoLegalMove(Board board, int mv) {
+        if (mv == PackedMove.NONE) {
+            return false;
+        }
+        int from = PackedMove.from(mv);
+        int to = PackedMove.to(mv);
+        int piece = PackedMove.piece(mv);
+        int captured = PackedMove.captured(mv);
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+
+        if (board.getPieceIndex(from) != piece || isWhiteIndex(piece) != white) {
+            return false;
+        }
+        if (captured != 0 && isWhiteIndex(captured) == white) {
+            return false;
+        }
+
+        if (piece == Pawn.WHITE_PAWN.getIndex() || piece == Pawn.BLACK_PAWN.getIndex()) {
+            return isPseudoLegalPawnMove(board, mv, from, to, captured, white);
+        }
+        if (board.getPieceIndex(to) != captured || PackedMove.isPromotion(mv) || PackedMove.isEnPassant(mv) || PackedMove.isDoublePush(mv)) {
+            return false;
+        }
+
+        long toMap = Bitboard.squares[to];
+        if (piece == Knight.WHITE_KNIGHT.getIndex() || piece == Knight.BLACK_KNIGHT.getIndex()) {
+            return !PackedMove.isCastle(mv) && (Bitboard.knightMoves[from] & toMap) != 0;
+        } else if (piece == Bishop.WHITE_BISHOP.getIndex() || piece == Bishop.BLACK_BISHOP.getIndex()) {
+            return !PackedMove.isCastle(mv) && Magic.getBishopMoves(board, from, toMap) != 0;
+        } else if (piece == Rook.WHITE_ROOK.getIndex() || piece == Rook.BLACK_ROOK.getIndex()) {
+            return !PackedMove.isCastle(mv) && Magic.getRookMoves(board, from, toMap) != 0;
+        } else if (piece == Queen.WHITE_QUEEN.getIndex() || piece == Queen.BLACK_QUEEN.getIndex()) {
+            return !PackedMove.isCastle(mv) && Magic.getQueenMoves(board, from, toMap) != 0;
+        }
+
+        // king
+        if (PackedMove.isCastle(mv)) {
+            if (white) {
+                return from == E1 && board.canCastle(to > from ? CastlingRights.WHITE_KINGSIDE : CastlingRights.WHITE_QUEENSIDE);
+            }
+            return from == E8 && board.canCastle(to > from ? CastlingRights.BLACK_KINGSIDE : CastlingRights.BLACK_QUEENSIDE);
+        }
+        return (Bitboard.kingMoves[from] & toMap) != 0;
+    }
+
+    private static boolean isPseudoLegalPawnMove(Board board, int mv, int from, int to, int captured, boolean white) {
+        int forward = white ? -8 : 8;
+        boolean lastRank = white ? to < 8 : to >= 56;
+        if (lastRank != PackedMove.isPromotion(mv) || PackedMove.isCastle(mv)) {
+            return false;
+        }
+
+        if (captured != 0) {
+            boolean diagonal = to - from - forward == 1 || to - from - forward == -1;
+            if (!diagonal || Math.abs((from & 7) - (to & 7)) != 1 || PackedMove.isDoublePush(mv)) {
+                return false;
+            }
+            if (PackedMove.isEnPassant(mv)) {
+                return board.getEPSquare() != null && board.getEPSquare().value() == to;
+            }
+            return board.getPieceIndex(to) == captured;
+        }
+
+        if (PackedMove.isEnPassant(mv) || board.getPieceIndex(to) != 0) {
+            return false;
+        }
+        if (PackedMove.isDoublePush(mv)) {
+            boolean startRank = white ? from >= 48 : from < 16;
+            return startRank && to == from + 2 * forward && board.getPieceIndex(from + forward) == 0;
+        }
+        return to == from + forward;
+    }
+
+    private static boolean isWhiteIndex(int pieceIndex) {
+        return pieceIndex <= King.WHITE_KING.getIndex();
+    }
+
+    private static int genQueenMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+        long pieceMap = white ? board.getWhiteQueens() : board.getBlackQueens();
+        int piece = white ? Queen.WHITE_QUEEN.getIndex() : Queen.BLACK_QUEEN.getIndex();
 
         while (pieceMap != 0) {
             int sqVal = Bitboard.msb(pieceMap);
-            long moveMap = Magic.getQueenMoves(board, sqVal, getTargetSquares(board, true, !onlyCaps));
-            addMoves(board, Square.valueOf(sqVal), moveMap, moves);
+            long moveMap = Magic.getQueenMoves(board, sqVal, getTargetSquares(board, caps, noncaps) & mask);
+            numMoves = addMoves(board, sqVal, piece, moveMap, moves, numMoves);
             pieceMap ^= Bitboard.squares[sqVal];
         }
+        return numMoves;
     }
 
-    private static void genRookMoves(Board board, List<Move> moves, boolean onlyCaps) {
-        long pieceMap = board.getPlayerToMove() == Color.WHITE ? board.getWhiteRooks() : board.getBlackRooks();
+    private static int genRookMoves(Board board, int[] moves, int numMoves, boolean caps, boolean noncaps, long mask) {
+        boolean white = board.getPlayerToMove() == Color.WHITE;
+        long pieceMap = white ? board.getWhiteRooks() : board.getBlackRooks();
+        int piece = white ? Rook.WHITE_ROOK.getIndex() : Rook.BLACK_ROOK.getIndex();
 
         while (pieceMap != 0) {
             int sqVal = Bitboard.msb(pieceMap);
-            long moveMap = Magic.getRookMoves(board, sqVal, getTargetSquares(board, true, !onlyCaps));
-            addMoves(board, Square.valueOf(sqVal), moveMap, moves);
+            long moveMap = Magic.getRookMoves(board, sqVal, getTargetSquares(board, caps, noncaps) & mask);
+            numMoves = addMoves(board, sqVal, piece, moveMap, moves, numMoves);
             pieceMap ^= Bitboard.squares[sqVal];
         }
+        return numMoves;
     }
 
     private static long getTargetSquares(Board board, boolean caps, boolean noncaps) {
@@ -261,4 +518,12 @@ public final class MoveGen {
 
         return targets;
     }
+
+    private static List<Move> toMoveList(int[] moves, int numMoves) {
+        List<Move> moveList = new ArrayList<Move>(numMoves);
+        for (int i = 0; i < numMoves; i++) {
+            moveList.add(PackedMove.toMove(moves[i]));
+        }
+        return moveList;
+    }
 }
@@ -0,0 +1,157 @@
+package com.jamesswafford.chess4j.board;
+
+
+import com.jamesswafford.chess4j.board.squares.Square;
+import com.jamesswafford.chess4j.pieces.*;
+
+
+/**
+ * Moves packed into an int, so move generation and search can work on plain int arrays without
+ * allocating a {@link Move} per move.
+ * <p>
+ * Layout: from (bits 0-5), to (bits 6-11), moving piece (bits 12-15), captured piece (bits 16-19),
+ * promotion piece (bits 20-23), flags (bits 24-26). Pieces are stored as {@link Piece#getIndex()},
+ * 0 meaning none. Every move has a moving piece, so 0 is never a valid move and is used as
+ * {@link #NONE}.
+ * <p>
+ * Two encodings of the same move in the same position are always equal, so moves can be compared
+ * with <code>==</code>.
+ */
+public final class PackedMove {
+
+    public static final int NONE = 0;
+
+    public static final int FLAG_CASTLE = 1 << 24;
+    public static final int FLAG_EN_PASSANT = 1 << 25;
+    public static final int FLAG_DOUBLE_PUSH = 1 << 26;
+
+    private static final Piece[] PIECES = {null, Pawn.WHITE_PAWN, Knight.WHITE_KNIGHT, Bishop.WHITE_BISHOP, Rook.WHITE_ROOK, Queen.WHITE_QUEEN, King.WHITE_KING, Pawn.BLACK_PAWN, Knight.BLACK_KNIGHT, Bishop.BLACK_BISHOP, Rook.BLACK_ROOK, Queen.BLACK_QUEEN, King.BLACK_KING};
+
+    private PackedMove() {
+    }
+
+    public static int encode(int from, int to, int piece, int captured, int promotion, int flags) {
+        assert (piece > 0);
+        return from | (to << 6) | (piece << 12) | (captured << 16) | (promotion << 20) | flags;
+    }
+
+    public static int from(int mv) {
+        return mv & 63;
+    }
+
+    public static int to(int mv) {
+        return (mv >>> 6) & 63;
+    }
+
+    public static int piece(int mv) {
+        return (mv >>> 12) & 15;
+    }
+
+    public static int captured(int mv) {
+        return (mv >>> 16) & 15;
+    }
+
+    public static int promotion(int mv) {
+        return (mv >>> 20) & 15;
+    }
+
+    public static boolean isCapture(int mv) {
+        return (mv & 0xF0000) != 0;
+    }
+
+    public static boolean isPromotion(int mv) {
+        return (mv & 0xF00000) != 0;
+    }
+
+    public static boolean isCaptureOrPromotion(int mv) {
+        return (mv & 0xFF0000) != 0;
+    }
+
+    public static boolean isCastle(int mv) {
+        return (mv & FLAG_CASTLE) != 0;
+    }
+
+    public static boolean isEnPassant(int mv) {
+        return (mv & FLAG_EN_PASSANT) != 0;
+    }
+
+    public static boolean isDoublePush(int mv) {
+        return (mv & FLAG_DOUBLE_PUSH) != 0;
+    }
+
+    /**
+     * @return the piece for an index stored in a packed move, or null for 0
+     */
+    public static Piece getPiece(int index) {
+        return PIECES[index];
+    }
+
+    /**
+     * Encode <move>, to be played in the position <board>.
+     */
+    public static int fromMove(Board board, Move move) {
+        Piece piece = board.getPiece(move.from());
+        assert (piece != null);
+        int from = move.from().value();
+        int to = move.to().value();
+
+        int flags = 0;
+        if (piece instanceof King && Math.abs(from - to) == 2) {
+            flags = FLAG_CASTLE;
+        } else if (piece instanceof Pawn) {
+            if (Math.abs(from - to) == 16) {
+                flags = FLAG_DOUBLE_PUSH;
+            } else if (move.to() == board.getEPSquare()) {
+                flags = FLAG_EN_PASSANT;
+            }
+        }
+
+        return encode(from, to, piece.getIndex(), index(move.captured()), index(move.promotion()), flags);
+    }
+
+    /**
+     * Encode the move from <from> to <to>, to be played in the position <board>, from the squares alone.
+     * The result is only a candidate: check it with {@link MoveGen#isPseudoLegalMove} before playing it.
+     *
+     * @param promotionType the {@link Piece#getType()} promoted to, 0 for none
+     * @return the move, or {@link #NONE} if <from> is empty
+     */
+    public static int fromSquares(Board board, int from, int to, int promotionType) {
+        int piece = board.getPieceIndex(from);
+        if (piece == 0) {
+            return NONE;
+        }
+        boolean white = piece <= King.WHITE_KING.getIndex();
+        int captured = board.getPieceIndex(to);
+        int promotion = promotionType == 0 ? 0 : (white ? promotionType : promotionType + Piece.KING);
+
+        int flags = 0;
+        if (piece == King.WHITE_KING.getIndex() || piece == King.BLACK_KING.getIndex()) {
+            if (Math.abs(from - to) == 2) {
+                flags = FLAG_CASTLE;
+            }
+        } else if (piece == Pawn.WHITE_PAWN.getIndex() || piece == Pawn.BLACK_PAWN.getIndex()) {
+            if (Math.abs(from - to) == 16) {
+                flags = FLAG_DOUBLE_PUSH;
+            } else if (captured == 0 && board.getEPSquare() != null && to == board.getEPSquare().value()) {
+                flags = FLAG_EN_PASSANT;
+                captured = white ? Pawn.BLACK_PAWN.getIndex() : Pawn.WHITE_PAWN.getIndex();
+            }
+        }
+
+        return encode(from, to, piece, captured, promotion, flags);
+    }
+
+    public static Move toMove(int mv) {
+        assert (mv != NONE);
+        return new Move(Square.valueOf(from(mv)), Square.valueOf(to(mv)), PIECES[captured(mv)], PIECES[promotion(mv)]);
+    }
+
+    public static String toString(int mv) {
+        return mv == NONE ? "none" : toMove(mv).toString();
+    }
+
+    private static int index(Piece piece) {
+        return piece == null ? 0 : piece.getIndex();
+    }
+}
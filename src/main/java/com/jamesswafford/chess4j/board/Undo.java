@@ -6,13 +6,13 @@ import com.jamesswafford.chess4j.board.squares.Square;
 
 public class Undo {
 
-    private Move move;
+    private int move;
     private int fiftyCounter;
     private int castlingRights;
     private Square epSquare;
     private long zobristKey;
 
-    public Undo(Move move, int fiftyCounter, int castlingRights, Square epSquare, long zobristKey) {
+    public Undo(int move, int fiftyCounter, int castlingRights, Square epSquare, long zobristKey) {
         this.move = move;
         this.fiftyCounter = fiftyCounter;
         this.castlingRights = castlingRights;
@@ -33,6 +33,13 @@ public class Undo {
     }
 
     public Move getMove() {
+        return PackedMove.toMove(move);
+    }
+
+    /**
+     * @return the move as a {@link PackedMove}
+     */
+    public int getPackedMove() {
         return move;
     }
 
@@ -47,7 +54,7 @@ public class Undo {
         }
 
         Undo that = (Undo) obj;
-        if (!this.getMove().equals(that.getMove())) {
+        if (this.getPackedMove() != that.getPackedMove()) {
             return false;
         }
         if (this.getFiftyCounter() != that.getFiftyCounter()) {
@@ -71,7 +78,7 @@ public class Undo {
     @Override
     public int hashCode() {
         int hash = (int) zobristKey;
-        hash = hash * 17 + move.hashCode();
+        hash = hash * 17 + move;
         hash = hash * 19 + (epSquare == null ? 0 : epSquare.hashCode());
         hash = hash * 23 + castlingRights;
         hash = hash * 31 + fiftyCounter;
@@ -5,6 +5,7 @@ import com.jamesswafford.chess4j.Color;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.io.PGNGame;
+import com.jamesswafford.chess4j.utils.EngineLog;
 import com.jamesswafford.chess4j.utils.GameResult;
 
 import java.util.List;
@@ -12,6 +13,7 @@ import java.util.Random;
 
 
 public abstract class AbstractOpeningBook {
+    private static final EngineLog mLog = EngineLog.getLog();
 
     private Random r = new Random();
 
@@ -23,6 +25,13 @@ public abstract class AbstractOpeningBook {
 
     public abstract void initializeBook();
 
+    /**
+     * @return whether moves can't be added to this book. Adding to a read only book does nothing.
+     */
+    public boolean isReadOnly() {
+        return false;
+    }
+
     public void learn(List<Move> moves, Color engineColor, GameResult gameResult) {
         // default impl is a no-op
     }
@@ -32,8 +41,7 @@ public abstract class AbstractOpeningBook {
     }
 
     public void addToBook(PGNGame game) {
-        Board board = Board.INSTANCE;
-        board.resetBoard();
+        Board board = new Board();
 
         List<Move> gameMoves = game.getMoves();
         for (int i = 0; i < 15 && i < gameMoves.size(); i++) {
@@ -43,10 +51,33 @@ public abstract class AbstractOpeningBook {
         }
     }
 
+    /**
+     * Add the moves gathered by a {@link PGNBookBuilder}. Books that can't take them in bulk ignore
+     * them.
+     */
+    public void addAll(BookPositions positions) {
+        mLog.info("# this opening book can't be added to in bulk, ignoring " + positions.size() + " book moves");
+    }
+
     public void dropIndexes() {
         // default impl is a no-op
     }
 
+    /**
+     * @return the Zobrist keys the book's positions are keyed with, in {@link com.jamesswafford.chess4j.hash.Zobrist#getAllKeys()}
+     * order, or null if it has none of its own and uses the engine's
+     */
+    public List<Long> getZobristKeys() {
+        return null;
+    }
+
+    /**
+     * Release what the book holds open. The book can't be used afterwards.
+     */
+    public void close() {
+        // default impl is a no-op
+    }
+
     public BookMove getMoveWeightedRandomByFrequency(Board board) {
         List<BookMove> bms = getMoves(board);
 
@@ -0,0 +1,202 @@
+package com.jamesswafford.chess4j.book;
+
+
+/**
+ * Book moves gathered in memory while a book is built: frequency, wins, losses and draws per
+ * position key and move (encoded as in {@link OpeningBookMappedImpl#encodeMove}). Kept in an open
+ * addressing table on primitive arrays, so millions of positions take tens of megabytes rather than
+ * gigabytes of boxed map entries.
+ * <p>
+ * Once all moves are in, {@link #sortByKey()} turns the table into a list sorted by position key,
+ * read by index.
+ */
+public final class BookPositions {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private long[] keys;
+    // 0 is never a valid move, it marks an empty slot
+    private int[] moves;
+    // frequency, wins, losses, draws of each slot
+    private int[] counts;
+    private int size = 0;
+    private boolean sorted = false;
+
+    public BookPositions() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        moves = new int[capacity];
+        counts = new int[capacity * 4];
+    }
+
+    public void add(long key, int move, int frequency, int wins, int losses, int draws) {
+        if (sorted) {
+            throw new IllegalStateException("Book positions are already sorted");
+        }
+        assert (move != 0);
+
+        if ((size + 1) * 2 > moves.length) {
+            grow();
+        }
+
+        int mask = moves.length - 1;
+        int slot = slot(key, move, mask);
+        while (moves[slot] != 0 && (keys[slot] != key || moves[slot] != move)) {
+            slot = (slot + 1) & mask;
+        }
+        if (moves[slot] == 0) {
+            keys[slot] = key;
+            moves[slot] = move;
+            size++;
+        }
+        counts[slot * 4] += frequency;
+        counts[slot * 4 + 1] += wins;
+        counts[slot * 4 + 2] += losses;
+        counts[slot * 4 + 3] += draws;
+    }
+
+    /**
+     * Add everything gathered in <other>, which must not be sorted yet.
+     */
+    public void addAll(BookPositions other) {
+        for (int i = 0; i < other.moves.length; i++) {
+            if (other.moves[i] != 0) {
+                add(other.keys[i], other.moves[i], other.counts[i * 4], other.counts[i * 4 + 1], other.counts[i * 4 + 2], other.counts[i * 4 + 3]);
+            }
+        }
+    }
+
+    private static int slot(long key, int move, int mask) {
+        long h = (key ^ (move * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldMoves = moves;
+        int[] oldCounts = counts;
+        allocate(moves.length * 2);
+        size = 0;
+        for (int i = 0; i < oldMoves.length; i++) {
+            if (oldMoves[i] != 0) {
+                add(oldKeys[i], oldMoves[i], oldCounts[i * 4], oldCounts[i * 4 + 1], oldCounts[i * 4 + 2], oldCounts[i * 4 + 3]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct position and move pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pack the moves into the first {@link #size()} indexes, sorted by position key. No more moves can
+     * be added afterwards.
+     */
+    public void sortByKey() {
+        if (sorted) {
+            return;
+        }
+        int n = 0;
+        for (int i = 0; i < moves.length; i++) {
+            if (moves[i] != 0) {
+                keys[n] = keys[i];
+                moves[n] = moves[i];
+                System.arraycopy(counts, i * 4, counts, n * 4, 4);
+                n++;
+            }
+        }
+        sort(0, n);
+        sorted = true;
+    }
+
+    /**
+     * Quicksort of the index range [lo, hi) by key, recursing into the smaller part only.
+     */
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(lo, j + 1);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j + 1;
+            }
+        }
+
+        for (int i = lo + 1; i < hi; i++) {
+            for (int j = i; j > lo && keys[j - 1] > keys[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        long tmpKey = keys[a];
+        keys[a] = keys[b];
+        keys[b] = tmpKey;
+        int tmpMove = moves[a];
+        moves[a] = moves[b];
+        moves[b] = tmpMove;
+        for (int k = 0; k < 4; k++) {
+            int tmpCount = counts[a * 4 + k];
+            counts[a * 4 + k] = counts[b * 4 + k];
+            counts[b * 4 + k] = tmpCount;
+        }
+    }
+
+    private void checkSorted() {
+        if (!sorted) {
+            throw new IllegalStateException("Book positions must be sorted before they are read");
+        }
+    }
+
+    public long getKey(int ind) {
+        checkSorted();
+        return keys[ind];
+    }
+
+    public int getMove(int ind) {
+        checkSorted();
+        return moves[ind];
+    }
+
+    public int getFrequency(int ind) {
+        checkSorted();
+        return counts[ind * 4];
+    }
+
+    public int getWins(int ind) {
+        checkSorted();
+        return counts[ind * 4 + 1];
+    }
+
+    public int getLosses(int ind) {
+        checkSorted();
+        return counts[ind * 4 + 2];
+    }
+
+    public int getDraws(int ind) {
+        checkSorted();
+        return counts[ind * 4 + 3];
+    }
+}
@@ -0,0 +1,127 @@
+package com.jamesswafford.chess4j.book;
+
+
+import com.jamesswafford.chess4j.hash.Zobrist;
+
+import java.io.*;
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+
+/**
+ * Builds binary opening books (see {@link OpeningBookMappedImpl}) from an existing SQLite book or
+ * from a PGN file.
+ */
+public final class OpeningBookConverter {
+
+    // how many plies of each PGN game go into the book, as for the SQLite book
+    public static final int DEFAULT_PGN_PLIES = 15;
+
+    private OpeningBookConverter() {
+    }
+
+    /**
+     * Convert the <code>book_moves</code> table of a SQLite book. The binary book keeps the SQLite
+     * book's Zobrist keys; the engine's own keys are left alone.
+     *
+     * @return the number of moves written
+     */
+    public static long fromSQLite(File sqliteBook, File out) throws ClassNotFoundException, SQLException, IOException {
+        Class.forName("org.sqlite.JDBC");
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + sqliteBook.getPath());
+        try {
+            List<Long> zobristKeys = new OpeningBookSQLiteImpl(conn).getZobristKeys();
+
+            BookWriter writer = new BookWriter(out, zobristKeys != null ? zobristKeys : Zobrist.getAllKeys());
+            try {
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("select key,fromsq,tosq,frequency,wins,losses,draws from book_moves order by key");
+                while (rs.next()) {
+                    writer.add(rs.getLong("key"), OpeningBookMappedImpl.encodeMove(rs.getInt("fromsq"), rs.getInt("tosq"), 0), rs.getInt("frequency"), rs.getInt("wins"), rs.getInt("losses"), rs.getInt("draws"));
+                }
+                stmt.close();
+            } finally {
+                writer.close();
+            }
+            return writer.getNumRecords();
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Build a book from the first <plies> moves of every game in a PGN file, parsed on
+     * <numThreads> threads (see {@link PGNBookBuilder}).
+     *
+     * @return the number of moves written
+     */
+    public static long fromPGN(File pgn, File out, int plies, int numThreads) throws IOException, InterruptedException, ExecutionException {
+        BookPositions positions = new PGNBookBuilder(plies, numThreads).build(pgn);
+        positions.sortByKey();
+
+        BookWriter writer = new BookWriter(out, Zobrist.getAllKeys());
+        try {
+            for (int i = 0; i < positions.size(); i++) {
+                writer.add(positions.getKey(i), positions.getMove(i), positions.getFrequency(i), positions.getWins(i), positions.getLosses(i), positions.getDraws(i));
+            }
+        } finally {
+            writer.close();
+        }
+        return writer.getNumRecords();
+    }
+
+    /**
+     * Streams records, which must come sorted by key, into a new book file.
+     */
+    static final class BookWriter implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private final int countOffset;
+        private long numRecords = 0;
+        private long lastKey = Long.MIN_VALUE;
+
+        BookWriter(File file, List<Long> zobristKeys) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(OpeningBookMappedImpl.MAGIC);
+            out.writeInt(OpeningBookMappedImpl.VERSION);
+            out.writeInt(zobristKeys.size());
+            for (long key : zobristKeys) {
+                out.writeLong(key);
+            }
+            this.countOffset = out.size();
+            out.writeLong(0); // filled in by close()
+        }
+
+        void add(long key, int move, int frequency, int wins, int losses, int draws) throws IOException {
+            if (key < lastKey) {
+                throw new IllegalStateException("Opening book records must be added in key order");
+            }
+            lastKey = key;
+            out.writeLong(key);
+            out.writeInt(move);
+            out.writeInt(frequency);
+            out.writeInt(wins);
+            out.writeInt(losses);
+            out.writeInt(draws);
+            numRecords++;
+        }
+
+        long getNumRecords() {
+            return numRecords;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(countOffset);
+                raf.writeLong(numRecords);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.jamesswafford.chess4j.book;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
+import com.jamesswafford.chess4j.hash.Zobrist;
+import com.jamesswafford.chess4j.io.PGNGame;
+import com.jamesswafford.chess4j.pieces.Pawn;
+import com.jamesswafford.chess4j.pieces.Piece;
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Read only opening book in a compact binary file, memory mapped, so even a large book costs no heap
+ * and opens instantly. Books are built with {@link OpeningBookConverter}.
+ * <p>
+ * File layout (big endian): the magic number and format version, the number of Zobrist keys the
+ * book was built with followed by the keys themselves (in {@link Zobrist#getAllKeys()} order), the
+ * number of records, then the records. Every record is {@link #RECORD_SIZE} bytes: the position's
+ * key (long), the move (int, see {@link #encodeMove}), then its frequency, wins, losses and draws
+ * (ints). Records are sorted by key, so the moves of a position are found by binary search.
+ */
+public class OpeningBookMappedImpl extends AbstractOpeningBook {
+
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    static final int MAGIC = 0x43344A42; // "C4JB"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 28;
+
+    private final ByteBuffer buffer;
+    private final List<Long> zobristKeys;
+    private final int recordsOffset;
+    private final int numRecords;
+
+    private OpeningBookMappedImpl(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book, or an unsupported version of one");
+        }
+
+        int numKeys = buffer.getInt(8);
+        zobristKeys = new ArrayList<Long>(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            zobristKeys.add(buffer.getLong(12 + i * 8));
+        }
+
+        int countOffset = 12 + numKeys * 8;
+        long count = buffer.getLong(countOffset);
+        this.recordsOffset = countOffset + 8;
+        if (count < 0 || recordsOffset + count * RECORD_SIZE > buffer.capacity()) {
+            throw new IOException("Opening book is truncated");
+        }
+        this.numRecords = (int) count;
+    }
+
+    /**
+     * Map the book in <file>.
+     */
+    public static OpeningBookMappedImpl open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Opening book " + file + " is larger than 2GB");
+            }
+            // the mapping stays valid after the channel is closed
+            return new OpeningBookMappedImpl(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param promotionType the {@link Piece#getType()} promoted to, 0 for none
+     * @return the move as stored in a record: from (bits 0-5), to (bits 6-11), promotion type (bits 12-14)
+     */
+    static int encodeMove(int from, int to, int promotionType) {
+        return from | (to << 6) | (promotionType << 12);
+    }
+
+    static int encodeMove(Move move) {
+        return encodeMove(move.from().value(), move.to().value(), move.promotion() == null ? 0 : move.promotion().getType());
+    }
+
+    @Override
+    public List<Long> getZobristKeys() {
+        return zobristKeys;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    /**
+     * Does nothing, binary books are rebuilt with {@link OpeningBookConverter} instead.
+     */
+    @Override
+    public void addToBook(Board board, Move move) {
+        mLog.debug("# binary opening books are read only, not adding " + move);
+    }
+
+    @Override
+    public void addToBook(PGNGame game) {
+        mLog.info("# binary opening books are read only, rebuild them with OpeningBookConverter");
+    }
+
+    @Override
+    public void addAll(BookPositions positions) {
+        mLog.info("# binary opening books are read only, rebuild them with OpeningBookConverter");
+    }
+
+    /**
+     * Book moves are checked against the position directly instead of against a generated move list.
+     */
+    @Override
+    public List<BookMove> getMoves(Board board) {
+        List<BookMove> bookMoves = new ArrayList<BookMove>();
+
+        long key = board.getZobristKey();
+        int ind = findFirst(key);
+        if (ind == numRecords || getKey(ind) != key) {
+            return bookMoves;
+        }
+
+        long checkers = MoveGen.getCheckers(board);
+        long pinned = MoveGen.getPinned(board);
+        for (; ind < numRecords && getKey(ind) == key; ind++) {
+            int pos = recordsOffset + ind * RECORD_SIZE;
+            int mv = toPackedMove(board, buffer.getInt(pos + 8));
+            if (mv != PackedMove.NONE && MoveGen.isPseudoLegalMove(board, mv) && MoveGen.isLegalMove(board, mv, checkers, pinned)) {
+                bookMoves.add(new BookMove(PackedMove.toMove(mv), buffer.getInt(pos + 12), buffer.getInt(pos + 16), buffer.getInt(pos + 20), buffer.getInt(pos + 24)));
+            }
+        }
+
+        return bookMoves;
+    }
+
+    /**
+     * @return the index of the first record with a key of at least <key>
+     */
+    private int findFirst(long key) {
+        int lo = 0;
+        int hi = numRecords;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long getKey(int ind) {
+        return buffer.getLong(recordsOffset + ind * RECORD_SIZE);
+    }
+
+    /**
+     * Books converted from SQLite don't record promotions; a pawn reaching the last rank without one
+     * promotes to a queen.
+     */
+    private static int toPackedMove(Board board, int bookMove) {
+        int from = bookMove & 63;
+        int to = (bookMove >>> 6) & 63;
+        int promotionType = (bookMove >>> 12) & 7;
+        int piece = board.getPieceIndex(from);
+        if (promotionType == 0 && (piece == Pawn.WHITE_PAWN.getIndex() || piece == Pawn.BLACK_PAWN.getIndex()) && (to < 8 || to >= 56)) {
+            promotionType = Piece.QUEEN;
+        }
+        return PackedMove.fromSquares(board, from, to, promotionType);
+    }
+
+    @Override
+    public long getTotalMoveCount() {
+        return numRecords;
+    }
+
+    @Override
+    public void initializeBook() {
+    }
+
+}
@@ -19,6 +19,9 @@ public class OpeningBookSQLiteImpl extends AbstractOpeningBook {
 
     private static final Log logger = LogFactory.getLog(OpeningBookSQLiteImpl.class);
 
+    // moves written per transaction by addAll()
+    private static final int BATCH_SIZE = 10000;
+
     private Connection conn;
 
     public OpeningBookSQLiteImpl(Connection conn) {
@@ -53,6 +56,100 @@ public class OpeningBookSQLiteImpl extends AbstractOpeningBook {
         }
     }
 
+    /**
+     * Moves are written in transactions of {@link #BATCH_SIZE}: the frequencies of moves already in
+     * the book are raised with one batched update, the moves that aren't are inserted with another.
+     * Like {@link #addToBook(Board, Move)} this counts frequencies only; wins, losses and draws are
+     * left for the engine's own games (see {@link #learn}).
+     */
+    @Override
+    public void addAll(BookPositions positions) {
+        positions.sortByKey();
+
+        try {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            PreparedStatement update = conn.prepareStatement("update book_moves set frequency=frequency+? where key=? and fromsq=? and tosq=?");
+            PreparedStatement insert = conn.prepareStatement("insert into book_moves (key,fromsq,tosq,frequency) values (?,?,?,?)");
+            try {
+                long[] keys = new long[BATCH_SIZE];
+                int[] squares = new int[BATCH_SIZE];
+                int[] frequencies = new int[BATCH_SIZE];
+                int n = 0;
+
+                int i = 0;
+                while (i < positions.size()) {
+                    // the SQLite book doesn't store promotions, so under-promotions count as the same move
+                    long key = positions.getKey(i);
+                    int groupStart = n;
+                    for (; i < positions.size() && positions.getKey(i) == key; i++) {
+                        int sqs = positions.getMove(i) & 0xFFF;
+                        int j = groupStart;
+                        while (j < n && squares[j] != sqs) {
+                            j++;
+                        }
+                        if (j == n) {
+                            keys[n] = key;
+                            squares[n] = sqs;
+                            frequencies[n] = 0;
+                            n++;
+                        }
+                        frequencies[j] += positions.getFrequency(i);
+
+                        if (n == BATCH_SIZE) {
+                            writeBatch(update, insert, keys, squares, frequencies, n);
+                            n = 0;
+                            groupStart = 0;
+                        }
+                    }
+                }
+                writeBatch(update, insert, keys, squares, frequencies, n);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                update.close();
+                insert.close();
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    private void writeBatch(PreparedStatement update, PreparedStatement insert, long[] keys, int[] squares, int[] frequencies, int n) throws SQLException {
+        if (n == 0) {
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            update.setInt(1, frequencies[i]);
+            update.setLong(2, keys[i]);
+            update.setInt(3, squares[i] & 63);
+            update.setInt(4, squares[i] >>> 6);
+            update.addBatch();
+        }
+        int[] updated = update.executeBatch();
+
+        boolean inserts = false;
+        for (int i = 0; i < n; i++) {
+            if (updated[i] == 0) {
+                insert.setLong(1, keys[i]);
+                insert.setInt(2, squares[i] & 63);
+                insert.setInt(3, squares[i] >>> 6);
+                insert.setInt(4, frequencies[i]);
+                insert.addBatch();
+                inserts = true;
+            }
+        }
+        if (inserts) {
+            insert.executeBatch();
+        }
+
+        conn.commit();
+    }
+
     @Override
     public void dropIndexes() {
         try {
@@ -137,41 +234,59 @@ public class OpeningBookSQLiteImpl extends AbstractOpeningBook {
             return;
         }
 
-        Board.INSTANCE.resetBoard();
+        Board board = new Board();
 
         try {
             for (Move move : moves) {
-                if (Board.INSTANCE.getPlayerToMove().equals(engineColor)) {
-                    learn(move, gameResult);
+                if (board.getPlayerToMove().equals(engineColor)) {
+                    learn(board, move, gameResult);
                 }
-                Board.INSTANCE.applyMove(move);
+                board.applyMove(move);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.getMessage());
         }
     }
 
-    private void learn(Move move, GameResult gameResult) throws SQLException {
-        List<BookMove> bookMoves = getMoves(Board.INSTANCE);
+    private void learn(Board board, Move move, GameResult gameResult) throws SQLException {
+        List<BookMove> bookMoves = getMoves(board);
 
         for (BookMove bookMove : bookMoves) {
             if (bookMove.getMove().equals(move)) {
-                update(Board.INSTANCE, move, bookMove.getFrequency(), bookMove.getWins() + (GameResult.WIN.equals(gameResult) ? 1 : 0), bookMove.getLosses() + (GameResult.LOSS.equals(gameResult) ? 1 : 0), bookMove.getDraws() + (GameResult.DRAW.equals(gameResult) ? 1 : 0));
+                update(board, move, bookMove.getFrequency(), bookMove.getWins() + (GameResult.WIN.equals(gameResult) ? 1 : 0), bookMove.getLosses() + (GameResult.LOSS.equals(gameResult) ? 1 : 0), bookMove.getDraws() + (GameResult.DRAW.equals(gameResult) ? 1 : 0));
             }
         }
     }
 
-    public void loadZobristKeys() throws SQLException {
-        List<Long> keys = new ArrayList<Long>();
+    /**
+     * @return the keys stored with the book, or null if it has none yet
+     */
+    @Override
+    public List<Long> getZobristKeys() {
+        try {
+            List<Long> keys = new ArrayList<Long>();
 
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery("select key from zobrist_keys order by id");
-        while (rs.next()) {
-            keys.add(rs.getLong("key"));
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("select key from zobrist_keys order by id");
+            while (rs.next()) {
+                keys.add(rs.getLong("key"));
+            }
+            stmt.close();
+
+            return keys.isEmpty() ? null : keys;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e.getMessage());
         }
-        stmt.close();
+    }
 
-        Zobrist.setKeys(keys);
+    @Override
+    public void close() {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("# unable to close the opening book: " + e.getMessage());
+        }
     }
 
     public void writeZobristKeys() throws SQLException {
@@ -0,0 +1,173 @@
+package com.jamesswafford.chess4j.book;
+
+
+import com.jamesswafford.chess4j.Color;
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.exceptions.ParseException;
+import com.jamesswafford.chess4j.io.PGNGame;
+import com.jamesswafford.chess4j.io.PGNIterator;
+import com.jamesswafford.chess4j.io.PGNParser;
+import com.jamesswafford.chess4j.io.PGNResult;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Gathers the opening moves of a PGN file into {@link BookPositions}. The calling thread only splits
+ * the stream into games; parsing and replaying them, which is where the time goes, is spread over a
+ * pool of workers that each fill their own positions, merged once the stream is done. Games that
+ * don't parse are counted and skipped.
+ * <p>
+ * Wins, losses and draws are counted from the point of view of the side making the move.
+ */
+public final class PGNBookBuilder {
+
+    // games handed to a worker at a time
+    private static final int BATCH_SIZE = 256;
+    private static final List<String> END = Collections.emptyList();
+
+    private final int plies;
+    private final int numThreads;
+    private final AtomicLong numGames = new AtomicLong();
+    private final AtomicLong numErrors = new AtomicLong();
+
+    /**
+     * @param plies      how many moves of each game go into the book
+     * @param numThreads how many threads parse games
+     */
+    public PGNBookBuilder(int plies, int numThreads) {
+        this.plies = plies;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public BookPositions build(File pgn) throws IOException, InterruptedException, ExecutionException {
+        InputStream is = new BufferedInputStream(new FileInputStream(pgn));
+        try {
+            return build(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    public BookPositions build(InputStream is) throws IOException, InterruptedException, ExecutionException {
+        final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(numThreads * 4);
+
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<BookPositions>> results = new ArrayList<Future<BookPositions>>();
+            for (int i = 0; i < numThreads; i++) {
+                results.add(workers.submit(new Callable<BookPositions>() {
+                    @Override
+                    public BookPositions call() throws Exception {
+                        return parseGames(queue);
+                    }
+                }));
+            }
+
+            try {
+                readGames(is, queue);
+            } finally {
+                for (int i = 0; i < numThreads; i++) {
+                    queue.put(END);
+                }
+            }
+
+            BookPositions positions = results.get(0).get();
+            for (int i = 1; i < numThreads; i++) {
+                positions.addAll(results.get(i).get());
+            }
+            return positions;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void readGames(InputStream is, BlockingQueue<List<String>> queue) throws IOException, InterruptedException {
+        PGNIterator it = new PGNIterator(is);
+        List<String> batch = new ArrayList<String>(BATCH_SIZE);
+        while (true) {
+            String gameText;
+            try {
+                gameText = it.nextGameText();
+            } catch (ParseException e) {
+                numErrors.incrementAndGet();
+                continue;
+            }
+            if (gameText == null) {
+                break;
+            }
+
+            batch.add(gameText);
+            if (batch.size() == BATCH_SIZE) {
+                queue.put(batch);
+                batch = new ArrayList<String>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+        }
+    }
+
+    private BookPositions parseGames(BlockingQueue<List<String>> queue) throws InterruptedException {
+        PGNParser parser = new PGNParser();
+        BookPositions positions = new BookPositions();
+
+        List<String> batch;
+        while ((batch = queue.take()) != END) {
+            for (String gameText : batch) {
+                PGNGame game;
+                try {
+                    game = parser.parseGame(gameText, plies);
+                } catch (Exception e) {
+                    numErrors.incrementAndGet();
+                    continue;
+                }
+                addGame(positions, game);
+                numGames.incrementAndGet();
+            }
+        }
+
+        return positions;
+    }
+
+    private static void addGame(BookPositions positions, PGNGame game) {
+        Board board = new Board();
+        PGNResult result = game.getResult();
+        for (Move move : game.getMoves()) {
+            boolean white = board.getPlayerToMove() == Color.WHITE;
+            int wins = 0, losses = 0, draws = 0;
+            if (result == PGNResult.DRAW) {
+                draws = 1;
+            } else if (result == PGNResult.WHITE_WINS) {
+                wins = white ? 1 : 0;
+                losses = white ? 0 : 1;
+            } else if (result == PGNResult.BLACK_WINS) {
+                wins = white ? 0 : 1;
+                losses = white ? 1 : 0;
+            }
+            positions.add(board.getZobristKey(), OpeningBookMappedImpl.encodeMove(move), 1, wins, losses, draws);
+
+            board.applyMove(move);
+        }
+    }
+
+    /**
+     * @return the number of games added to the book
+     */
+    public long getNumGames() {
+        return numGames.get();
+    }
+
+    /**
+     * @return the number of games skipped because they could not be read
+     */
+    public long getNumErrors() {
+        return numErrors.get();
+    }
+}
@@ -10,14 +10,10 @@ import com.jamesswafford.chess4j.board.squares.File;
 import com.jamesswafford.chess4j.board.squares.Rank;
 import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.hash.PawnTranspositionTable;
-import com.jamesswafford.chess4j.hash.PawnTranspositionTableEntry;
 import com.jamesswafford.chess4j.pieces.*;
-import com.jamesswafford.chess4j.utils.OrderedPair;
+import com.jamesswafford.chess4j.search.EngineContext;
 import com.jamesswafford.chess4j.utils.PawnUtils;
 
-import java.util.HashMap;
-import java.util.Map;
-
 
 public final class Eval {
 
@@ -48,6 +44,10 @@ public final class Eval {
     // note this would get "awarded" to both pawns
     public static final int DOUBLED_PAWN = -10;
 
+    // a backward pawn is one whose stop square is attacked by an enemy pawn, with no friendly pawn
+    // on an adjacent file level with or behind it to ever defend that square
+    public static final int BACKWARD_PAWN = -8;
+
     public static final int KING_SAFETY_PAWN_ONE_AWAY = -10;
     public static final int KING_SAFETY_PAWN_TWO_AWAY = -20;
     public static final int KING_SAFETY_PAWN_FAR_AWAY = -30;
@@ -64,141 +64,178 @@ public final class Eval {
     };
     public static final int[] KING_ENDGAME_PST = {0, 0, 0, 0, 0, 0, 0, 0, 0, 10, 10, 10, 10, 10, 10, 0, 0, 10, 20, 20, 20, 20, 10, 0, 0, 10, 20, 25, 25, 20, 10, 0, 0, 10, 20, 25, 25, 20, 10, 0, 0, 10, 20, 20, 20, 20, 10, 0, 0, 10, 10, 10, 10, 10, 10, 0, 0, 0, 0, 0, 0, 0, 0, 0};
     public static final int[] QUEEN_PST = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0, 0, 0, 0, -1, -1, 0, 1, 1, 1, 1, 0, -1, -1, 0, 1, 2, 2, 1, 0, -1, -1, 0, 1, 2, 2, 1, 0, -1, -1, 0, 1, 1, 1, 1, 0, -1, -1, 0, 0, 0, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1, -1};
-    private static Map<Class<?>, Integer> pieceValMap;
+
+    // a won king and pawn against king ending, plus a bonus for each rank the pawn has advanced
+    public static final int KPK_WIN = QUEEN_VAL / 2;
+    public static final int KPK_PAWN_ADVANCE = 20;
+
+    // once the opponent is down to this much non-pawn material, the king uses its endgame table
+    public static final int ENDGAME_THRESHOLD = KNIGHT_VAL * 2 + ROOK_VAL;
+
+    // indexed by Piece#getType()
+    private static final int[] PIECE_VALUES = {0, PAWN_VAL, KNIGHT_VAL, BISHOP_VAL, ROOK_VAL, QUEEN_VAL, Integer.MAX_VALUE};
+
+    // material plus piece-square value of each piece index (see Piece#getIndex()) on each square, from the
+    // point of view of the piece's owner. Board keeps running sums of these as pieces come and go. Kings
+    // carry no material here, and only the king tables differ between the middle game and the endgame.
+    private static final int[][] MIDGAME_PIECE_SQUARE = new int[13][64];
+    private static final int[][] ENDGAME_PIECE_SQUARE = new int[13][64];
 
     static {
-        pieceValMap = new HashMap<Class<?>, Integer>();
-        pieceValMap.put(King.class, Integer.MAX_VALUE);
-        pieceValMap.put(Queen.class, QUEEN_VAL);
-        pieceValMap.put(Rook.class, ROOK_VAL);
-        pieceValMap.put(Bishop.class, BISHOP_VAL);
-        pieceValMap.put(Knight.class, KNIGHT_VAL);
-        pieceValMap.put(Pawn.class, PAWN_VAL);
+        for (int sq = 0; sq < 64; sq++) {
+            int flipped = Square.valueOf(sq).flipVertical().value();
+            for (int type = Piece.PAWN; type <= Piece.KING; type++) {
+                int material = type == Piece.KING ? 0 : PIECE_VALUES[type];
+                MIDGAME_PIECE_SQUARE[type][sq] = material + getPST(type, false)[sq];
+                ENDGAME_PIECE_SQUARE[type][sq] = material + getPST(type, true)[sq];
+                MIDGAME_PIECE_SQUARE[type + Piece.KING][sq] = material + getPST(type, false)[flipped];
+                ENDGAME_PIECE_SQUARE[type + Piece.KING][sq] = material + getPST(type, true)[flipped];
+            }
+        }
     }
 
     private Eval() {
     }
 
-    public static int eval(Board board) {
+    private static int[] getPST(int type, boolean endgame) {
+        switch (type) {
+            case Piece.PAWN:
+                return PAWN_PST;
+            case Piece.KNIGHT:
+                return KNIGHT_PST;
+            case Piece.BISHOP:
+                return BISHOP_PST;
+            case Piece.ROOK:
+                return ROOK_PST;
+            case Piece.QUEEN:
+                return QUEEN_PST;
+            default:
+                return endgame ? KING_ENDGAME_PST : KING_PST;
+        }
+    }
 
-        OrderedPair<Integer, Integer> matNPScore = getNonPawnMaterialScore(board);
-        OrderedPair<Integer, Integer> matPScore = getPawnMaterialScore(board);
+    /**
+     * @return material plus middle game piece-square value of the piece with index <pieceIndex> on <sq>
+     */
+    public static int getMidgamePieceSquareValue(int pieceIndex, int sq) {
+        return MIDGAME_PIECE_SQUARE[pieceIndex][sq];
+    }
 
-        int score = matNPScore.getE1() - matNPScore.getE2() + matPScore.getE1() - matPScore.getE2();
-        assert ((board.getPlayerToMove().equals(Color.WHITE) ? score : -score) == evalMaterial(board));
+    /**
+     * @return material plus endgame piece-square value of the piece with index <pieceIndex> on <sq>
+     */
+    public static int getEndgamePieceSquareValue(int pieceIndex, int sq) {
+        return ENDGAME_PIECE_SQUARE[pieceIndex][sq];
+    }
+
+    public static int eval(EngineContext ctx, Board board) {
+
+        // king and pawn against king is decided by the bitbase
+        if (KPKBitbase.isAvailable() && KPKBitbase.isKPK(board)) {
+            return evalKPK(board);
+        }
 
-        score += evalPawns(board);
-        score += evalKnights(board);
-        score += evalBishops(board);
+        // material and piece-square tables come from the running sums kept by the board
+        int score = evalMaterialAndPST(board);
+        assert (score == evalMaterialAndPSTNoIncremental(board));
+
+        score += evalPawns(ctx.getPawnTranspositionTable(), board);
         score += evalRooks(board);
         score += evalQueens(board);
-        score += evalKings(board, matNPScore);
+        score += evalKings(board);
 
         return board.getPlayerToMove().equals(Color.WHITE) ? score : -score;
     }
 
-    private static int evalBishops(Board board) {
-        int score = 0;
+    // returns a score from the perspective of white
+    private static int evalMaterialAndPST(Board board) {
+        int score = board.getNonPawnMaterial(Color.BLACK) >= ENDGAME_THRESHOLD ? board.getMidgameScore(Color.WHITE) : board.getEndgameScore(Color.WHITE);
+        score -= board.getNonPawnMaterial(Color.WHITE) >= ENDGAME_THRESHOLD ? board.getMidgameScore(Color.BLACK) : board.getEndgameScore(Color.BLACK);
+        return score;
+    }
 
-        long bishopsMap = board.getWhiteBishops();
-        while (bishopsMap != 0) {
-            int bishopSqVal = Bitboard.msb(bishopsMap);
-            Square bishopSq = Square.valueOf(bishopSqVal);
-            score += evalBishop(true, bishopSq);
-            bishopsMap ^= Bitboard.squares[bishopSqVal];
+    /**
+     * Recompute material and piece-square values from scratch, to check the running sums kept by the board.
+     * Returns a score from the perspective of white.
+     */
+    static int evalMaterialAndPSTNoIncremental(Board board) {
+        int wNonPawn = 0, bNonPawn = 0;
+        for (Square sq : Square.allSquares()) {
+            Piece p = board.getPiece(sq);
+            if (p != null && !(p instanceof Pawn) && !(p instanceof King)) {
+                if (p.isWhite()) {
+                    wNonPawn += getPieceValue(p);
+                } else {
+                    bNonPawn += getPieceValue(p);
+                }
+            }
         }
-
-        bishopsMap = board.getBlackBishops();
-        while (bishopsMap != 0) {
-            int bishopSqVal = Bitboard.lsb(bishopsMap);
-            Square bishopSq = Square.valueOf(bishopSqVal);
-            score -= evalBishop(false, bishopSq);
-            bishopsMap ^= Bitboard.squares[bishopSqVal];
+        if (wNonPawn != board.getNonPawnMaterial(Color.WHITE) || bNonPawn != board.getNonPawnMaterial(Color.BLACK)) {
+            return Integer.MIN_VALUE;
         }
 
+        int score = 0;
+        for (Square sq : Square.allSquares()) {
+            Piece p = board.getPiece(sq);
+            if (p == null) {
+                continue;
+            }
+            int ind = p.isWhite() ? sq.value() : sq.flipVertical().value();
+            boolean endgame = p.isWhite() ? bNonPawn < ENDGAME_THRESHOLD : wNonPawn < ENDGAME_THRESHOLD;
+            int val = (p instanceof King ? 0 : getPieceValue(p)) + getPST(p.getType(), endgame)[ind];
+            score += p.isWhite() ? val : -val;
+        }
         return score;
     }
 
-    private static int evalBishop(boolean isWhite, Square sq) {
-        return BISHOP_PST[isWhite ? sq.value() : sq.flipVertical().value()];
-    }
-
-    private static int evalKnights(Board board) {
-        int score = 0;
-
-        long knightsMap = board.getWhiteKnights();
-        while (knightsMap != 0) {
-            int knightSqVal = Bitboard.msb(knightsMap);
-            Square knightSq = Square.valueOf(knightSqVal);
-            score += evalKnight(true, knightSq);
-            knightsMap ^= Bitboard.squares[knightSqVal];
+    /**
+     * @return the score of a king and pawn against king ending, for the player to move: 0 if it is a
+     * draw, otherwise a winning score that grows as the pawn advances but stays below the value of
+     * the queen it becomes, so the search still heads for the promotion
+     */
+    private static int evalKPK(Board board) {
+        if (!KPKBitbase.isWin(board)) {
+            return 0;
         }
 
-        knightsMap = board.getBlackKnights();
-        while (knightsMap != 0) {
-            int knightSqVal = Bitboard.lsb(knightsMap);
-            Square knightSq = Square.valueOf(knightSqVal);
-            score -= evalKnight(false, knightSq);
-            knightsMap ^= Bitboard.squares[knightSqVal];
+        boolean whitePawn = board.getWhitePawns() != 0;
+        int psq = Bitboard.lsb(whitePawn ? board.getWhitePawns() : board.getBlackPawns());
+        // ranks advanced from the second, 0 to 5
+        int advance = whitePawn ? 6 - (psq >>> 3) : (psq >>> 3) - 1;
+        int score = KPK_WIN + advance * KPK_PAWN_ADVANCE;
+        if (!whitePawn) {
+            score = -score;
         }
 
-        return score;
-    }
-
-    private static int evalKnight(boolean isWhite, Square sq) {
-        return KNIGHT_PST[isWhite ? sq.value() : sq.flipVertical().value()];
+        return board.getPlayerToMove().equals(Color.WHITE) ? score : -score;
     }
 
-    private static int evalPawns(Board board) {
+    private static int evalPawns(PawnTranspositionTable pawnTable, Board board) {
 
         // try the pawn hash
-        PawnTranspositionTableEntry pte = PawnTranspositionTable.getInstance().probe(board.getPawnKey());
-        if (pte != null) {
-            assert (pte.getScore() == evalPawnsNoHash(board));
-            return pte.getScore();
+        long pte = pawnTable.probe(board.getPawnKey());
+        if (pte != 0) {
+            assert (PawnTranspositionTable.getScore(pte) == evalPawnsNoHash(board));
+            return PawnTranspositionTable.getScore(pte);
         }
 
         int score = evalPawnsNoHash(board);
-        PawnTranspositionTable.getInstance().store(board.getPawnKey(), score);
+        pawnTable.store(board.getPawnKey(), score);
 
         return score;
     }
 
     private static int evalPawnsNoHash(Board board) {
-        int score = 0;
-
-        long pawnsMap = board.getWhitePawns();
-        while (pawnsMap != 0) {
-            int pawnSqVal = Bitboard.msb(pawnsMap);
-            Square pawnSq = Square.valueOf(pawnSqVal);
-            score += evalPawn(board, true, pawnSq);
-            pawnsMap ^= Bitboard.squares[pawnSqVal];
-        }
-
-        pawnsMap = board.getBlackPawns();
-        while (pawnsMap != 0) {
-            int pawnSqVal = Bitboard.lsb(pawnsMap);
-            Square pawnSq = Square.valueOf(pawnSqVal);
-            score -= evalPawn(board, false, pawnSq);
-            pawnsMap ^= Bitboard.squares[pawnSqVal];
-        }
-
-        return score;
+        return evalPawnStructure(board.getWhitePawns(), board.getBlackPawns(), true) - evalPawnStructure(board.getBlackPawns(), board.getWhitePawns(), false);
     }
 
-    private static int evalPawn(Board board, boolean isWhite, Square sq) {
+    private static int evalPawnStructure(long pawns, long enemyPawns, boolean isWhite) {
         int score = 0;
 
-        score += PAWN_PST[isWhite ? sq.value() : sq.flipVertical().value()];
-        if (PawnUtils.isPassedPawn(board, sq, isWhite)) {
-            score += PASSED_PAWN;
-        }
-        if (PawnUtils.isIsolated(board, sq, isWhite)) {
-            score += ISOLATED_PAWN;
-        }
-        if (PawnUtils.isDoubled(board, sq, isWhite)) {
-            score += DOUBLED_PAWN;
-        }
+        score += Long.bitCount(PawnUtils.getPassedPawns(pawns, enemyPawns, isWhite)) * PASSED_PAWN;
+        score += Long.bitCount(PawnUtils.getIsolatedPawns(pawns)) * ISOLATED_PAWN;
+        score += Long.bitCount(PawnUtils.getDoubledPawns(pawns)) * DOUBLED_PAWN;
+        score += Long.bitCount(PawnUtils.getBackwardPawns(pawns, enemyPawns, isWhite)) * BACKWARD_PAWN;
 
         return score;
     }
@@ -286,33 +323,25 @@ public final class Eval {
     }
 
     private static int evalRook(Board board, boolean isWhite, Square sq) {
-        int score = ROOK_PST[isWhite ? sq.value() : sq.flipVertical().value()];
-        score += evalMajorOn7th(board, isWhite, sq);
+        int score = evalMajorOn7th(board, isWhite, sq);
         score += evalRookOpenFile(board, isWhite, sq);
         return score;
     }
 
     // returns a score from the perspective of white
-    private static int evalKings(Board b, OrderedPair<Integer, Integer> matNPScore) {
+    private static int evalKings(Board b) {
         int score = 0;
 
-        final int ENDGAME_THRESHOLD = KNIGHT_VAL * 2 + ROOK_VAL;
-
-        Square whiteKingSq = b.getKingSquare(Color.WHITE);
-        Square blackKingSq = b.getKingSquare(Color.BLACK);
+        int wNonPawn = b.getNonPawnMaterial(Color.WHITE);
+        int bNonPawn = b.getNonPawnMaterial(Color.BLACK);
 
-        // if black has a lot of material then eval white in middle game
-        if (matNPScore.getE2() >= ENDGAME_THRESHOLD) {
-            score += KING_PST[whiteKingSq.value()];
-            score += scale(evalKingSafety(true, b), matNPScore.getE2());
-        } else {
-            score += KING_ENDGAME_PST[whiteKingSq.value()];
+        // if black has a lot of material then eval white in middle game. the king piece-square values are
+        // part of the board's running sums.
+        if (bNonPawn >= ENDGAME_THRESHOLD) {
+            score += scale(evalKingSafety(true, b), bNonPawn);
         }
-        if (matNPScore.getE1() >= ENDGAME_THRESHOLD) {
-            score -= KING_PST[blackKingSq.flipVertical().value()];
-            score -= scale(evalKingSafety(false, b), matNPScore.getE1());
-        } else {
-            score -= KING_ENDGAME_PST[blackKingSq.flipVertical().value()];
+        if (wNonPawn >= ENDGAME_THRESHOLD) {
+            score -= scale(evalKingSafety(false, b), wNonPawn);
         }
 
         return score;
@@ -491,25 +520,18 @@ public final class Eval {
     }
 
     private static int evalQueen(Board board, boolean isWhite, Square sq) {
-        int score = QUEEN_PST[isWhite ? sq.value() : sq.flipVertical().value()];
-        score += evalMajorOn7th(board, isWhite, sq);
-        return score;
+        return evalMajorOn7th(board, isWhite, sq);
     }
 
     public static int getPieceValue(Piece piece) {
-        return pieceValMap.get(piece.getClass());
+        return PIECE_VALUES[piece.getType()];
     }
 
-    public static OrderedPair<Integer, Integer> getPawnMaterialScore(Board board) {
-        return new OrderedPair<Integer, Integer>(board.getNumPieces(Pawn.WHITE_PAWN) * PAWN_VAL, board.getNumPieces(Pawn.BLACK_PAWN) * PAWN_VAL);
-    }
-
-    public static OrderedPair<Integer, Integer> getNonPawnMaterialScore(Board board) {
-        int wScore = board.getNumPieces(Queen.WHITE_QUEEN) * QUEEN_VAL + board.getNumPieces(Rook.WHITE_ROOK) * ROOK_VAL + board.getNumPieces(Knight.WHITE_KNIGHT) * KNIGHT_VAL + board.getNumPieces(Bishop.WHITE_BISHOP) * BISHOP_VAL;
-
-        int bScore = board.getNumPieces(Queen.BLACK_QUEEN) * QUEEN_VAL + board.getNumPieces(Rook.BLACK_ROOK) * ROOK_VAL + board.getNumPieces(Knight.BLACK_KNIGHT) * KNIGHT_VAL + board.getNumPieces(Bishop.BLACK_BISHOP) * BISHOP_VAL;
-
-        return new OrderedPair<Integer, Integer>(wScore, bScore);
+    /**
+     * @return the value of a piece of type <type> (see {@link Piece#getType()})
+     */
+    public static int getPieceValue(int type) {
+        return PIECE_VALUES[type];
     }
 
     public static int evalMaterial(Board board) {
@@ -0,0 +1,243 @@
+package com.jamesswafford.chess4j.eval;
+
+
+import com.jamesswafford.chess4j.Color;
+import com.jamesswafford.chess4j.board.Bitboard;
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Whether king and pawn against king is won, for every position. Generated by retrograde analysis
+ * in well under a second, and kept as one bit per position (24KB).
+ * <p>
+ * Positions are stored with the pawn white and on files A to D; others are mirrored to match. A
+ * position is indexed by the side to move, both king squares and the pawn's square. The generator
+ * starts from the positions whose result is plain (promotions that can't be stopped, stalemates and
+ * captures of the pawn) and then repeatedly resolves every position whose moves all lead to known
+ * results, until nothing changes. What is left can't be won.
+ * <p>
+ * Like other bitbases of this kind it takes a promotion that the black king can't stop for a win,
+ * without looking for stalemates after it.
+ */
+public final class KPKBitbase {
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    // side to move (bit 0), white king (bits 1-6), black king (bits 7-12), pawn (24 squares above that)
+    private static final int SIZE = 2 * 64 * 64 * 24;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte INVALID = 1;
+    private static final byte DRAW = 2;
+    private static final byte WIN = 3;
+
+    private static final AtomicBoolean started = new AtomicBoolean();
+    private static volatile long[] wins;
+
+    private KPKBitbase() {
+    }
+
+    /**
+     * Generate the bitbase on a thread of its own, once. Until it is done, {@link #isAvailable()}
+     * returns false and the engine simply searches these endings.
+     */
+    public static void generateInBackground() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                generate();
+            }
+        }, "LootGames Chess KPK Bitbase");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    public static boolean isAvailable() {
+        return wins != null;
+    }
+
+    /**
+     * @return whether the only pieces left are the two kings and one pawn
+     */
+    public static boolean isKPK(Board board) {
+        return Long.bitCount(board.getWhitePieces() | board.getBlackPieces()) == 3 && Long.bitCount(board.getWhitePawns() | board.getBlackPawns()) == 1;
+    }
+
+    /**
+     * @return whether the side with the pawn wins. Only valid once the bitbase is available, and for
+     * positions where {@link #isKPK} holds.
+     */
+    public static boolean isWin(Board board) {
+        assert (isKPK(board));
+        boolean whitePawn = board.getWhitePawns() != 0;
+        int wk = board.getKingSquare(Color.WHITE).value();
+        int bk = board.getKingSquare(Color.BLACK).value();
+        int psq = Bitboard.lsb(whitePawn ? board.getWhitePawns() : board.getBlackPawns());
+        boolean strongToMove = board.getPlayerToMove().isWhite() == whitePawn;
+
+        // seen from the side with the pawn, which moves up the board
+        int strongKing = whitePawn ? wk : bk ^ 56;
+        int weakKing = whitePawn ? bk : wk ^ 56;
+        if (!whitePawn) {
+            psq ^= 56;
+        }
+        if ((psq & 7) > 3) {
+            strongKing ^= 7;
+            weakKing ^= 7;
+            psq ^= 7;
+        }
+
+        int ind = index(strongToMove ? 0 : 1, strongKing, weakKing, psq);
+        return (wins[ind >>> 6] & (1L << ind)) != 0;
+    }
+
+    /**
+     * @param psq the pawn's square, on files A to D and ranks 2 to 7 (A8 is square 0)
+     */
+    private static int index(int stm, int wk, int bk, int psq) {
+        int pawnInd = ((psq >>> 3) - 1) * 4 + (psq & 7);
+        return stm | (wk << 1) | (bk << 7) | (pawnInd << 13);
+    }
+
+    private static int getPawnSquare(int ind) {
+        int pawnInd = ind >>> 13;
+        return ((pawnInd >>> 2) + 1) * 8 + (pawnInd & 3);
+    }
+
+    private static long pawnAttacks(int psq) {
+        long attacks = 0;
+        if ((psq & 7) > 0) {
+            attacks |= Bitboard.squares[psq - 9];
+        }
+        if ((psq & 7) < 7) {
+            attacks |= Bitboard.squares[psq - 7];
+        }
+        return attacks;
+    }
+
+    static synchronized void generate() {
+        if (wins != null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+
+        byte[] db = new byte[SIZE];
+        for (int ind = 0; ind < SIZE; ind++) {
+            db[ind] = classifyInitial(ind & 1, (ind >>> 1) & 63, (ind >>> 7) & 63, getPawnSquare(ind));
+        }
+
+        int passes = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            passes++;
+            for (int ind = 0; ind < SIZE; ind++) {
+                if (db[ind] == UNKNOWN) {
+                    byte result = classify(db, ind & 1, (ind >>> 1) & 63, (ind >>> 7) & 63, getPawnSquare(ind));
+                    if (result != UNKNOWN) {
+                        db[ind] = result;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        long[] bits = new long[SIZE / 64];
+        int numWins = 0;
+        for (int ind = 0; ind < SIZE; ind++) {
+            if (db[ind] == WIN) {
+                bits[ind >>> 6] |= 1L << ind;
+                numWins++;
+            }
+        }
+        wins = bits;
+        mLog.info("# KPK bitbase generated in " + (System.currentTimeMillis() - start) + " ms, " + passes + " passes, " + numWins + " won positions.");
+    }
+
+    private static byte classifyInitial(int stm, int wk, int bk, int psq) {
+        if (wk == bk || wk == psq || bk == psq || (Bitboard.kingMoves[wk] & Bitboard.squares[bk]) != 0) {
+            return INVALID;
+        }
+        // black in check with white to move
+        if (stm == 0 && (pawnAttacks(psq) & Bitboard.squares[bk]) != 0) {
+            return INVALID;
+        }
+
+        if (stm == 0) {
+            // a pawn on the seventh that promotes without being taken
+            int push = psq - 8;
+            if (psq < 16 && wk != push && bk != push && ((Bitboard.kingMoves[bk] & Bitboard.squares[push]) == 0 || (Bitboard.kingMoves[wk] & Bitboard.squares[push]) != 0)) {
+                return WIN;
+            }
+        } else {
+            long kingMoves = Bitboard.kingMoves[bk] & ~Bitboard.kingMoves[wk] & ~pawnAttacks(psq);
+            // stalemate, or the pawn can be taken
+            if (kingMoves == 0 || (kingMoves & Bitboard.squares[psq]) != 0) {
+                return DRAW;
+            }
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the result of a position from the results of the positions its moves lead to, or
+     * UNKNOWN while some of those are unknown and don't decide it yet
+     */
+    private static byte classify(byte[] db, int stm, int wk, int bk, int psq) {
+        if (stm == 0) {
+            // white wins if any move wins, draws if all moves draw
+            boolean allDraw = true;
+            long kingMoves = Bitboard.kingMoves[wk] & ~Bitboard.kingMoves[bk] & ~Bitboard.squares[psq];
+            while (kingMoves != 0) {
+                int to = Bitboard.lsb(kingMoves);
+                kingMoves &= kingMoves - 1;
+                byte r = db[index(1, to, bk, psq)];
+                if (r == WIN) {
+                    return WIN;
+                }
+                allDraw &= r == DRAW;
+            }
+
+            // promotions were dealt with when classifying the initial positions
+            int push = psq - 8;
+            if (psq >= 16 && push != wk && push != bk) {
+                byte r = db[index(1, wk, bk, push)];
+                if (r == WIN) {
+                    return WIN;
+                }
+                allDraw &= r == DRAW;
+
+                int doublePush = psq - 16;
+                if (psq >= 48 && doublePush != wk && doublePush != bk) {
+                    r = db[index(1, wk, bk, doublePush)];
+                    if (r == WIN) {
+                        return WIN;
+                    }
+                    allDraw &= r == DRAW;
+                }
+            }
+            return allDraw ? DRAW : UNKNOWN;
+        } else {
+            // black draws if any move draws, loses if all moves lose
+            boolean allWin = true;
+            long kingMoves = Bitboard.kingMoves[bk] & ~Bitboard.kingMoves[wk] & ~pawnAttacks(psq);
+            while (kingMoves != 0) {
+                int to = Bitboard.lsb(kingMoves);
+                kingMoves &= kingMoves - 1;
+                byte r = db[index(0, wk, to, psq)];
+                if (r == DRAW) {
+                    return DRAW;
+                }
+                allWin &= r == WIN;
+            }
+            return allWin ? WIN : UNKNOWN;
+        }
+    }
+}
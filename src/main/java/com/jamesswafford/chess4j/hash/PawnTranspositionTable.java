@@ -1,39 +1,62 @@
 package com.jamesswafford.chess4j.hash;
 
 
-import eu.usrv.yamcore.auxiliary.LogHelper;
+import com.jamesswafford.chess4j.utils.EngineLog;
 
 
+/**
+ * Pawn structure scores by pawn key, in two parallel long arrays laid out like the
+ * {@link TranspositionTable}: the entry in <code>data</code> and <code>pawnKey ^ data</code> in
+ * <code>keys</code>, so threads sharing a table (Lazy-SMP helpers) never trust a half written entry.
+ * The probe counters are not synchronized and are approximate in that case.
+ * <p>
+ * Entry layout: score + 2^31 (bits 0-31), bit 32 set to tell a stored entry from an empty slot.
+ */
 public class PawnTranspositionTable {
-    private static final PawnTranspositionTable INSTANCE = new PawnTranspositionTable();
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
-    private static int numEntries;
-    private static int mask = 0xFFFFF;
-
-    static {
-        numEntries = mask + 1;
-        // numEntries should be a power of two
-        assert ((numEntries & mask) == 0);
-    }
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final long SCORE_OFFSET = 1L << 31;
+    private static final long OCCUPIED = 1L << 32;
 
-    private PawnTranspositionTableEntry[] table;
+    private static int defaultSizeMB = 1;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
     private long numProbes = 0;
     private long numHits = 0;
     private long numCollisions = 0;
 
-    private PawnTranspositionTable() {
-        table = new PawnTranspositionTableEntry[numEntries];
-        mLog.debug("# pawn transposition table initialized with  " + numEntries + " entries.");
+    public PawnTranspositionTable() {
+        this(defaultSizeMB);
     }
 
-    public static PawnTranspositionTable getInstance() {
-        return INSTANCE;
+    /**
+     * @param sizeMB memory to use, rounded down to a power of two number of entries
+     */
+    public PawnTranspositionTable(int sizeMB) {
+        long maxEntries = Math.max((long) sizeMB * 1024 * 1024 / BYTES_PER_ENTRY, 1);
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+
+        this.keys = new long[numEntries];
+        this.data = new long[numEntries];
+        this.mask = numEntries - 1;
+        mLog.debug("# pawn transposition table initialized with " + numEntries + " entries.");
+    }
+
+    /**
+     * Size used by tables created with the no-arg constructor.
+     */
+    public static void setDefaultSize(int sizeMB) {
+        defaultSizeMB = sizeMB;
     }
 
     public void clear() {
         clearStats();
-        for (int i = 0; i < numEntries; i++) {
-            table[i] = null;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            data[i] = 0;
         }
     }
 
@@ -43,31 +66,37 @@ public class PawnTranspositionTable {
         numCollisions = 0;
     }
 
-    private int getMaskedKey(long zobristKey) {
-        int iKey = ((int) zobristKey) & mask;
-        return iKey;
+    private int getIndex(long pawnKey) {
+        return ((int) pawnKey) & mask;
     }
 
-    public PawnTranspositionTableEntry probe(long zobristKey) {
+    /**
+     * @return the packed entry for the pawn structure, or 0 if there is none
+     */
+    public long probe(long pawnKey) {
         numProbes++;
-        PawnTranspositionTableEntry te = table[getMaskedKey(zobristKey)];
-
-        if (te != null) {
-            // compare full signature to avoid collisions
-            if (te.getZobristKey() != zobristKey) {
-                numCollisions++;
-                return null;
-            } else {
-                numHits++;
-            }
+        int ind = getIndex(pawnKey);
+        long entry = data[ind];
+        if (entry == 0) {
+            return 0;
+        }
+        if ((keys[ind] ^ entry) != pawnKey) {
+            numCollisions++;
+            return 0;
         }
+        numHits++;
+        return entry;
+    }
 
-        return te;
+    public void store(long pawnKey, int score) {
+        int ind = getIndex(pawnKey);
+        long entry = OCCUPIED | (score + SCORE_OFFSET);
+        keys[ind] = pawnKey ^ entry;
+        data[ind] = entry;
     }
 
-    public void store(long zobristKey, int score) {
-        PawnTranspositionTableEntry te = new PawnTranspositionTableEntry(zobristKey, score);
-        table[getMaskedKey(zobristKey)] = te;
+    public static int getScore(long entry) {
+        return (int) ((entry & 0xFFFFFFFFL) - SCORE_OFFSET);
     }
 
     public long getNumProbes() {
@@ -0,0 +1,63 @@
+package com.jamesswafford.chess4j.hash;
+
+
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+
+/**
+ * Leaf counts of positions already visited by a perft run, keyed by zobrist key and remaining depth.
+ * Laid out like the {@link TranspositionTable}: parallel long arrays, with <code>key ^ count</code> in
+ * <code>keys</code>, so all perft worker threads can share one table without locking and a torn read
+ * just looks like a miss. Every store replaces what was in the slot.
+ */
+public class PerftHashTable {
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final long DEPTH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys;
+    private final long[] counts;
+    private final int mask;
+
+    /**
+     * @param sizeMB memory to use, rounded down to a power of two number of entries
+     */
+    public PerftHashTable(int sizeMB) {
+        long maxEntries = Math.max((long) sizeMB * 1024 * 1024 / BYTES_PER_ENTRY, 1);
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+
+        this.keys = new long[numEntries];
+        this.counts = new long[numEntries];
+        this.mask = numEntries - 1;
+        mLog.debug("# perft hash table initialized with " + numEntries + " entries.");
+    }
+
+    private static long getKey(long zobristKey, int depth) {
+        return zobristKey ^ (depth * DEPTH_MULTIPLIER);
+    }
+
+    /**
+     * @return the number of leaves <depth> plies below the position, or -1 if not known
+     */
+    public long probe(long zobristKey, int depth) {
+        long key = getKey(zobristKey, depth);
+        int ind = ((int) key) & mask;
+        long count = counts[ind];
+        if ((keys[ind] ^ count) == key) {
+            return count;
+        }
+        return -1;
+    }
+
+    public void store(long zobristKey, int depth, long count) {
+        long key = getKey(zobristKey, depth);
+        int ind = ((int) key) & mask;
+        counts[ind] = count;
+        keys[ind] = key ^ count;
+    }
+
+    public int getNumEntries() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,361 @@
+package com.jamesswafford.chess4j.hash;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Answers of finished searches, kept across games (and, saved to disk, across restarts) so positions
+ * that come up again and again, like the first moves of every game, are answered without searching.
+ * <p>
+ * Entries are keyed by the position's Zobrist key and by the search level (see {@link #getLevel}), so
+ * a cached answer is only ever given to a search that would have been just as strong. Levels that
+ * pick at random among nearly equal moves keep up to {@link #MAX_ANSWERS} of the answers their
+ * searches gave; the cache only answers for them once the position has been searched
+ * {@link #MIN_SAMPLES} times, and then picks among those answers as often as the searches did.
+ * <p>
+ * Entries live in buckets of {@link #BUCKET_SIZE}. A new position replaces the least used entry of
+ * its bucket, the least recently used one among equals. Use counts are halved on every load, so
+ * positions that stopped coming up eventually make room.
+ */
+public final class PositionCache {
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    private static final int MAGIC = 0x43345043; // "C4PC"
+    private static final int VERSION = 1;
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_ANSWERS = 4;
+    private static final int MIN_SAMPLES = 4;
+
+    private static volatile PositionCache instance;
+
+    private final long[] keys;
+    private final int[] levels;
+    private final int[] scores;
+    private final int[] depths;
+    private final int[] uses;
+    private final int[] lastUsed;
+    // MAX_ANSWERS packed moves and how often each was given, per entry. the first move slot is 0 for
+    // an empty entry.
+    private final int[] answers;
+    private final int[] answerCounts;
+    private final int bucketMask;
+    private int clock = 0;
+    private int size = 0;
+    private long numProbes = 0;
+    private long numHits = 0;
+
+    /**
+     * @param maxEntries how many positions to keep, rounded down to a power of two
+     */
+    public PositionCache(int maxEntries) {
+        int numEntries = Integer.highestOneBit(Math.max(maxEntries, BUCKET_SIZE));
+        keys = new long[numEntries];
+        levels = new int[numEntries];
+        scores = new int[numEntries];
+        depths = new int[numEntries];
+        uses = new int[numEntries];
+        lastUsed = new int[numEntries];
+        answers = new int[numEntries * MAX_ANSWERS];
+        answerCounts = new int[numEntries * MAX_ANSWERS];
+        bucketMask = numEntries / BUCKET_SIZE - 1;
+    }
+
+    /**
+     * @return the cache searches use, or null if there is none
+     */
+    public static PositionCache getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(PositionCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * @return an identifier of how hard a search looks, part of the key of every entry
+     */
+    public static int getLevel(long maxNodes, int maxDepth, int randomMargin) {
+        long h = maxNodes * 31 + maxDepth;
+        h = h * 31 + randomMargin;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int getBucketIndex(long zobristKey) {
+        return (((int) zobristKey) & bucketMask) * BUCKET_SIZE;
+    }
+
+    private int find(long zobristKey, int level) {
+        int first = getBucketIndex(zobristKey);
+        for (int i = first; i < first + BUCKET_SIZE; i++) {
+            if (answers[i * MAX_ANSWERS] != PackedMove.NONE && keys[i] == zobristKey && levels[i] == level) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param randomized whether searches at this level pick at random among nearly equal moves
+     * @return the move to play as a {@link PackedMove}, or {@link PackedMove#NONE} if the position
+     * has to be searched
+     */
+    public synchronized int probe(Board board, int level, boolean randomized) {
+        numProbes++;
+        int ind = find(board.getZobristKey(), level);
+        if (ind == -1) {
+            return PackedMove.NONE;
+        }
+
+        int first = ind * MAX_ANSWERS;
+        int total = 0;
+        for (int i = first; i < first + MAX_ANSWERS; i++) {
+            total += answerCounts[i];
+        }
+        if (randomized && total < MIN_SAMPLES) {
+            return PackedMove.NONE;
+        }
+
+        // the first answer is the one given most often
+        int mv = answers[first];
+        if (randomized) {
+            int val = ThreadLocalRandom.current().nextInt(total);
+            for (int i = first; val >= 0; i++) {
+                mv = answers[i];
+                val -= answerCounts[i];
+            }
+        }
+
+        // a collision of keys, or keys that changed since the entry was saved
+        if (!MoveGen.isPseudoLegalMove(board, mv) || !MoveGen.isLegalMove(board, mv, MoveGen.getCheckers(board), MoveGen.getPinned(board))) {
+            clear(ind);
+            return PackedMove.NONE;
+        }
+
+        numHits++;
+        uses[ind]++;
+        lastUsed[ind] = ++clock;
+        return mv;
+    }
+
+    /**
+     * Record the answer of a finished search.
+     *
+     * @param move the move played, as a {@link PackedMove}
+     */
+    public synchronized void store(long zobristKey, int level, int move, int score, int depth) {
+        int ind = find(zobristKey, level);
+        if (ind == -1) {
+            ind = getVictim(zobristKey);
+            clear(ind);
+            size++;
+            keys[ind] = zobristKey;
+            levels[ind] = level;
+            depths[ind] = -1;
+        }
+        lastUsed[ind] = ++clock;
+        if (depth >= depths[ind]) {
+            scores[ind] = score;
+            depths[ind] = depth;
+        }
+        addAnswer(ind * MAX_ANSWERS, move, 1);
+    }
+
+    private void addAnswer(int first, int move, int count) {
+        for (int i = first; i < first + MAX_ANSWERS; i++) {
+            if (answers[i] == move || answers[i] == PackedMove.NONE) {
+                answers[i] = move;
+                answerCounts[i] += count;
+                // keep the answers ordered by how often they were given
+                for (int j = i; j > first && answerCounts[j] > answerCounts[j - 1]; j--) {
+                    int tmp = answers[j];
+                    answers[j] = answers[j - 1];
+                    answers[j - 1] = tmp;
+                    tmp = answerCounts[j];
+                    answerCounts[j] = answerCounts[j - 1];
+                    answerCounts[j - 1] = tmp;
+                }
+                return;
+            }
+        }
+        // all answer slots taken by other moves, this one is too rare to matter
+    }
+
+    /**
+     * @return the slot a new entry for <zobristKey> goes into: an empty one if there is one, otherwise
+     * the least used, least recently used entry of the bucket
+     */
+    private int getVictim(long zobristKey) {
+        int first = getBucketIndex(zobristKey);
+        int victim = first;
+        for (int i = first; i < first + BUCKET_SIZE; i++) {
+            if (answers[i * MAX_ANSWERS] == PackedMove.NONE) {
+                return i;
+            }
+            if (uses[i] < uses[victim] || (uses[i] == uses[victim] && lastUsed[i] - lastUsed[victim] < 0)) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
+
+    private void clear(int ind) {
+        if (answers[ind * MAX_ANSWERS] != PackedMove.NONE) {
+            size--;
+        }
+        keys[ind] = 0;
+        levels[ind] = 0;
+        scores[ind] = 0;
+        depths[ind] = 0;
+        uses[ind] = 0;
+        lastUsed[ind] = 0;
+        for (int i = ind * MAX_ANSWERS; i < (ind + 1) * MAX_ANSWERS; i++) {
+            answers[i] = PackedMove.NONE;
+            answerCounts[i] = 0;
+        }
+    }
+
+    /**
+     * Drop every entry, for when the Zobrist keys change.
+     */
+    public synchronized void clear() {
+        for (int ind = 0; ind < keys.length; ind++) {
+            clear(ind);
+        }
+    }
+
+    /**
+     * @return the number of positions in the cache
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getNumProbes() {
+        return numProbes;
+    }
+
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+
+    /**
+     * Write the cache to <file>, through a temporary file so a crash never leaves a half written one.
+     * <p>
+     * Layout (big endian): magic number, format version, a fingerprint of the Zobrist keys, the
+     * number of entries, then per entry its key (long), level, score, depth and use count (ints),
+     * the number of answers (byte) and each answer's move and count (ints).
+     */
+    public synchronized void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(getZobristFingerprint());
+            out.writeInt(size);
+            for (int ind = 0; ind < keys.length; ind++) {
+                int first = ind * MAX_ANSWERS;
+                if (answers[first] == PackedMove.NONE) {
+                    continue;
+                }
+                out.writeLong(keys[ind]);
+                out.writeInt(levels[ind]);
+                out.writeInt(scores[ind]);
+                out.writeInt(depths[ind]);
+                out.writeInt(uses[ind]);
+                int numAnswers = 0;
+                while (numAnswers < MAX_ANSWERS && answers[first + numAnswers] != PackedMove.NONE) {
+                    numAnswers++;
+                }
+                out.writeByte(numAnswers);
+                for (int i = first; i < first + numAnswers; i++) {
+                    out.writeInt(answers[i]);
+                    out.writeInt(answerCounts[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Unable to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Add the entries saved in <file>. A file written with other Zobrist keys is ignored, its
+     * positions would never be found.
+     *
+     * @return the number of entries read
+     */
+    public synchronized int load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a position cache, or an unsupported version of one");
+            }
+            if (in.readLong() != getZobristFingerprint()) {
+                mLog.info("# position cache " + file + " was built with other zobrist keys, ignoring it");
+                return 0;
+            }
+
+            int n = in.readInt();
+            for (int e = 0; e < n; e++) {
+                long key = in.readLong();
+                int level = in.readInt();
+                int score = in.readInt();
+                int depth = in.readInt();
+                int entryUses = in.readInt() / 2;
+                int numAnswers = in.readByte();
+                if (numAnswers < 1 || numAnswers > MAX_ANSWERS) {
+                    throw new IOException(file + " is corrupt");
+                }
+
+                int ind = find(key, level);
+                if (ind == -1) {
+                    ind = getVictim(key);
+                    // a smaller cache than the one saved keeps the most used positions
+                    if (answers[ind * MAX_ANSWERS] != PackedMove.NONE && uses[ind] >= entryUses) {
+                        in.skipBytes(numAnswers * 8);
+                        continue;
+                    }
+                    clear(ind);
+                    size++;
+                    keys[ind] = key;
+                    levels[ind] = level;
+                }
+                scores[ind] = score;
+                depths[ind] = depth;
+                uses[ind] = entryUses;
+                for (int i = 0; i < numAnswers; i++) {
+                    int mv = in.readInt();
+                    int count = in.readInt();
+                    addAnswer(ind * MAX_ANSWERS, mv, count);
+                }
+            }
+            return n;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long getZobristFingerprint() {
+        long fingerprint = 0;
+        List<Long> zobristKeys = Zobrist.getAllKeys();
+        for (long key : zobristKeys) {
+            fingerprint = fingerprint * 31 + key;
+        }
+        return fingerprint;
+    }
+}
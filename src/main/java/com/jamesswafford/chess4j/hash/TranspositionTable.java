@@ -2,42 +2,81 @@ package com.jamesswafford.chess4j.hash;
 
 
 import com.jamesswafford.chess4j.Constants;
-import com.jamesswafford.chess4j.board.Move;
-import eu.usrv.yamcore.auxiliary.LogHelper;
-
-
+import com.jamesswafford.chess4j.board.PackedMove;
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+
+/**
+ * Transposition table stored in two parallel long arrays. Each slot holds the packed entry in
+ * <code>data</code> and <code>zobristKey ^ data</code> in <code>keys</code>, so a probe racing with a
+ * store from another thread sees a key that no longer validates and treats the slot as a miss.
+ * No locks are taken, and nothing is allocated per probe or store.
+ * <p>
+ * Slots are grouped into buckets of 2 or 4. A store replaces the entry for the same position if
+ * present, otherwise the shallowest entry, preferring entries left over from earlier searches.
+ * <p>
+ * Entry layout: {@link PackedMove} (bits 0-26), score + 2^16 (bits 27-43), depth (bits 44-50),
+ * type (bits 51-52), age (bits 53-58).
+ */
 public class TranspositionTable {
-    private static final TranspositionTable INSTANCE = new TranspositionTable();
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
-    private static int numEntries;
-    private static int mask = 0xFFFFF; // 1 million entries
-
-    static {
-        numEntries = mask + 1;
-        // numEntries should be a power of two
-        assert ((numEntries & mask) == 0);
-    }
-
-    private TranspositionTableEntry[] table;
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int SCORE_OFFSET = 1 << 16;
+    private static final int MAX_DEPTH = 127;
+    private static final int MAX_AGE = 63;
+    private static final int MOVE_MASK = (1 << 27) - 1;
+    private static final TranspositionTableEntryType[] TYPES = TranspositionTableEntryType.values();
+
+    private static int defaultSizeMB = 8;
+    private static int defaultBucketSize = 4;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketSize;
+    private final int bucketMask;
+    private int age = 0;
     private long numProbes = 0;
     private long numHits = 0;
     private long numCollisions = 0;
 
-    private TranspositionTable() {
-        table = new TranspositionTableEntry[numEntries];
-        clear();
-        mLog.debug("# transposition table initialized with  " + numEntries + " entries.");
+    public TranspositionTable() {
+        this(defaultSizeMB, defaultBucketSize);
+    }
+
+    /**
+     * @param sizeMB     memory to use, rounded down to a power of two number of entries
+     * @param bucketSize entries per bucket, 2 or 4
+     */
+    public TranspositionTable(int sizeMB, int bucketSize) {
+        if (bucketSize != 2 && bucketSize != 4) {
+            throw new IllegalArgumentException("bucket size must be 2 or 4: " + bucketSize);
+        }
+        long maxEntries = Math.max((long) sizeMB * 1024 * 1024 / BYTES_PER_ENTRY, bucketSize);
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+
+        this.keys = new long[numEntries];
+        this.data = new long[numEntries];
+        this.bucketSize = bucketSize;
+        this.bucketMask = numEntries / bucketSize - 1;
+        mLog.debug("# transposition table initialized with " + numEntries + " entries in buckets of " + bucketSize + ".");
     }
 
-    public static TranspositionTable getInstance() {
-        return INSTANCE;
+    /**
+     * Size used by tables created with the no-arg constructor.
+     */
+    public static void setDefaultSize(int sizeMB, int bucketSize) {
+        defaultSizeMB = sizeMB;
+        defaultBucketSize = bucketSize;
     }
 
     public void clear() {
         clearStats();
-        for (int i = 0; i < numEntries; i++) {
-            table[i] = null;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            data[i] = 0;
         }
+        age = 0;
     }
 
     public void clearStats() {
@@ -46,26 +85,39 @@ public class TranspositionTable {
         numCollisions = 0;
     }
 
-    private int getMaskedKey(long zobristKey) {
-        int iKey = ((int) zobristKey) & mask;
-        return iKey;
+    /**
+     * Start a new search. Entries stored by earlier searches stay usable but become the first
+     * candidates for replacement.
+     */
+    public void nextAge() {
+        age = (age + 1) & MAX_AGE;
     }
 
-    public TranspositionTableEntry probe(long zobristKey) {
-        numProbes++;
-        TranspositionTableEntry te = table[getMaskedKey(zobristKey)];
+    private int getBucketIndex(long zobristKey) {
+        return (((int) zobristKey) & bucketMask) * bucketSize;
+    }
 
-        if (te != null) {
-            // compare full signature to avoid collisions
-            if (te.getZobristKey() != zobristKey) {
-                numCollisions++;
-                return null;
-            } else {
-                numHits++;
+    /**
+     * @return the packed entry for the position, or 0 if there is none
+     */
+    public long probe(long zobristKey) {
+        numProbes++;
+        int first = getBucketIndex(zobristKey);
+        boolean occupied = false;
+        for (int i = first; i < first + bucketSize; i++) {
+            long entry = data[i];
+            if (entry != 0) {
+                if ((keys[i] ^ entry) == zobristKey) {
+                    numHits++;
+                    return entry;
+                }
+                occupied = true;
             }
         }
-
-        return te;
+        if (occupied) {
+            numCollisions++;
+        }
+        return 0;
     }
 
     /**
@@ -76,9 +128,9 @@ public class TranspositionTable {
      * @param zobristKey
      * @param score
      * @param depth
-     * @param move
+     * @param move       the best move as a {@link PackedMove}, or {@link PackedMove#NONE}
      */
-    public void store(TranspositionTableEntryType entryType, long zobristKey, int score, int depth, Move move) {
+    public void store(TranspositionTableEntryType entryType, long zobristKey, int score, int depth, int move) {
         if (isMateScore(score)) {
             if (entryType == TranspositionTableEntryType.UPPER_BOUND) {
                 // failing low on mate. don't allow a cutoff, just store any associated move
@@ -99,8 +151,51 @@ public class TranspositionTable {
             }
         }
 
-        TranspositionTableEntry te = new TranspositionTableEntry(entryType, zobristKey, score, depth, move);
-        table[getMaskedKey(zobristKey)] = te;
+        assert ((move & ~MOVE_MASK) == 0);
+        long entry = move | ((long) (score + SCORE_OFFSET) << 27) | ((long) Math.max(0, Math.min(depth, MAX_DEPTH)) << 44) | ((long) entryType.ordinal() << 51) | ((long) age << 53);
+
+        int first = getBucketIndex(zobristKey);
+        int replace = first;
+        int replaceValue = Integer.MAX_VALUE;
+        for (int i = first; i < first + bucketSize; i++) {
+            long current = data[i];
+            if (current == 0 || (keys[i] ^ current) == zobristKey) {
+                replace = i;
+                break;
+            }
+            // shallow entries go first, entries from an earlier search before anything current
+            int value = getDepth(current) + (getAge(current) == age ? MAX_DEPTH + 1 : 0);
+            if (value < replaceValue) {
+                replace = i;
+                replaceValue = value;
+            }
+        }
+
+        keys[replace] = zobristKey ^ entry;
+        data[replace] = entry;
+    }
+
+    public static TranspositionTableEntryType getType(long entry) {
+        return TYPES[(int) (entry >>> 51) & 3];
+    }
+
+    public static int getScore(long entry) {
+        return (int) ((entry >>> 27) & 0x1FFFF) - SCORE_OFFSET;
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 44) & MAX_DEPTH;
+    }
+
+    private static int getAge(long entry) {
+        return (int) (entry >>> 53) & MAX_AGE;
+    }
+
+    /**
+     * @return the stored move as a {@link PackedMove}, or {@link PackedMove#NONE}
+     */
+    public static int getMove(long entry) {
+        return (int) entry & MOVE_MASK;
     }
 
     private boolean isMateScore(int score) {
@@ -119,6 +214,10 @@ public class TranspositionTable {
         return -getCheckMateBound();
     }
 
+    public int getNumEntries() {
+        return keys.length;
+    }
+
     public long getNumProbes() {
         return numProbes;
     }
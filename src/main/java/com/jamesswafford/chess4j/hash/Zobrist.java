@@ -11,68 +11,64 @@ import com.jamesswafford.chess4j.utils.PieceFactory;
 import java.util.*;
 
 
+/**
+ * Zobrist keys. They come from a fixed seed, so a position has the same key in every run; the opening
+ * book may still replace them with the keys it was built with.
+ */
 public final class Zobrist {
 
-    private static Map<Piece, Long[]> pieceMap = new HashMap<Piece, Long[]>();
-    private static Map<Color, Long> playerMap = new HashMap<Color, Long>();
-    private static Map<CastlingRights, Long> castlingMap = new HashMap<CastlingRights, Long>();
-    private static Map<Square, Long> epMap = new HashMap<Square, Long>();
+    private static final long SEED = 0x4C6F6F7447616D65L;
 
-    static {
-        Random r = new Random();
-        createZobristKeys(Pawn.BLACK_PAWN);
-        createZobristKeys(Pawn.WHITE_PAWN);
-        createZobristKeys(Rook.BLACK_ROOK);
-        createZobristKeys(Rook.WHITE_ROOK);
-        createZobristKeys(Knight.BLACK_KNIGHT);
-        createZobristKeys(Knight.WHITE_KNIGHT);
-        createZobristKeys(Bishop.BLACK_BISHOP);
-        createZobristKeys(Bishop.WHITE_BISHOP);
-        createZobristKeys(Queen.BLACK_QUEEN);
-        createZobristKeys(Queen.WHITE_QUEEN);
-        createZobristKeys(King.BLACK_KING);
-        createZobristKeys(King.WHITE_KING);
-
-        playerMap.put(Color.BLACK, r.nextLong());
-        playerMap.put(Color.WHITE, r.nextLong());
+    // indexed by Piece#getIndex() - 1, then square
+    private static final long[][] pieceKeys = new long[12][Square.NUM_SQUARES];
+    // white, black
+    private static final long[] playerKeys = new long[2];
+    // indexed by CastlingRights ordinal
+    private static final long[] castlingKeys = new long[CastlingRights.values().length];
+    private static final long[] epKeys = new long[Square.NUM_SQUARES];
 
-        Set<CastlingRights> crs = EnumSet.allOf(CastlingRights.class);
-        for (CastlingRights cr : crs) {
-            castlingMap.put(cr, r.nextLong());
+    static {
+        Random r = new Random(SEED);
+        for (long[] keys : pieceKeys) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = r.nextLong();
+            }
         }
-
-        List<Square> sqs = Square.allSquares();
-        for (Square sq : sqs) {
-            epMap.put(sq, r.nextLong());
+        for (int i = 0; i < playerKeys.length; i++) {
+            playerKeys[i] = r.nextLong();
+        }
+        for (int i = 0; i < castlingKeys.length; i++) {
+            castlingKeys[i] = r.nextLong();
+        }
+        for (int i = 0; i < epKeys.length; i++) {
+            epKeys[i] = r.nextLong();
         }
     }
 
     private Zobrist() {
     }
 
-    private static void createZobristKeys(Piece p) {
-        Random r = new Random();
-        Long[] keys = new Long[Square.NUM_SQUARES];
-        for (int i = 0; i < keys.length; i++) {
-            keys[i] = r.nextLong();
-        }
-        pieceMap.put(p, keys);
+    public static long getPieceKey(Square sq, Piece p) {
+        return pieceKeys[p.getIndex() - 1][sq.value()];
     }
 
-    public static long getPieceKey(Square sq, Piece p) {
-        return pieceMap.get(p)[sq.value()];
+    /**
+     * @param pieceIndex see {@link Piece#getIndex()}
+     */
+    public static long getPieceKey(int sq, int pieceIndex) {
+        return pieceKeys[pieceIndex - 1][sq];
     }
 
     public static long getPlayerKey(Color c) {
-        return playerMap.get(c);
+        return playerKeys[c.isWhite() ? 0 : 1];
     }
 
     public static long getCastlingKey(CastlingRights cr) {
-        return castlingMap.get(cr);
+        return castlingKeys[cr.ordinal()];
     }
 
     public static long getEnPassantKey(Square sq) {
-        return epMap.get(sq);
+        return epKeys[sq.value()];
     }
 
     public static long getPawnKey(Board b) {
@@ -103,16 +99,16 @@ public final class Zobrist {
         Set<CastlingRights> crs = EnumSet.allOf(CastlingRights.class);
         for (CastlingRights cr : crs) {
             if (b.hasCastlingRight(cr)) {
-                key ^= castlingMap.get(cr);
+                key ^= getCastlingKey(cr);
             }
         }
 
         Square epSquare = b.getEPSquare();
         if (epSquare != null) {
-            key ^= epMap.get(epSquare);
+            key ^= getEnPassantKey(epSquare);
         }
 
-        key ^= playerMap.get(b.getPlayerToMove());
+        key ^= getPlayerKey(b.getPlayerToMove());
 
         return key;
     }
@@ -124,22 +120,21 @@ public final class Zobrist {
 
         for (String strPiece : strPieces) {
             Piece piece = PieceFactory.getPiece(strPiece);
-            Long[] pieceKeys = pieceMap.get(piece);
             for (int i = 0; i < Square.NUM_SQUARES; i++) {
-                keys.add(pieceKeys[i]);
+                keys.add(pieceKeys[piece.getIndex() - 1][i]);
             }
         }
 
-        keys.add(playerMap.get(Color.WHITE));
-        keys.add(playerMap.get(Color.BLACK));
+        keys.add(playerKeys[0]);
+        keys.add(playerKeys[1]);
 
-        keys.add(castlingMap.get(CastlingRights.BLACK_QUEENSIDE));
-        keys.add(castlingMap.get(CastlingRights.BLACK_KINGSIDE));
-        keys.add(castlingMap.get(CastlingRights.WHITE_QUEENSIDE));
-        keys.add(castlingMap.get(CastlingRights.WHITE_KINGSIDE));
+        keys.add(getCastlingKey(CastlingRights.BLACK_QUEENSIDE));
+        keys.add(getCastlingKey(CastlingRights.BLACK_KINGSIDE));
+        keys.add(getCastlingKey(CastlingRights.WHITE_QUEENSIDE));
+        keys.add(getCastlingKey(CastlingRights.WHITE_KINGSIDE));
 
         for (int i = 0; i < Square.NUM_SQUARES; i++) {
-            keys.add(epMap.get(Square.valueOf(i)));
+            keys.add(epKeys[i]);
         }
 
         return keys;
@@ -152,23 +147,21 @@ public final class Zobrist {
 
         for (String strPiece : strPieces) {
             Piece piece = PieceFactory.getPiece(strPiece);
-            Long[] pieceKeys = new Long[Square.NUM_SQUARES];
             for (int i = 0; i < Square.NUM_SQUARES; i++) {
-                pieceKeys[i] = keys.get(ind++);
+                pieceKeys[piece.getIndex() - 1][i] = keys.get(ind++);
             }
-            pieceMap.put(piece, pieceKeys);
         }
 
-        playerMap.put(Color.WHITE, keys.get(ind++));
-        playerMap.put(Color.BLACK, keys.get(ind++));
+        playerKeys[0] = keys.get(ind++);
+        playerKeys[1] = keys.get(ind++);
 
-        castlingMap.put(CastlingRights.BLACK_QUEENSIDE, keys.get(ind++));
-        castlingMap.put(CastlingRights.BLACK_KINGSIDE, keys.get(ind++));
-        castlingMap.put(CastlingRights.WHITE_QUEENSIDE, keys.get(ind++));
-        castlingMap.put(CastlingRights.WHITE_KINGSIDE, keys.get(ind++));
+        castlingKeys[CastlingRights.BLACK_QUEENSIDE.ordinal()] = keys.get(ind++);
+        castlingKeys[CastlingRights.BLACK_KINGSIDE.ordinal()] = keys.get(ind++);
+        castlingKeys[CastlingRights.WHITE_QUEENSIDE.ordinal()] = keys.get(ind++);
+        castlingKeys[CastlingRights.WHITE_KINGSIDE.ordinal()] = keys.get(ind++);
 
         for (int i = 0; i < Square.NUM_SQUARES; i++) {
-            epMap.put(Square.valueOf(i), keys.get(ind++));
+            epKeys[i] = keys.get(ind++);
         }
     }
 }
@@ -7,11 +7,11 @@ import com.jamesswafford.chess4j.board.squares.File;
 import com.jamesswafford.chess4j.board.squares.Rank;
 import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.pieces.Piece;
-import eu.usrv.yamcore.auxiliary.LogHelper;
+import com.jamesswafford.chess4j.utils.EngineLog;
 
 
 public class DrawBoard {
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
     // private static final Log loggerX = LogFactory.getLog( DrawBoard.class );
 
     public static void drawBoard(Board b) {
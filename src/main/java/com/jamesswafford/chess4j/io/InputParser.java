@@ -3,41 +3,46 @@ package com.jamesswafford.chess4j.io;
 
 import com.jamesswafford.chess4j.ChessEngineApp;
 import com.jamesswafford.chess4j.Color;
-import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.Undo;
 import com.jamesswafford.chess4j.book.BookMove;
+import com.jamesswafford.chess4j.book.BookPositions;
+import com.jamesswafford.chess4j.book.OpeningBookConverter;
+import com.jamesswafford.chess4j.book.PGNBookBuilder;
 import com.jamesswafford.chess4j.eval.Eval;
 import com.jamesswafford.chess4j.exceptions.IllegalMoveException;
 import com.jamesswafford.chess4j.exceptions.ParseException;
-import com.jamesswafford.chess4j.search.Search;
+import com.jamesswafford.chess4j.hash.PerftHashTable;
+import com.jamesswafford.chess4j.search.Difficulty;
+import com.jamesswafford.chess4j.search.EngineContext;
 import com.jamesswafford.chess4j.search.SearchIterator;
+import com.jamesswafford.chess4j.utils.EngineLog;
 import com.jamesswafford.chess4j.utils.GameResult;
 import com.jamesswafford.chess4j.utils.GameStatus;
 import com.jamesswafford.chess4j.utils.GameStatusChecker;
 import com.jamesswafford.chess4j.utils.Perft;
 import eu.usrv.legacylootgames.chess.ChessEngineProxy;
-import eu.usrv.yamcore.auxiliary.LogHelper;
 
-import java.io.FileInputStream;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 
 public class InputParser {
 
-    private static final InputParser INSTANCE = new InputParser();
-    private static final LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
+    private final EngineContext ctx;
     private boolean forceMode;
-    private Thread searchThread;
     private Color engineColor;
 
-    private InputParser() {
+    public InputParser(EngineContext ctx) {
+        this.ctx = ctx;
     }
 
-    public static InputParser getInstance() {
-        return INSTANCE;
+    public EngineContext getContext() {
+        return ctx;
     }
 
     public void parseCommand(String command) throws IllegalMoveException, ParseException {
@@ -51,14 +56,22 @@ public class InputParser {
         } else if ("black".equals(cmd)) {
         } else if ("bk".equals(cmd)) {
             bk();
+        } else if ("book".equals(cmd)) {
+            book(input);
+        } else if ("book2bin".equals(cmd)) {
+            book2bin(input);
         } else if ("bkmoves".equals(cmd)) {
             bkmoves();
         } else if ("computer".equals(cmd)) {
         } else if ("db".equals(cmd)) {
             db();
+        } else if ("difficulty".equals(cmd)) {
+            difficulty(input);
+        } else if ("divide".equals(cmd)) {
+            divide(input);
         } else if ("draw".equals(cmd)) {
         } else if ("easy".equals(cmd)) {
-            SearchIterator.ponderEnabled = false;
+            ctx.setPonderEnabled(false);
         } else if ("eval".equals(cmd)) {
             eval();
         } else if ("force".equals(cmd)) {
@@ -66,7 +79,7 @@ public class InputParser {
         } else if ("go".equals(cmd)) {
             go();
         } else if ("hard".equals(cmd)) {
-            SearchIterator.ponderEnabled = true;
+            ctx.setPonderEnabled(true);
         } else if ("hint".equals(cmd)) {
         } else if ("ics".equals(cmd)) {
         } else if ("level".equals(cmd)) {
@@ -76,7 +89,7 @@ public class InputParser {
         } else if ("new".equals(cmd)) {
             newGame();
         } else if ("nopost".equals(cmd)) {
-            SearchIterator.showThinking = false;
+            ctx.setShowThinking(false);
         } else if ("otim".equals(cmd)) {
         } else if ("perft".equals(cmd)) {
             perft(input);
@@ -87,7 +100,7 @@ public class InputParser {
         } else if ("ping".equals(cmd)) {
             ping(input);
         } else if ("post".equals(cmd)) {
-            SearchIterator.showThinking = true;
+            ctx.setShowThinking(true);
         } else if ("protover".equals(cmd)) {
             protover(input);
         } else if ("quit".equals(cmd)) {
@@ -122,16 +135,47 @@ public class InputParser {
     }
 
     private void bk() {
-        SearchIterator.useOpeningBook = !SearchIterator.useOpeningBook;
-        if (SearchIterator.useOpeningBook) {
+        ctx.setUseOpeningBook(!ctx.isUseOpeningBook());
+        if (ctx.isUseOpeningBook()) {
             mLog.info("\topening book on.\n\n");
         } else {
             mLog.info("\topening book off.\n\n");
         }
     }
 
+    /**
+     * book &lt;file&gt;
+     * <p>
+     * Open an opening book for all games and turn it on for this one. Files ending in .bin are
+     * binary books (see book2bin), anything else an SQLite book, created if it doesn't exist.
+     * <p>
+     * A book built with other Zobrist keys is refused while games are attached to the engine proxy.
+     * Otherwise the engine switches to its keys and this game starts over, its board and hash tables
+     * were keyed with the old ones.
+     */
+    private void book(String[] input) throws ParseException {
+        if (input.length < 2) {
+            throw new ParseException("Usage: book <file>");
+        }
+        try {
+            if (ChessEngineApp.initBook(input[1], ChessEngineProxy.getInstance().hasAttachedGames())) {
+                newGame();
+                ctx.getTranspositionTable().clear();
+                ctx.getPawnTranspositionTable().clear();
+                mLog.info("# zobrist keys changed, started a new game");
+            }
+            ctx.setUseOpeningBook(true);
+        } catch (Exception e) {
+            mLog.info("# unable to open opening book " + input[1] + ": " + e);
+        }
+    }
+
     private void bkmoves() {
-        List<BookMove> bookMoves = ChessEngineApp.getOpeningBook().getMoves(Board.INSTANCE);
+        if (ChessEngineApp.getOpeningBook() == null) {
+            mLog.info("no opening book open.");
+            return;
+        }
+        List<BookMove> bookMoves = ChessEngineApp.getOpeningBook().getMoves(ctx.getBoard());
         mLog.info("book moves:");
         for (BookMove bookMove : bookMoves) {
             mLog.info("\t" + bookMove);
@@ -139,12 +183,26 @@ public class InputParser {
     }
 
     private void db() {
-        DrawBoard.drawBoard(Board.INSTANCE);
+        DrawBoard.drawBoard(ctx.getBoard());
+    }
+
+    /**
+     * difficulty &lt;preset&gt;
+     * <p>
+     * Limit the engine's searches by one of the {@link Difficulty} presets.
+     */
+    private void difficulty(String[] input) throws ParseException {
+        Difficulty difficulty = input.length > 1 ? Difficulty.fromName(input[1]) : null;
+        if (difficulty == null) {
+            throw new ParseException("Unknown difficulty, expected one of " + Arrays.toString(Difficulty.values()));
+        }
+        difficulty.apply(ctx);
+        mLog.info("# difficulty: " + difficulty + ", max nodes: " + difficulty.getMaxNodes() + ", max depth: " + difficulty.getMaxDepth() + ", random margin: " + difficulty.getRandomMargin());
     }
 
     private void eval() {
-        int eval = Eval.eval(Board.INSTANCE);
-        ChessEngineProxy.getInstance().publishAnswer("eval=" + eval);
+        int eval = Eval.eval(ctx, ctx.getBoard());
+        ChessEngineProxy.getInstance().publishAnswer(ctx.getToken(), "eval=" + eval);
         //logger.info( "eval=" + eval );
     }
 
@@ -171,7 +229,7 @@ public class InputParser {
         mLog.debug("# level: " + mps + ", " + base + ", " + increment);
         increment *= 1000;
         mLog.debug("# increment: " + increment + " ms.");
-        SearchIterator.incrementMS = increment.intValue();
+        ctx.setIncrementMS(increment.intValue());
     }
 
     /**
@@ -180,7 +238,7 @@ public class InputParser {
      * The only bad consequence is that xboard's Move Now menu command will do nothing.
      */
     private void moveNow() {
-        if (!SearchIterator.isPondering()) {
+        if (!ctx.isPondering()) {
             stopSearchThread();
         }
     }
@@ -188,17 +246,48 @@ public class InputParser {
     private void newGame() {
         stopSearchThread();
         forceMode = false;
-        Board.INSTANCE.resetBoard();
+        ctx.getBoard().resetBoard();
         engineColor = Color.BLACK;
-        SearchIterator.maxDepth = 0;
+        ctx.setMaxDepth(0);
+        ctx.setMaxNodes(0);
+        ctx.setRandomMargin(0);
     }
 
+    /**
+     * perft &lt;depth&gt; [hash MB]
+     */
     private void perft(String[] input) {
         int depth = Integer.valueOf(input[1]);
-        DrawBoard.drawBoard(Board.INSTANCE);
+        DrawBoard.drawBoard(ctx.getBoard());
         long start = System.currentTimeMillis();
-        long nodes = Perft.perft(Board.INSTANCE, depth);
+        long nodes = Perft.perft(ctx.getBoard(), depth, Perft.DEFAULT_SPLIT_DEPTH, getPerftHashTable(input));
         long end = System.currentTimeMillis();
+        printPerftStats(nodes, start, end);
+    }
+
+    /**
+     * divide &lt;depth&gt; [hash MB]
+     */
+    private void divide(String[] input) {
+        int depth = Integer.valueOf(input[1]);
+        DrawBoard.drawBoard(ctx.getBoard());
+        long start = System.currentTimeMillis();
+        Map<Move, Long> counts = Perft.divide(ctx.getBoard(), depth, Perft.DEFAULT_SPLIT_DEPTH, getPerftHashTable(input));
+        long end = System.currentTimeMillis();
+        long nodes = 0;
+        for (Map.Entry<Move, Long> count : counts.entrySet()) {
+            mLog.info("# " + count.getKey() + ": " + count.getValue());
+            nodes += count.getValue();
+        }
+        mLog.info("# moves: " + counts.size());
+        printPerftStats(nodes, start, end);
+    }
+
+    private PerftHashTable getPerftHashTable(String[] input) {
+        return input.length > 2 ? new PerftHashTable(Integer.valueOf(input[2])) : null;
+    }
+
+    private void printPerftStats(long nodes, long start, long end) {
         if (end == start)
             end = start + 1; // HACK to avoid div 0
         DecimalFormat df = new DecimalFormat("0,000");
@@ -207,22 +296,71 @@ public class InputParser {
         mLog.info("# rate: " + df.format(nodes * 1000 / (end - start)) + " n/s\n");
     }
 
-    private void pgn2book(String[] input) {
+    /**
+     * book2bin &lt;pgn file or SQLite book&gt; &lt;binary book&gt;
+     * <p>
+     * Build a binary opening book. Files ending in .pgn are read as games, anything else as a SQLite
+     * book.
+     */
+    private void book2bin(String[] input) throws ParseException {
+        if (input.length < 3) {
+            throw new ParseException("Usage: book2bin <pgn file or SQLite book> <binary book>");
+        }
+        java.io.File in = new java.io.File(input[1]);
+        java.io.File out = new java.io.File(input[2]);
+        if (!in.exists()) {
+            mLog.info("file " + input[1] + " not found.");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            long n;
+            if (in.getName().toLowerCase().endsWith(".pgn")) {
+                n = OpeningBookConverter.fromPGN(in, out, OpeningBookConverter.DEFAULT_PGN_PLIES, Runtime.getRuntime().availableProcessors());
+            } else {
+                n = OpeningBookConverter.fromSQLite(in, out);
+            }
+            DecimalFormat df = new DecimalFormat("0.00");
+            long elapsed = System.currentTimeMillis() - startTime;
+            mLog.info("wrote " + n + " book moves to " + out + " in " + df.format(elapsed / 1000.0) + " seconds.");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * pgn2book &lt;pgn file&gt; [threads]
+     * <p>
+     * Add the opening moves of the games in a PGN file to the opening book. Games are parsed on
+     * [threads] threads, by default one per processor.
+     */
+    private void pgn2book(String[] input) throws ParseException {
+        if (input.length < 2) {
+            throw new ParseException("Usage: pgn2book <pgn file> [threads]");
+        }
+        if (ChessEngineApp.getOpeningBook() == null) {
+            mLog.info("no opening book open, open one with book <file> first.");
+            return;
+        }
+        if (ChessEngineApp.getOpeningBook().isReadOnly()) {
+            mLog.info("the opening book is read only, build a binary book with book2bin instead.");
+            return;
+        }
         String fName = input[1];
+        int numThreads = input.length > 2 ? Integer.parseInt(input[2]) : Runtime.getRuntime().availableProcessors();
         java.io.File f = new java.io.File(fName);
         if (f.exists()) {
             long startTime = System.currentTimeMillis();
             mLog.info("processing pgn: " + fName + " ...");
-            mLog.info("doing dry run...");
-            int n;
             try {
-                n = processPGNFile(f, true);
-                mLog.info("\nadding " + n + " games to book...");
-                processPGNFile(f, false);
+                PGNBookBuilder builder = new PGNBookBuilder(OpeningBookConverter.DEFAULT_PGN_PLIES, numThreads);
+                BookPositions positions = builder.build(f);
+                mLog.info("read " + builder.getNumGames() + " games (" + builder.getNumErrors() + " skipped), adding " + positions.size() + " book moves...");
+                ChessEngineApp.getOpeningBook().addAll(positions);
                 DecimalFormat df = new DecimalFormat("0.00");
                 long elapsed = System.currentTimeMillis() - startTime;
-                mLog.info("\nfinished in " + df.format(Double.valueOf(elapsed) / 1000.0) + " seconds.");
-                Board.INSTANCE.resetBoard();
+                mLog.info("finished in " + df.format(Double.valueOf(elapsed) / 1000.0) + " seconds.");
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -231,36 +369,6 @@ public class InputParser {
         }
     }
 
-    private int processPGNFile(java.io.File f, boolean dryRun) throws Exception {
-        int n = 0;
-
-        try {
-            if (!dryRun) {
-                ChessEngineApp.getOpeningBook().dropIndexes();
-            }
-
-            FileInputStream fis = new FileInputStream(f);
-            PGNIterator it = new PGNIterator(fis);
-            PGNGame pgnGame;
-            while ((pgnGame = it.next()) != null) {
-                if ((n % 1000) == 0) {
-                    System.out.println(".");
-                }
-                if (!dryRun) {
-                    ChessEngineApp.getOpeningBook().addToBook(pgnGame);
-                }
-                n++;
-            }
-            fis.close();
-        } finally {
-            if (!dryRun) {
-                ChessEngineApp.getOpeningBook().addIndexes();
-            }
-        }
-
-        return n;
-    }
-
     /**
      * Leave force mode and set the engine to play the color that is not on move.
      * Associate the opponent's clock with the color that is on move, the engine's
@@ -282,7 +390,7 @@ public class InputParser {
      * the pong should not be sent until after the move is made.
      */
     private void ping(String[] input) {
-        if (!SearchIterator.isPondering()) {
+        if (!ctx.isPondering()) {
             stopSearchThread();
         }
         mLog.info("pong " + input[1]);
@@ -313,8 +421,8 @@ public class InputParser {
      */
     private void remove() {
         stopSearchThread();
-        Board.INSTANCE.undoLastMove();
-        Board.INSTANCE.undoLastMove();
+        ctx.getBoard().undoLastMove();
+        ctx.getBoard().undoLastMove();
     }
 
     /**
@@ -346,7 +454,7 @@ public class InputParser {
 
         mLog.info("# result : " + result + " : " + gameResult);
 
-        List<Undo> undos = Board.INSTANCE.getUndos();
+        List<Undo> undos = ctx.getBoard().getUndos();
         List<Move> gameMoves = new ArrayList<Move>();
         StringBuilder sb = new StringBuilder();
         for (Undo undo : undos) {
@@ -356,6 +464,13 @@ public class InputParser {
 
         mLog.info("# game moves: " + sb);
 
+        if (ChessEngineApp.getOpeningBook() == null) {
+            return;
+        }
+        if (ChessEngineApp.getOpeningBook().isReadOnly()) {
+            mLog.info("# the opening book is read only, not learning from this game");
+            return;
+        }
         ChessEngineApp.getOpeningBook().learn(gameMoves, engineColor, gameResult);
     }
 
@@ -367,7 +482,7 @@ public class InputParser {
     private void sd(String[] input) {
         Integer depth = Integer.valueOf(input[1]);
         mLog.info("# setting depth to : " + depth);
-        SearchIterator.maxDepth = depth;
+        ctx.setMaxDepth(depth);
     }
 
     private void setboard(String[] input) {
@@ -379,11 +494,11 @@ public class InputParser {
             fen.append(input[i]);
         }
         try {
-            FenParser.setPos(Board.INSTANCE, fen.toString());
+            FenParser.setPos(ctx.getBoard(), fen.toString());
         } catch (ParseException e) {
             e.printStackTrace();
         }
-        DrawBoard.drawBoard(Board.INSTANCE);
+        DrawBoard.drawBoard(ctx.getBoard());
     }
 
     /**
@@ -393,7 +508,7 @@ public class InputParser {
         Integer time = Integer.valueOf(input[1]);
         time *= 10; // centiseconds to milliseconds
         mLog.info("# MY TIME: " + time);
-        SearchIterator.remainingTimeMS = time;
+        ctx.setRemainingTimeMS(time);
     }
 
     /**
@@ -401,7 +516,7 @@ public class InputParser {
      * "force" mode first. We don't have to worry about undoing a move the engine made.
      */
     private void undo() {
-        Board.INSTANCE.undoLastMove();
+        ctx.getBoard().undoLastMove();
     }
 
     /**
@@ -411,18 +526,18 @@ public class InputParser {
     private void usermove(String[] input) throws IllegalMoveException, ParseException {
         String strMove = input[1];
         MoveParser mp = new MoveParser();
-        Move mv = mp.parseMove(strMove, Board.INSTANCE);
-        Board.INSTANCE.applyMove(mv);
+        Move mv = mp.parseMove(strMove, ctx.getBoard());
+        ctx.getBoard().applyMove(mv);
 
         if (!forceMode) {
-            boolean predicted = mv.equals(SearchIterator.getPonderMove());
-            mLog.info("# pondering?: " + SearchIterator.isPondering() + ", predicted?: " + predicted);
+            boolean predicted = mv.equals(ctx.getPonderMove());
+            mLog.info("# pondering?: " + ctx.isPondering() + ", predicted?: " + predicted);
 
             boolean startNewSearch;
-            synchronized (SearchIterator.ponderMutex) {
-                if (SearchIterator.isPondering() && predicted) {
-                    SearchIterator.calculateSearchTimes();
-                    SearchIterator.stopPondering();
+            synchronized (ctx.ponderMutex) {
+                if (ctx.isPondering() && predicted) {
+                    SearchIterator.calculateSearchTimes(ctx);
+                    SearchIterator.stopPondering(ctx);
                     startNewSearch = false;
                 } else {
                     startNewSearch = true;
@@ -446,29 +561,20 @@ public class InputParser {
      * Stop the search thread, which may or may not be in pondering mode.
      */
     private void stopSearchThread() {
-        if (searchThread == null) {
-            return;
-        }
-        try {
-            SearchIterator.abortIterator = true;
-            Search.abortSearch = true;
-            searchThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        SearchIterator.stop(ctx);
     }
 
     private void thinkAndMakeMove() {
         // associate clock with player on move
-        engineColor = Board.INSTANCE.getPlayerToMove();
+        engineColor = ctx.getBoard().getPlayerToMove();
 
-        GameStatus gs = GameStatusChecker.getGameStatus();
+        GameStatus gs = GameStatusChecker.getGameStatus(ctx.getBoard());
         if (gs != GameStatus.INPROGRESS) {
-            PrintGameResult.printResult(gs);
+            PrintGameResult.printResult(ctx, gs);
             return;
         }
 
-        searchThread = SearchIterator.think();
+        SearchIterator.think(ctx);
     }
 
 }
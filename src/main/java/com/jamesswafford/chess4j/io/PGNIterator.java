@@ -21,7 +21,7 @@ public class PGNIterator {
     public PGNGame next() throws IOException, ParseException, IllegalMoveException {
 
         PGNParser parser = new PGNParser();
-        String nextGame = getNextPGN();
+        String nextGame = nextGameText();
 
         if (nextGame != null) {
             return parser.parseGame(nextGame);
@@ -47,13 +47,15 @@ public class PGNIterator {
     }
 
     /**
-     * The first line should be a PGN tag.
+     * Read the text of the next game without parsing it, so it can be handed to a {@link PGNParser}
+     * on another thread. The first line should be a PGN tag. After a {@link ParseException} the
+     * iterator can go on with the game after the broken one.
      *
-     * @return
+     * @return the game's tags and move text, or null at the end of the stream
      * @throws IOException
      * @throws ParseException
      */
-    private String getNextPGN() throws IOException, ParseException {
+    public String nextGameText() throws IOException, ParseException {
 
         StringBuilder sb = new StringBuilder();
 
@@ -21,30 +21,46 @@ public final class PGNParser {
 
     private static final String tagPattern = "\\[([A-Za-z0-9_]+)\\s+\\\"(.*?)\\\"\\]";
 
-    private List<Move> getMoves(String pgn) throws ParseException, IllegalMoveException {
+    // compiled once, parsers run on several threads when building a book
+    private static final Pattern TAG = Pattern.compile(tagPattern);
+    private static final Pattern TAG_LINE = Pattern.compile("\\[(.*)?\\]");
+    private static final Pattern COMMENT = Pattern.compile("\\{(.*)?\\}");
+    private static final Pattern MOVE_NUMBER = Pattern.compile("\\d+\\.");
+    private static final Pattern WHITE_WINS = Pattern.compile("1-0", Pattern.LITERAL);
+    private static final Pattern BLACK_WINS = Pattern.compile("0-1", Pattern.LITERAL);
+    private static final Pattern DRAW = Pattern.compile("1/2-1/2", Pattern.LITERAL);
+    private static final Pattern UNFINISHED = Pattern.compile("*", Pattern.LITERAL);
+    private static final Pattern WHITE_SPACE = Pattern.compile("\\s+");
+
+    private List<Move> getMoves(String pgn, int maxPlies) throws ParseException, IllegalMoveException {
         List<Move> moves = new ArrayList<Move>();
 
         String moveText = getMoveText(pgn);
 
         // get rid of comments
-        moveText = moveText.replaceAll("\\{(.*)?\\}", "");
+        moveText = COMMENT.matcher(moveText).replaceAll("");
 
         // get rid of move indicators
-        moveText = moveText.replaceAll("\\d+\\.", "");
+        moveText = MOVE_NUMBER.matcher(moveText).replaceAll("");
 
         // get rid of game end indicator
-        moveText = moveText.replaceAll("1-0", "").replaceAll("0-1", "").replaceAll("1/2-1/2", "").replaceAll("\\*", "");
+        moveText = WHITE_WINS.matcher(moveText).replaceAll("");
+        moveText = BLACK_WINS.matcher(moveText).replaceAll("");
+        moveText = DRAW.matcher(moveText).replaceAll("");
+        moveText = UNFINISHED.matcher(moveText).replaceAll("");
 
         // get rid of extra white space
-        moveText = moveText.replaceAll("\\s+", " ").trim();
+        moveText = WHITE_SPACE.matcher(moveText).replaceAll(" ").trim();
 
         String[] mvs = moveText.split(" ");
         MoveParser mp = new MoveParser();
 
-        Board board = Board.INSTANCE;
-        board.resetBoard();
+        Board board = new Board();
 
         for (String mv : mvs) {
+            if (moves.size() >= maxPlies) {
+                break;
+            }
             Move m = mp.parseMove(mv, board);
             moves.add(m);
             board.applyMove(m);
@@ -55,8 +71,7 @@ public final class PGNParser {
 
     private String getMoveText(String pgn) {
 
-        Pattern p = Pattern.compile("\\[(.*)?\\]");
-        Matcher m = p.matcher(pgn);
+        Matcher m = TAG_LINE.matcher(pgn);
 
         return m.replaceAll("").replaceAll("\n", " ").replaceAll("\r", " ").trim();
     }
@@ -64,8 +79,7 @@ public final class PGNParser {
     private List<PGNTag> getPGNTags(String pgn) {
         List<PGNTag> tags = new ArrayList<PGNTag>();
 
-        Pattern r = Pattern.compile(tagPattern);
-        Matcher m = r.matcher(pgn);
+        Matcher m = TAG.matcher(pgn);
 
         while (m.find()) {
             tags.add(parseTag(m.group()));
@@ -92,8 +106,15 @@ public final class PGNParser {
     }
 
     public synchronized PGNGame parseGame(String pgn) throws ParseException, IllegalMoveException {
+        return parseGame(pgn, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parse a game, keeping only its first <maxPlies> moves. The rest of the move text isn't checked.
+     */
+    public synchronized PGNGame parseGame(String pgn, int maxPlies) throws ParseException, IllegalMoveException {
         List<PGNTag> tags = getPGNTags(pgn);
-        List<Move> moves = getMoves(pgn);
+        List<Move> moves = getMoves(pgn, maxPlies);
         PGNResult result = getResult(pgn);
 
         return new PGNGame(tags, moves, result);
@@ -106,8 +127,7 @@ public final class PGNParser {
      * @return
      */
     private PGNTag parseTag(String tagTxt) {
-        Pattern r = Pattern.compile(tagPattern);
-        Matcher m = r.matcher(tagTxt);
+        Matcher m = TAG.matcher(tagTxt);
 
         if (!m.find())
             return null;
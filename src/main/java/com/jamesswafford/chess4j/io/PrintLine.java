@@ -2,13 +2,13 @@ package com.jamesswafford.chess4j.io;
 
 
 import com.jamesswafford.chess4j.board.Move;
-import eu.usrv.yamcore.auxiliary.LogHelper;
+import com.jamesswafford.chess4j.utils.EngineLog;
 
 import java.util.List;
 
 
 public class PrintLine {
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
 
     public static void printLine(List<Move> moves) {
         printLine(moves, false);
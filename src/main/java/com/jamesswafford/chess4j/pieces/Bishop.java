@@ -10,7 +10,7 @@ public final class Bishop extends Piece {
     public static final Bishop BLACK_BISHOP = new Bishop(Color.BLACK);
 
     private Bishop(Color color) {
-        super(color);
+        super(color, BISHOP);
     }
 
     public String toString() {
@@ -10,7 +10,7 @@ public final class King extends Piece {
     public static final King BLACK_KING = new King(Color.BLACK);
 
     private King(Color color) {
-        super(color);
+        super(color, KING);
     }
 
     public String toString() {
@@ -10,7 +10,7 @@ public final class Knight extends Piece {
     public static final Knight BLACK_KNIGHT = new Knight(Color.BLACK);
 
     private Knight(Color color) {
-        super(color);
+        super(color, KNIGHT);
     }
 
     public String toString() {
@@ -10,7 +10,7 @@ public final class Pawn extends Piece {
     public static final Pawn BLACK_PAWN = new Pawn(Color.BLACK);
 
     private Pawn(Color color) {
-        super(color);
+        super(color, PAWN);
     }
 
     public String toString() {
@@ -6,16 +6,40 @@ import com.jamesswafford.chess4j.Color;
 
 public abstract class Piece {
 
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
     private Color color;
+    private final int index;
 
-    public Piece(Color color) {
+    public Piece(Color color, int type) {
         this.color = color;
+        this.index = color.isWhite() ? type : type + KING;
     }
 
     public Color getColor() {
         return color;
     }
 
+    /**
+     * 1-6 for the white pawn, knight, bishop, rook, queen and king, 7-12 for the black ones. 0 is
+     * never used, so packed encodings can use it for "no piece".
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * One of {@link #PAWN} through {@link #KING}, regardless of color.
+     */
+    public int getType() {
+        return index > KING ? index - KING : index;
+    }
+
     public abstract Piece getOppositeColorPiece();
 
     public boolean isBlack() {
@@ -10,7 +10,7 @@ public final class Queen extends Piece {
     public static final Queen BLACK_QUEEN = new Queen(Color.BLACK);
 
     private Queen(Color color) {
-        super(color);
+        super(color, QUEEN);
     }
 
     public String toString() {
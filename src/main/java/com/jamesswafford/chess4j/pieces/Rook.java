@@ -10,7 +10,7 @@ public final class Rook extends Piece {
     public static final Rook BLACK_ROOK = new Rook(Color.BLACK);
 
     private Rook(Color color) {
-        super(color);
+        super(color, ROOK);
     }
 
     public String toString() {
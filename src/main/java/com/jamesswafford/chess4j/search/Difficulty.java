@@ -0,0 +1,82 @@
+package com.jamesswafford.chess4j.search;
+
+
+/**
+ * Playing strength presets. Each one limits a search by the number of nodes it may visit (interior
+ * and quiescence nodes together) and by depth instead of by time, so the CPU a move costs is the same
+ * whether the server is busy or idle. The lower levels also choose at random among the moves that
+ * score within a few centipawns of the best one, so they don't play the same game every time.
+ * <p>
+ * The deadline a caller sets on the context still applies, as a safety net.
+ * <p>
+ * Only the top level searches with Lazy-SMP helpers. The nodes they search count against its budget,
+ * so helpers make it answer sooner without making a move cost more CPU.
+ */
+public enum Difficulty {
+
+    BEGINNER(3000, 2, 150, false),
+    EASY(15000, 4, 60, false),
+    MEDIUM(60000, 6, 25, false),
+    HARD(250000, 10, 0, false),
+    EXPERT(1000000, 0, 0, true);
+
+    private final long maxNodes;
+    private final int maxDepth;
+    private final int randomMargin;
+    private final boolean useHelpers;
+
+    Difficulty(long maxNodes, int maxDepth, int randomMargin, boolean useHelpers) {
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+        this.randomMargin = randomMargin;
+        this.useHelpers = useHelpers;
+    }
+
+    /**
+     * @return the most nodes a search may visit
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return the deepest iteration searched, 0 for no limit
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return how far (centipawns) below the best move a move may score and still be chosen, 0 to
+     * always play the best move
+     */
+    public int getRandomMargin() {
+        return randomMargin;
+    }
+
+    /**
+     * @return whether searches may use Lazy-SMP helper threads
+     */
+    public boolean isUseHelpers() {
+        return useHelpers;
+    }
+
+    public void apply(EngineContext ctx) {
+        ctx.setMaxNodes(maxNodes);
+        ctx.setMaxDepth(maxDepth);
+        ctx.setRandomMargin(randomMargin);
+        ctx.setUseHelpers(useHelpers);
+    }
+
+    /**
+     * @return the preset called <name>, ignoring case, or null if there is none
+     */
+    public static Difficulty fromName(String name) {
+        for (Difficulty difficulty : values()) {
+            if (difficulty.name().equalsIgnoreCase(name)) {
+                return difficulty;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,347 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.hash.PawnTranspositionTable;
+import com.jamesswafford.chess4j.hash.TranspositionTable;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Everything one game needs to think: its own board, hash tables, killer and history tables, search stack,
+ * search stats and the flags controlling a running search. Games on different contexts never share mutable state,
+ * so they can search in parallel.
+ * <p>
+ * The one exception are helper contexts used by the Lazy-SMP search, which share the hash tables
+ * of the game they help.
+ */
+public final class EngineContext {
+    public final Object ponderMutex = new Object();
+
+    private final UUID token;
+    private final Board board = new Board();
+    private final TranspositionTable transpositionTable;
+    private final PawnTranspositionTable pawnTranspositionTable;
+    private final KillerMoves killerMoves = new KillerMoves();
+    private final HistoryTable historyTable = new HistoryTable();
+    private final SearchStack searchStack = new SearchStack(historyTable);
+    // nodes searched by the Lazy-SMP helpers of the running search, shared with the helper contexts
+    private final AtomicLong helperNodes;
+    private final boolean helper;
+    private long reportedNodes = 0;
+    private SearchStats searchStats = new SearchStats();
+
+    private volatile boolean abortSearch = false;
+    private volatile boolean abortIterator = false;
+    private volatile boolean analysisMode = false;
+    private volatile long stopTime = 0;
+    private volatile long deadline = 0;
+    private long startTime = 0;
+    private long nextTimeCheck = 0;
+    private long nodeLimit = 0;
+    private long randomSeed = 0;
+
+    private boolean useOpeningBook = false;
+    private boolean ponderEnabled;
+    private boolean showThinking = true;
+    private int maxDepth;
+    private long maxNodes;
+    private int randomMargin;
+    private boolean useHelpers = true;
+    private int remainingTimeMS;
+    private int incrementMS;
+    private int maxTime;
+    private volatile boolean pondering;
+    private volatile Move ponderMove;
+    private volatile SearchTask searchTask;
+
+    public EngineContext() {
+        this((UUID) null);
+    }
+
+    public EngineContext(UUID token) {
+        this.token = token;
+        this.transpositionTable = new TranspositionTable();
+        this.pawnTranspositionTable = new PawnTranspositionTable();
+        this.helperNodes = new AtomicLong();
+        this.helper = false;
+    }
+
+    /**
+     * Context for a Lazy-SMP helper thread: shares the hash tables of <code>parent</code> but has
+     * its own killer and history tables and stats. Helpers never time out on their own; the main search stops
+     * them.
+     */
+    EngineContext(EngineContext parent) {
+        this.token = parent.token;
+        this.transpositionTable = parent.transpositionTable;
+        this.pawnTranspositionTable = parent.pawnTranspositionTable;
+        this.helperNodes = parent.helperNodes;
+        this.helper = true;
+        this.analysisMode = true;
+    }
+
+    public UUID getToken() {
+        return token;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    public PawnTranspositionTable getPawnTranspositionTable() {
+        return pawnTranspositionTable;
+    }
+
+    public KillerMoves getKillerMoves() {
+        return killerMoves;
+    }
+
+    public HistoryTable getHistoryTable() {
+        return historyTable;
+    }
+
+    SearchStack getSearchStack() {
+        return searchStack;
+    }
+
+    public SearchStats getSearchStats() {
+        return searchStats;
+    }
+
+    public void setSearchStats(SearchStats searchStats) {
+        this.searchStats = searchStats;
+    }
+
+    public boolean isAbortSearch() {
+        return abortSearch;
+    }
+
+    public void setAbortSearch(boolean abortSearch) {
+        this.abortSearch = abortSearch;
+    }
+
+    public boolean isAbortIterator() {
+        return abortIterator;
+    }
+
+    public void setAbortIterator(boolean abortIterator) {
+        this.abortIterator = abortIterator;
+    }
+
+    public boolean isAnalysisMode() {
+        return analysisMode;
+    }
+
+    public void setAnalysisMode(boolean analysisMode) {
+        this.analysisMode = analysisMode;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getStopTime() {
+        return stopTime;
+    }
+
+    public void setStopTime(long stopTime) {
+        this.stopTime = stopTime;
+    }
+
+    /**
+     * Wall clock time (ms) by which the current search must have produced a move, or 0 for none.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Node count at which the search next reads the clock.
+     */
+    long getNextTimeCheck() {
+        return nextTimeCheck;
+    }
+
+    void setNextTimeCheck(long nextTimeCheck) {
+        this.nextTimeCheck = nextTimeCheck;
+    }
+
+    /**
+     * Most nodes the running search may visit, 0 for no limit: the node budget as scaled by the
+     * {@link EngineGovernor} when the search started.
+     */
+    long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * @return the nodes the Lazy-SMP helpers of the running search have reported so far. Helpers
+     * report at their time checks, so this lags a little behind what they searched.
+     */
+    long getHelperNodes() {
+        return helperNodes.get();
+    }
+
+    void resetHelperNodes() {
+        helperNodes.set(0);
+    }
+
+    boolean isHelper() {
+        return helper;
+    }
+
+    /**
+     * Called by a helper at its time checks, with the nodes it has searched so far.
+     */
+    void reportHelperNodes(long nodes) {
+        helperNodes.addAndGet(nodes - reportedNodes);
+        reportedNodes = nodes;
+    }
+
+    /**
+     * Seed for the random bonuses given to root moves, drawn anew for every search.
+     */
+    long getRandomSeed() {
+        return randomSeed;
+    }
+
+    void setRandomSeed(long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    public boolean isUseOpeningBook() {
+        return useOpeningBook;
+    }
+
+    public void setUseOpeningBook(boolean useOpeningBook) {
+        this.useOpeningBook = useOpeningBook;
+    }
+
+    public boolean isPonderEnabled() {
+        return ponderEnabled;
+    }
+
+    public void setPonderEnabled(boolean ponderEnabled) {
+        this.ponderEnabled = ponderEnabled;
+    }
+
+    public boolean isShowThinking() {
+        return showThinking;
+    }
+
+    public void setShowThinking(boolean showThinking) {
+        this.showThinking = showThinking;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Most nodes (interior and quiescence) a search may visit, or 0 for no limit. When set, the
+     * search is limited by nodes and depth rather than by the clock.
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * How far (centipawns) below the best root move a move may score and still be played, or 0 to
+     * always play the best move. See {@link Difficulty}.
+     */
+    public int getRandomMargin() {
+        return randomMargin;
+    }
+
+    public void setRandomMargin(int randomMargin) {
+        this.randomMargin = randomMargin;
+    }
+
+    /**
+     * Whether a search limited by nodes may use Lazy-SMP helpers, which then share its node budget.
+     * Searches limited by time always may. See {@link Difficulty}.
+     */
+    public boolean isUseHelpers() {
+        return useHelpers;
+    }
+
+    public void setUseHelpers(boolean useHelpers) {
+        this.useHelpers = useHelpers;
+    }
+
+    public int getRemainingTimeMS() {
+        return remainingTimeMS;
+    }
+
+    public void setRemainingTimeMS(int remainingTimeMS) {
+        this.remainingTimeMS = remainingTimeMS;
+    }
+
+    public int getIncrementMS() {
+        return incrementMS;
+    }
+
+    public void setIncrementMS(int incrementMS) {
+        this.incrementMS = incrementMS;
+    }
+
+    public int getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(int maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public boolean isPondering() {
+        return pondering;
+    }
+
+    void setPondering(boolean pondering) {
+        this.pondering = pondering;
+    }
+
+    public Move getPonderMove() {
+        return ponderMove;
+    }
+
+    void setPonderMove(Move ponderMove) {
+        this.ponderMove = ponderMove;
+    }
+
+    public SearchTask getSearchTask() {
+        return searchTask;
+    }
+
+    void setSearchTask(SearchTask searchTask) {
+        this.searchTask = searchTask;
+    }
+}
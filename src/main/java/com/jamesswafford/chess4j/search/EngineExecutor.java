@@ -0,0 +1,160 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.utils.ColdStartBenchmark;
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Fixed-size pool every search runs on. Requests wait in a single FIFO queue, so games are served
+ * in the order they asked, and the number of engine threads competing with the server thread
+ * never exceeds the configured size.
+ * <p>
+ * Lazy-SMP helper threads run on a second, separate pool, so a search never waits on its own
+ * helpers being queued behind other games' searches.
+ */
+public final class EngineExecutor {
+    private static final EngineLog mLog = EngineLog.getLog();
+    private static int numThreads = getDefaultNumThreads();
+    private static ThreadPoolExecutor executor;
+    private static int numHelperThreads = 0;
+    private static ThreadPoolExecutor helperExecutor;
+    private static boolean warmedUp = false;
+
+    private EngineExecutor() {
+    }
+
+    /**
+     * Leave one core for the server thread and one for everything else the server does.
+     */
+    public static int getDefaultNumThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    }
+
+    public static synchronized int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param threads number of engine threads; anything below 1 selects the default
+     */
+    public static synchronized void setNumThreads(int threads) {
+        numThreads = threads > 0 ? threads : getDefaultNumThreads();
+        if (executor != null) {
+            if (numThreads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(numThreads);
+                executor.setCorePoolSize(numThreads);
+            } else {
+                executor.setCorePoolSize(numThreads);
+                executor.setMaximumPoolSize(numThreads);
+            }
+        }
+        mLog.info("# engine executor sized to " + numThreads + " thread(s)");
+    }
+
+    public static synchronized void execute(SearchTask task) {
+        if (executor == null || executor.isShutdown()) {
+            executor = createExecutor("LootGames Chess Engine #", numThreads);
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Initialize the engine's static tables on an engine thread, so the first move after server start
+     * doesn't pay for them, and log what that cost. Only the first call does anything.
+     */
+    public static synchronized void warmUp() {
+        if (warmedUp) {
+            return;
+        }
+        warmedUp = true;
+        if (executor == null || executor.isShutdown()) {
+            executor = createExecutor("LootGames Chess Engine #", numThreads);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mLog.info("# engine cold start: " + ColdStartBenchmark.run());
+            }
+        });
+    }
+
+    public static synchronized int getNumHelperThreads() {
+        return numHelperThreads;
+    }
+
+    /**
+     * @param threads number of Lazy-SMP helper threads shared by all games; 0 disables Lazy-SMP
+     */
+    public static synchronized void setNumHelperThreads(int threads) {
+        numHelperThreads = Math.max(0, threads);
+        if (helperExecutor != null) {
+            helperExecutor.shutdown();
+            helperExecutor = null;
+        }
+        mLog.info("# lazy smp " + (numHelperThreads > 0 ? "enabled with " + numHelperThreads + " helper thread(s)" : "disabled"));
+    }
+
+    /**
+     * @return false if Lazy-SMP is disabled and the helper was not queued
+     */
+    static synchronized boolean executeHelper(Runnable helper) {
+        if (numHelperThreads == 0) {
+            return false;
+        }
+        if (helperExecutor == null || helperExecutor.isShutdown()) {
+            helperExecutor = createExecutor("LootGames Chess Helper #", numHelperThreads);
+        }
+        helperExecutor.execute(helper);
+        return true;
+    }
+
+    static synchronized void remove(SearchTask task) {
+        if (executor != null) {
+            executor.remove(task);
+        }
+    }
+
+    public static synchronized int getQueuedTasks() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    public static synchronized int getActiveTasks() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (helperExecutor != null) {
+            helperExecutor.shutdownNow();
+            helperExecutor = null;
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor(final String threadName, int poolSize) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        };
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,132 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.utils.EngineLog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Keeps the engine from starving the server thread. The server reports how long each of its ticks
+ * took; while the average tick is slower than the throttle threshold, new searches get half their
+ * node or time budget and no Lazy-SMP helpers, and while it is slower than the pause threshold,
+ * running searches wait at their next time check until the server has recovered. A state is only
+ * left once the average tick is well below its threshold again.
+ * <p>
+ * The number of engine threads itself is capped by the {@link EngineExecutor}. Pausing is
+ * cooperative and never holds a search past its stop time, so a move is still answered before its
+ * deadline.
+ */
+public final class EngineGovernor {
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    public enum State {
+        RUNNING, THROTTLED, PAUSED
+    }
+
+    // weight of the latest tick in the running average, about a second's worth of ticks
+    private static final double TICK_WEIGHT = 0.05;
+    private static final long PAUSE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    // a level is left once the average tick drops below this share of its threshold
+    private static final double RESUME_FACTOR = 0.8;
+
+    private static volatile double throttleTickMS = 0;
+    private static volatile double pauseTickMS = 0;
+    private static volatile double averageTickMS = 0;
+    private static volatile State state = State.RUNNING;
+    private static final AtomicInteger pausedSearches = new AtomicInteger();
+
+    private EngineGovernor() {
+    }
+
+    /**
+     * @param throttleMS average tick time (ms) above which budgets are halved, 0 to never throttle
+     * @param pauseMS    average tick time (ms) above which searches pause, 0 to never pause
+     */
+    public static synchronized void setThresholds(int throttleMS, int pauseMS) {
+        throttleTickMS = Math.max(0, throttleMS);
+        pauseTickMS = Math.max(0, pauseMS);
+        state = State.RUNNING;
+        mLog.info("# engine governor: throttle above " + throttleTickMS + "ms, pause above " + pauseTickMS + "ms per tick");
+    }
+
+    /**
+     * Report the duration of a server tick. Called by the server thread once per tick.
+     */
+    public static synchronized void onServerTick(long tickNanos) {
+        double tickMS = tickNanos / 1000000.0;
+        averageTickMS += (tickMS - averageTickMS) * TICK_WEIGHT;
+
+        // each level is left only once ticks are clearly faster than its threshold again
+        State newState;
+        if (pauseTickMS > 0 && averageTickMS > pauseTickMS) {
+            newState = State.PAUSED;
+        } else if (state == State.PAUSED && averageTickMS > pauseTickMS * RESUME_FACTOR) {
+            newState = State.PAUSED;
+        } else if (throttleTickMS > 0 && averageTickMS > throttleTickMS) {
+            newState = State.THROTTLED;
+        } else if (throttleTickMS > 0 && state != State.RUNNING && averageTickMS > throttleTickMS * RESUME_FACTOR) {
+            newState = State.THROTTLED;
+        } else {
+            newState = State.RUNNING;
+        }
+
+        if (newState != state) {
+            mLog.info("# engine governor: " + state + " -> " + newState + ", average tick " + String.format("%.1f", averageTickMS) + "ms");
+            state = newState;
+        }
+    }
+
+    public static State getState() {
+        return state;
+    }
+
+    public static double getAverageTickMS() {
+        return averageTickMS;
+    }
+
+    /**
+     * @return how many searches are waiting for the server to recover right now
+     */
+    public static int getPausedSearches() {
+        return pausedSearches.get();
+    }
+
+    /**
+     * @return a one line summary of the engine's load
+     */
+    public static String getLoad() {
+        return "state: " + state + ", average tick: " + String.format("%.1f", averageTickMS) + "ms" + ", searching: " + EngineExecutor.getActiveTasks() + "/" + EngineExecutor.getNumThreads() + ", queued: " + EngineExecutor.getQueuedTasks() + ", paused: " + pausedSearches.get();
+    }
+
+    /**
+     * @return <budget> scaled to what a search starting now may use
+     */
+    static long scaleBudget(long budget) {
+        return state == State.RUNNING ? budget : budget / 2;
+    }
+
+    static boolean isHelpersAllowed() {
+        return state == State.RUNNING;
+    }
+
+    /**
+     * Called by a search at its time checks: while the engine is paused, wait until it isn't, the
+     * search is aborted or its stop time has passed.
+     */
+    static void checkpoint(EngineContext ctx) {
+        if (state != State.PAUSED) {
+            return;
+        }
+        pausedSearches.incrementAndGet();
+        try {
+            while (state == State.PAUSED && !ctx.isAbortSearch() && (ctx.isAnalysisMode() || System.currentTimeMillis() < ctx.getStopTime())) {
+                LockSupport.parkNanos(PAUSE_POLL_NANOS);
+            }
+        } finally {
+            pausedSearches.decrementAndGet();
+        }
+    }
+}
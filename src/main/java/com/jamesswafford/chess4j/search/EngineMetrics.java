@@ -0,0 +1,312 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.hash.PawnTranspositionTable;
+import com.jamesswafford.chess4j.hash.PositionCache;
+import com.jamesswafford.chess4j.hash.TranspositionTable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Statistics of finished searches, gathered across all games so engine budgets can be tuned from what
+ * searches on a real server do rather than from guesses. Every search that gets as far as searching
+ * is recorded once it is done.
+ * <p>
+ * The latest {@link #MAX_RECORDS} searches are kept as they were, for {@link #writeCSV}; the latest
+ * {@link #ROLLING_SEARCHES} of those make up the rolling figures. Totals and the time to depth
+ * histograms cover every search since the last {@link #reset}.
+ * <p>
+ * The effective branching factor of a search is the number of nodes searched until its last
+ * iteration completed, divided by the number searched until the one before.
+ */
+public final class EngineMetrics {
+
+    private static final int MAX_RECORDS = 1024;
+    private static final int ROLLING_SEARCHES = 64;
+    // upper bounds (ms) of the time to depth histogram buckets, the last bucket takes everything slower
+    private static final long[] BUCKET_LIMITS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    // deeper iterations are counted with this depth
+    private static final int MAX_HISTOGRAM_DEPTH = 32;
+
+    private static final SearchRecord[] records = new SearchRecord[MAX_RECORDS];
+    private static int numRecords = 0;
+    private static int nextRecord = 0;
+
+    private static long numSearches = 0;
+    private static long totalMS = 0;
+    private static long totalNodes = 0;
+    private static long totalQNodes = 0;
+    private static long totalHelperNodes = 0;
+    private static long totalCutoffs = 0;
+    private static long totalFirstMoveCutoffs = 0;
+    private static long totalHashProbes = 0;
+    private static long totalHashHits = 0;
+    private static long totalHashCollisions = 0;
+    private static long totalPawnHashProbes = 0;
+    private static long totalPawnHashHits = 0;
+    private static long totalPawnHashCollisions = 0;
+    private static double totalBranchingFactor = 0;
+    private static long numBranchingFactors = 0;
+    private static final long[][] timeToDepth = new long[MAX_HISTOGRAM_DEPTH][BUCKET_LIMITS.length + 1];
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * The counters of one finished search.
+     */
+    private static final class SearchRecord {
+        final long time;
+        final long ms;
+        final int depth;
+        final long nodes;
+        final long qnodes;
+        final long helperNodes;
+        final double branchingFactor;
+        final long cutoffs;
+        final long firstMoveCutoffs;
+        final long hashProbes;
+        final long hashHits;
+        final long hashCollisions;
+        final long pawnHashProbes;
+        final long pawnHashHits;
+        final long pawnHashCollisions;
+        final long[] timeToDepth;
+
+        SearchRecord(EngineContext ctx, SearchStats stats, long ms) {
+            TranspositionTable tt = ctx.getTranspositionTable();
+            PawnTranspositionTable ptt = ctx.getPawnTranspositionTable();
+
+            this.time = System.currentTimeMillis();
+            this.ms = ms;
+            this.depth = stats.getDepth();
+            this.nodes = stats.getNodes();
+            this.qnodes = stats.getQNodes();
+            this.helperNodes = stats.getHelperNodes();
+            this.branchingFactor = getBranchingFactor(stats.getNodesToDepth());
+            this.cutoffs = stats.getCutoffs();
+            this.firstMoveCutoffs = stats.getFirstMoveCutoffs();
+            this.hashProbes = tt.getNumProbes();
+            this.hashHits = tt.getNumHits();
+            this.hashCollisions = tt.getNumCollisions();
+            this.pawnHashProbes = ptt.getNumProbes();
+            this.pawnHashHits = ptt.getNumHits();
+            this.pawnHashCollisions = ptt.getNumCollisions();
+            this.timeToDepth = new long[stats.getTimeToDepth().size()];
+            for (int i = 0; i < timeToDepth.length; i++) {
+                timeToDepth[i] = stats.getTimeToDepth().get(i);
+            }
+        }
+
+        long getAllNodes() {
+            return nodes + qnodes + helperNodes;
+        }
+    }
+
+    /**
+     * @return the effective branching factor of the last iteration, or 0 if there were fewer than two
+     */
+    private static double getBranchingFactor(List<Long> nodesToDepth) {
+        int n = nodesToDepth.size();
+        if (n < 2 || nodesToDepth.get(n - 2) == 0) {
+            return 0;
+        }
+        return nodesToDepth.get(n - 1) / (double) nodesToDepth.get(n - 2);
+    }
+
+    /**
+     * Add a finished search. Called by the thread that ran it.
+     *
+     * @param ms how long the search took
+     */
+    public static void record(EngineContext ctx, SearchStats stats, long ms) {
+        SearchRecord r = new SearchRecord(ctx, stats, ms);
+
+        synchronized (EngineMetrics.class) {
+            records[nextRecord] = r;
+            nextRecord = (nextRecord + 1) % MAX_RECORDS;
+            numRecords = Math.min(numRecords + 1, MAX_RECORDS);
+
+            numSearches++;
+            totalMS += r.ms;
+            totalNodes += r.nodes;
+            totalQNodes += r.qnodes;
+            totalHelperNodes += r.helperNodes;
+            totalCutoffs += r.cutoffs;
+            totalFirstMoveCutoffs += r.firstMoveCutoffs;
+            totalHashProbes += r.hashProbes;
+            totalHashHits += r.hashHits;
+            totalHashCollisions += r.hashCollisions;
+            totalPawnHashProbes += r.pawnHashProbes;
+            totalPawnHashHits += r.pawnHashHits;
+            totalPawnHashCollisions += r.pawnHashCollisions;
+            if (r.branchingFactor > 0) {
+                totalBranchingFactor += r.branchingFactor;
+                numBranchingFactors++;
+            }
+            for (int i = 0; i < r.timeToDepth.length; i++) {
+                timeToDepth[Math.min(i, MAX_HISTOGRAM_DEPTH - 1)][getBucket(r.timeToDepth[i])]++;
+            }
+        }
+    }
+
+    private static int getBucket(long ms) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && ms > BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public static synchronized void reset() {
+        for (int i = 0; i < MAX_RECORDS; i++) {
+            records[i] = null;
+        }
+        numRecords = 0;
+        nextRecord = 0;
+
+        numSearches = 0;
+        totalMS = 0;
+        totalNodes = 0;
+        totalQNodes = 0;
+        totalHelperNodes = 0;
+        totalCutoffs = 0;
+        totalFirstMoveCutoffs = 0;
+        totalHashProbes = 0;
+        totalHashHits = 0;
+        totalHashCollisions = 0;
+        totalPawnHashProbes = 0;
+        totalPawnHashHits = 0;
+        totalPawnHashCollisions = 0;
+        totalBranchingFactor = 0;
+        numBranchingFactors = 0;
+        for (long[] counts : timeToDepth) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 0;
+            }
+        }
+    }
+
+    public static synchronized long getNumSearches() {
+        return numSearches;
+    }
+
+    /**
+     * @return nodes per second of all searches since the last reset, helper threads included
+     */
+    public static synchronized long getNodesPerSecond() {
+        return perSecond(totalNodes + totalQNodes + totalHelperNodes, totalMS);
+    }
+
+    /**
+     * @return nodes per second of the latest {@link #ROLLING_SEARCHES} searches, helper threads included
+     */
+    public static synchronized long getRollingNodesPerSecond() {
+        long nodes = 0;
+        long ms = 0;
+        for (int i = 1; i <= Math.min(numRecords, ROLLING_SEARCHES); i++) {
+            SearchRecord r = records[(nextRecord - i + MAX_RECORDS) % MAX_RECORDS];
+            nodes += r.getAllNodes();
+            ms += r.ms;
+        }
+        return perSecond(nodes, ms);
+    }
+
+    /**
+     * @return a few lines summing up the searches since the last reset
+     */
+    public static synchronized List<String> getSummary() {
+        List<String> lines = new ArrayList<String>();
+        lines.add("searches: " + numSearches + ", search time: " + totalMS / 1000 + "s, nodes: " + (totalNodes + totalQNodes) + ", helper nodes: " + totalHelperNodes);
+        lines.add("nodes per second: " + getNodesPerSecond() + ", last " + Math.min(numRecords, ROLLING_SEARCHES) + " searches: " + getRollingNodesPerSecond());
+        lines.add("quiescence nodes: " + percent(totalQNodes, totalNodes + totalQNodes) + ", branching factor: " + format(numBranchingFactors == 0 ? 0 : totalBranchingFactor / numBranchingFactors) + ", cutoffs on first move: " + percent(totalFirstMoveCutoffs, totalCutoffs));
+        lines.add("hash hits: " + percent(totalHashHits, totalHashProbes) + ", collisions: " + percent(totalHashCollisions, totalHashProbes) + "; pawn hash hits: " + percent(totalPawnHashHits, totalPawnHashProbes) + ", collisions: " + percent(totalPawnHashCollisions, totalPawnHashProbes));
+
+        PositionCache positionCache = PositionCache.getInstance();
+        if (positionCache != null) {
+            lines.add("position cache: " + positionCache.size() + " positions, hits: " + percent(positionCache.getNumHits(), positionCache.getNumProbes()));
+        }
+        return lines;
+    }
+
+    /**
+     * @return one line per depth reached: how many searches completed it, and the histogram buckets
+     * the median and the 90th percentile of their times fall into
+     */
+    public static synchronized List<String> getTimeToDepth() {
+        List<String> lines = new ArrayList<String>();
+        for (int depth = 0; depth < MAX_HISTOGRAM_DEPTH; depth++) {
+            long[] counts = timeToDepth[depth];
+            long n = 0;
+            for (long count : counts) {
+                n += count;
+            }
+            if (n == 0) {
+                continue;
+            }
+            lines.add("depth " + (depth + 1) + (depth == MAX_HISTOGRAM_DEPTH - 1 ? "+" : "") + ": " + n + " searches, median " + getPercentileLimit(counts, n, 50) + ", 90% " + getPercentileLimit(counts, n, 90));
+        }
+        return lines;
+    }
+
+    private static String getPercentileLimit(long[] counts, long n, int percentile) {
+        long target = (n * percentile + 99) / 100;
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_LIMITS.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target) {
+                return "<= " + BUCKET_LIMITS[bucket] + "ms";
+            }
+        }
+        return "> " + BUCKET_LIMITS[BUCKET_LIMITS.length - 1] + "ms";
+    }
+
+    /**
+     * Write the recorded searches to <file>, oldest first, one per line. The time to depth column
+     * lists the ms at which each iteration completed, separated by spaces.
+     *
+     * @return the number of searches written
+     */
+    public static int writeCSV(File file) throws IOException {
+        List<SearchRecord> rs = new ArrayList<SearchRecord>();
+        synchronized (EngineMetrics.class) {
+            for (int i = numRecords; i > 0; i--) {
+                rs.add(records[(nextRecord - i + MAX_RECORDS) % MAX_RECORDS]);
+            }
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            out.println("time,ms,depth,nodes,qnodes,helper_nodes,nodes_per_second,branching_factor,cutoffs,first_move_cutoffs,hash_probes,hash_hits,hash_collisions,pawn_hash_probes,pawn_hash_hits,pawn_hash_collisions,time_to_depth");
+            for (SearchRecord r : rs) {
+                StringBuilder ttd = new StringBuilder();
+                for (int i = 0; i < r.timeToDepth.length; i++) {
+                    ttd.append(i == 0 ? "" : " ").append(r.timeToDepth[i]);
+                }
+                out.println(r.time + "," + r.ms + "," + r.depth + "," + r.nodes + "," + r.qnodes + "," + r.helperNodes + "," + perSecond(r.getAllNodes(), r.ms) + "," + format(r.branchingFactor) + "," + r.cutoffs + "," + r.firstMoveCutoffs + "," + r.hashProbes + "," + r.hashHits + "," + r.hashCollisions + "," + r.pawnHashProbes + "," + r.pawnHashHits + "," + r.pawnHashCollisions + "," + ttd);
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Unable to write " + file);
+        }
+        return rs.size();
+    }
+
+    private static long perSecond(long count, long ms) {
+        return ms == 0 ? 0 : count * 1000 / ms;
+    }
+
+    private static String percent(long count, long total) {
+        return format(total == 0 ? 0 : count * 100.0 / total) + "%";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
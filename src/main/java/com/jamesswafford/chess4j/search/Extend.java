@@ -2,8 +2,9 @@ package com.jamesswafford.chess4j.search;
 
 
 import com.jamesswafford.chess4j.board.Board;
-import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.board.PackedMove;
 import com.jamesswafford.chess4j.board.squares.Rank;
+import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.eval.Eval;
 import com.jamesswafford.chess4j.pieces.Pawn;
 import com.jamesswafford.chess4j.pieces.Piece;
@@ -12,27 +13,27 @@ import com.jamesswafford.chess4j.pieces.Piece;
 public class Extend {
 
     public static int extendDepth(Board b) {
-        assert (b.getUndos().size() > 0);
-        return extendDepth(b, b.getUndos().get(b.getUndos().size() - 1).getMove());
+        assert (b.getNumUndos() > 0);
+        return extendDepth(b, b.getUndoMove(b.getNumUndos() - 1));
     }
 
     /**
      * Return amount to extend search by, given <board> with move <m> just played.
      *
      * @param b
-     * @param lastMove
+     * @param lastMove the move as a {@link PackedMove}
      * @return
      */
-    public static int extendDepth(Board b, Move lastMove) {
+    public static int extendDepth(Board b, int lastMove) {
         return extendDepth(b, lastMove, b.isPlayerInCheck());
     }
 
-    public static int extendDepth(Board b, Move lastMove, boolean inCheck) {
-        assert (b.getUndos().get(b.getUndos().size() - 1).getMove().equals(lastMove));
+    public static int extendDepth(Board b, int lastMove, boolean inCheck) {
+        assert (b.getUndoMove(b.getNumUndos() - 1) == lastMove);
 
         if (inCheck)
             return 1;
-        if (lastMove.promotion() != null)
+        if (PackedMove.isPromotion(lastMove))
             return 1;
 
         int d = pawnTo7th(b, lastMove);
@@ -42,31 +43,32 @@ public class Extend {
         return d;
     }
 
-    private static int pawnTo7th(Board b, Move lastMove) {
-        Piece p = b.getPiece(lastMove.to());
+    private static int pawnTo7th(Board b, int lastMove) {
+        Piece p = PackedMove.getPiece(PackedMove.piece(lastMove));
         if (!(p instanceof Pawn))
             return 0;
 
+        Rank toRank = Square.valueOf(PackedMove.to(lastMove)).rank();
         if (p.isWhite()) {
-            if (lastMove.to().rank() == Rank.RANK_7)
+            if (toRank == Rank.RANK_7)
                 return 1;
         } else {
-            if (lastMove.to().rank() == Rank.RANK_2)
+            if (toRank == Rank.RANK_2)
                 return 1;
         }
 
         return 0;
     }
 
-    private static int recaptureExtension(Board b, Move lastMove) {
-        if (b.getUndos().size() < 2)
+    private static int recaptureExtension(Board b, int lastMove) {
+        if (b.getNumUndos() < 2)
             return 0;
 
-        Piece captured1 = lastMove.captured();
+        Piece captured1 = PackedMove.getPiece(PackedMove.captured(lastMove));
         if (captured1 == null)
             return 0;
 
-        Piece captured2 = b.getUndos().get(b.getUndos().size() - 2).getMove().captured();
+        Piece captured2 = PackedMove.getPiece(PackedMove.captured(b.getUndoMove(b.getNumUndos() - 2)));
         if (captured2 == null)
             return 0;
 
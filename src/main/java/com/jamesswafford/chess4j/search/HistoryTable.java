@@ -0,0 +1,78 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.board.PackedMove;
+
+
+/**
+ * Quiet move statistics shared by all nodes of a search: a butterfly history indexed by moving piece
+ * and destination square, and the move that last refuted each previous move (countermove).
+ * <p>
+ * History scores move towards +{@link #MAX_SCORE} each time a move causes a cutoff and towards
+ * -{@link #MAX_SCORE} each time it was searched before another move cut off, so they stay bounded
+ * without periodic rescaling. {@link #age} shrinks them between iterations so recent results count
+ * for more.
+ */
+public class HistoryTable {
+
+    public static final int MAX_SCORE = 16384;
+
+    private static final int MAX_BONUS = 1200;
+
+    private final int[][] history = new int[13][64];
+    private final int[][] counterMoves = new int[13][64];
+
+    /**
+     * @param move      the quiet move that caused a cutoff
+     * @param depth     the remaining depth of the node
+     * @param tried     quiet moves searched before <move> at the node
+     * @param numTried  the number of moves in <tried>
+     */
+    public void addCutoff(int move, int depth, int[] tried, int numTried) {
+        assert (!PackedMove.isCaptureOrPromotion(move));
+
+        int bonus = Math.min(depth * depth, MAX_BONUS);
+        update(move, bonus);
+        for (int i = 0; i < numTried; i++) {
+            update(tried[i], -bonus);
+        }
+    }
+
+    private void update(int move, int bonus) {
+        int[] pieceHistory = history[PackedMove.piece(move)];
+        int to = PackedMove.to(move);
+        pieceHistory[to] += bonus - pieceHistory[to] * Math.abs(bonus) / MAX_SCORE;
+    }
+
+    public int getScore(int move) {
+        return history[PackedMove.piece(move)][PackedMove.to(move)];
+    }
+
+    public void setCounterMove(int previousMove, int move) {
+        counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)] = move;
+    }
+
+    /**
+     * @return the move that last refuted <previousMove>, or {@link PackedMove#NONE}
+     */
+    public int getCounterMove(int previousMove) {
+        return counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)];
+    }
+
+    public void age() {
+        for (int[] pieceHistory : history) {
+            for (int sq = 0; sq < 64; sq++) {
+                pieceHistory[sq] /= 2;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < 13; i++) {
+            for (int sq = 0; sq < 64; sq++) {
+                history[i][sq] = 0;
+                counterMoves[i][sq] = PackedMove.NONE;
+            }
+        }
+    }
+}
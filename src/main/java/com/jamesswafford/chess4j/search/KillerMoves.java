@@ -1,37 +1,31 @@
 package com.jamesswafford.chess4j.search;
 
 
-import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.board.PackedMove;
 
 
 public class KillerMoves {
 
-    private static final KillerMoves INSTANCE = new KillerMoves();
-
     private final int NUM_ENTRIES = 1000;
-    private Move[] killer1;
-    private Move[] killer2;
-
-    private KillerMoves() {
-        killer1 = new Move[NUM_ENTRIES];
-        killer2 = new Move[NUM_ENTRIES];
-    }
+    private int[] killer1;
+    private int[] killer2;
 
-    public static KillerMoves getInstance() {
-        return INSTANCE;
+    public KillerMoves() {
+        killer1 = new int[NUM_ENTRIES];
+        killer2 = new int[NUM_ENTRIES];
     }
 
-    public void addKiller(int ply, Move killerMove) {
-        assert (killerMove != null);
-        assert (killerMove.captured() == null);
+    public void addKiller(int ply, int killerMove) {
+        assert (killerMove != PackedMove.NONE);
+        assert (!PackedMove.isCapture(killerMove));
 
-        if (!killerMove.equals(killer1[ply])) {
-            if (!killerMove.equals(killer2[ply])) {
+        if (killerMove != killer1[ply]) {
+            if (killerMove != killer2[ply]) {
                 killer2[ply] = killer1[ply];
                 killer1[ply] = killerMove;
             } else {
                 // swap them
-                Move tmp = killer1[ply];
+                int tmp = killer1[ply];
                 killer1[ply] = killer2[ply];
                 killer2[ply] = tmp;
             }
@@ -40,16 +34,16 @@ public class KillerMoves {
 
     public void clear() {
         for (int i = 0; i < NUM_ENTRIES; i++) {
-            killer1[i] = null;
-            killer2[i] = null;
+            killer1[i] = PackedMove.NONE;
+            killer2[i] = PackedMove.NONE;
         }
     }
 
-    public Move getKiller1(int ply) {
+    public int getKiller1(int ply) {
         return killer1[ply];
     }
 
-    public Move getKiller2(int ply) {
+    public int getKiller2(int ply) {
         return killer2[ply];
     }
 }
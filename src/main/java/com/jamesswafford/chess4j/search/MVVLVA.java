@@ -1,33 +1,12 @@
 package com.jamesswafford.chess4j.search;
 
 
-import com.jamesswafford.chess4j.board.Board;
-import com.jamesswafford.chess4j.board.Move;
-import com.jamesswafford.chess4j.pieces.*;
+import com.jamesswafford.chess4j.board.PackedMove;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 
+public class MVVLVA {
 
-public class MVVLVA implements Comparator<Move> {
-
-    private static Map<Class<?>, Integer> pieceMap;
-
-    static {
-        pieceMap = new HashMap<Class<?>, Integer>();
-        pieceMap.put(King.class, 6);
-        pieceMap.put(Queen.class, 5);
-        pieceMap.put(Rook.class, 4);
-        pieceMap.put(Bishop.class, 3);
-        pieceMap.put(Knight.class, 2);
-        pieceMap.put(Pawn.class, 1);
-    }
-
-    private Board board;
-
-    public MVVLVA(Board board) {
-        this.board = board;
+    private MVVLVA() {
     }
 
     /**
@@ -44,48 +23,33 @@ public class MVVLVA implements Comparator<Move> {
      * <p>
      * The remaining (non-capturing) moves are next, in no particular order.
      *
-     * @param m
+     * @param m the move as a {@link PackedMove}
      * @return
      */
-    public static int score(Board b, Move m) {
+    public static int score(int m) {
         int score = 0;
 
-        if (m.promotion() != null) {
+        if (PackedMove.isPromotion(m)) {
             score = scorePromotion(m);
         }
 
-        if (m.captured() != null) {
-            score += scoreCapture(b, m);
+        if (PackedMove.isCapture(m)) {
+            score += scoreCapture(m);
         }
 
         return score;
     }
 
-    private static int scorePromotion(Move m) {
-        int promoVal = pieceMap.get(m.promotion().getClass());
+    private static int scorePromotion(int m) {
+        int promoVal = PackedMove.getPiece(PackedMove.promotion(m)).getType();
 
         return 10000 + promoVal;
     }
 
-    private static int scoreCapture(Board b, Move m) {
-        int capturedVal = pieceMap.get(m.captured().getClass());
-        int moverVal = pieceMap.get(b.getPiece(m.from()).getClass());
+    private static int scoreCapture(int m) {
+        int capturedVal = PackedMove.getPiece(PackedMove.captured(m)).getType();
+        int moverVal = PackedMove.getPiece(PackedMove.piece(m)).getType();
         return 1000 + (capturedVal * 10) - moverVal;
     }
 
-    @Override
-    public int compare(Move m1, Move m2) {
-        int score1 = score(board, m1);
-        int score2 = score(board, m2);
-
-        int retVal = 0;
-        if (score1 > score2) {
-            retVal = -1;
-        } else if (score1 < score2) {
-            retVal = 1;
-        }
-
-        return retVal;
-    }
-
 }
@@ -3,6 +3,6 @@ package com.jamesswafford.chess4j.search;
 
 public enum MoveOrderStage {
 
-    INITIAL, PV, HASH_MOVE, SCORE_MOVES, WINNING_CAPTURES, KILLER1, KILLER2, NONCAPTURES, LOSING_CAPTURES
+    INITIAL, PV, HASH_MOVE, EVASIONS, CAPTURES, KILLER1, KILLER2, COUNTER_MOVE, NONCAPTURES, DONE
 
 }
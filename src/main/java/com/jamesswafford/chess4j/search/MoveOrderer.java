@@ -2,172 +2,232 @@ package com.jamesswafford.chess4j.search;
 
 
 import com.jamesswafford.chess4j.board.Board;
-import com.jamesswafford.chess4j.board.Move;
-import com.jamesswafford.chess4j.utils.MoveUtils;
-
-import java.util.Arrays;
-import java.util.List;
-
-
+import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
+
+
+/**
+ * Hands out the pseudo legal moves of one node in search order, generating them in stages: the PV
+ * and hash moves are tried before anything is generated, then the captures and promotions are
+ * generated and tried best MVV/LVA score first, then the killers and the countermove of the previous
+ * move, and only then are the remaining moves generated and tried best {@link HistoryTable} score
+ * first. Most cutoffs come from the first move or two, so many nodes never generate their
+ * non-captures at all.
+ * <p>
+ * When the player is in check, the PV and hash moves are followed by all check evasions instead,
+ * captures first.
+ * <p>
+ * Works in place on the node's move and score arrays; an orderer is owned by a ply of the
+ * {@link SearchStack} and reset with {@link #init} for every node searched at that ply. Only legal
+ * moves are handed out: the checkers and pinned pieces are found once per node, and every move is
+ * checked against them before it is returned.
+ */
 public class MoveOrderer {
 
-    private Board board;
+    private MoveOrderStage stage = MoveOrderStage.DONE;
     private MoveOrderStage lastMoveOrderStage = MoveOrderStage.INITIAL;
-    private Move[] moves;
-    private Integer[] scores;
-    private Move pvMove;
-    private Move hashMove;
-    private Move killer1, killer2;
+    private final int[] moves;
+    private final int[] scores;
+    private final HistoryTable history;
+    private Board board;
+    private int numMoves;
+    private int nextIndex;
+    private int pvMove;
+    private int hashMove;
+    private int killer1, killer2;
+    private int counterMove;
+    private long checkers;
+    private long pinned;
+
+    public MoveOrderer(int[] moves, int[] scores, HistoryTable history) {
+        this.moves = moves;
+        this.scores = scores;
+        this.history = history;
+    }
 
-    public MoveOrderer(Board board, List<Move> moves, Move pvMove, Move hashMove, Move killer1, Move killer2) {
+    /**
+     * Prepare to order the moves of <board>. Any of the suggested moves may be
+     * {@link PackedMove#NONE}; suggestions that aren't pseudo legal in the position are skipped.
+     */
+    public void init(Board board, int pvMove, int hashMove, int killer1, int killer2, int counterMove) {
         this.board = board;
-        this.moves = moves.toArray(new Move[moves.size()]);
-        this.scores = new Integer[moves.size()];
+        this.numMoves = 0;
+        this.nextIndex = 0;
         this.pvMove = pvMove;
-        this.hashMove = hashMove;
+        this.hashMove = hashMove == pvMove ? PackedMove.NONE : hashMove;
         this.killer1 = killer1;
-        this.killer2 = killer2;
+        this.killer2 = killer2 == killer1 ? PackedMove.NONE : killer2;
+        this.counterMove = counterMove == this.killer1 || counterMove == this.killer2 ? PackedMove.NONE : counterMove;
+        this.checkers = MoveGen.getCheckers(board);
+        this.pinned = MoveGen.getPinned(board);
+        this.stage = MoveOrderStage.INITIAL;
+        this.lastMoveOrderStage = MoveOrderStage.INITIAL;
     }
 
-    public Move selectNextMove(int startIndex) {
-
-        assert (startIndex < moves.length);
-        assert (lastMoveOrderStage != null);
+    /**
+     * @return the next move to search, or {@link PackedMove#NONE} when all moves have been handed out
+     */
+    public int selectNextMove() {
 
         // try PV move
-        if (lastMoveOrderStage == MoveOrderStage.INITIAL) {
-            if (pvMove != null) {
-                assert (MoveUtils.indexOf(moves, pvMove, 0) >= 0);
-                MoveUtils.putMoveAtTop(moves, pvMove);
-                lastMoveOrderStage = MoveOrderStage.PV;
-                return pvMove;
+        if (stage == MoveOrderStage.INITIAL) {
+            stage = MoveOrderStage.PV;
+            if (pvMove != PackedMove.NONE && MoveGen.isPseudoLegalMove(board, pvMove) && isLegal(pvMove)) {
+                return select(pvMove);
             }
+            pvMove = PackedMove.NONE;
         }
 
         // try hash move
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.PV.ordinal()) {
-            if (hashMove != null) {
-                int ind = MoveUtils.indexOf(moves, hashMove, startIndex);
-                if (ind != -1) {
-                    assert (Arrays.asList(moves).subList(startIndex, moves.length).contains(hashMove));
-                    MoveUtils.swap(moves, startIndex, ind);
-                    lastMoveOrderStage = MoveOrderStage.HASH_MOVE;
-                    return hashMove;
-                }
+        if (stage == MoveOrderStage.PV) {
+            stage = MoveOrderStage.HASH_MOVE;
+            if (hashMove != PackedMove.NONE && MoveGen.isPseudoLegalMove(board, hashMove) && isLegal(hashMove)) {
+                return select(hashMove);
             }
+            hashMove = PackedMove.NONE;
         }
 
-        // score moves
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.SCORE_MOVES.ordinal()) {
-            scoreMoves(startIndex);
+        // in check: generate and score all evasions
+        if (stage == MoveOrderStage.HASH_MOVE && checkers != 0) {
+            stage = MoveOrderStage.EVASIONS;
+            numMoves = MoveGen.genPseudoLegalEvasions(board, moves, checkers);
+            for (int i = 0; i < numMoves; i++) {
+                int mv = moves[i];
+                scores[i] = PackedMove.isCaptureOrPromotion(mv) ? HistoryTable.MAX_SCORE + MVVLVA.score(mv) : history.getScore(mv);
+            }
         }
 
-        // promotions and winning (non-losing) captures only
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.WINNING_CAPTURES.ordinal()) {
-            int bestInd = getIndexOfBestCapture(startIndex);
-            if (bestInd != -1 && scores[bestInd] >= 0) {
-                MoveUtils.swap(moves, startIndex, bestInd);
-                swapScores(startIndex, bestInd);
-                lastMoveOrderStage = MoveOrderStage.WINNING_CAPTURES;
-                return moves[startIndex];
+        // evasions, best first
+        if (stage == MoveOrderStage.EVASIONS) {
+            while (nextIndex < numMoves) {
+                int mv = selectBest(nextIndex++);
+                if (!isAlreadySelected(mv) && isLegal(mv)) {
+                    return select(mv);
+                }
             }
+            stage = MoveOrderStage.DONE;
+            return PackedMove.NONE;
         }
 
-        // killer1
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.KILLER1.ordinal() && killer1 != null) {
-            int ind = MoveUtils.indexOf(moves, killer1, startIndex);
-            if (ind != -1) {
-                MoveUtils.swap(moves, startIndex, ind);
-                swapScores(startIndex, ind);
-                lastMoveOrderStage = MoveOrderStage.KILLER1;
-                return moves[startIndex];
+        // generate and score captures and promotions
+        if (stage == MoveOrderStage.HASH_MOVE) {
+            stage = MoveOrderStage.CAPTURES;
+            numMoves = MoveGen.genPseudoLegalMoves(board, moves, true);
+            for (int i = 0; i < numMoves; i++) {
+                scores[i] = MVVLVA.score(moves[i]);
             }
         }
 
-        // killer2
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.KILLER2.ordinal() && killer2 != null) {
-            int ind = MoveUtils.indexOf(moves, killer2, startIndex);
-            if (ind != -1) {
-                MoveUtils.swap(moves, startIndex, ind);
-                swapScores(startIndex, ind);
-                lastMoveOrderStage = MoveOrderStage.KILLER2;
-                return moves[startIndex];
+        // captures and promotions, best first
+        if (stage == MoveOrderStage.CAPTURES) {
+            while (nextIndex < numMoves) {
+                int mv = selectBest(nextIndex++);
+                if (!isAlreadySelected(mv) && isLegal(mv)) {
+                    return select(mv);
+                }
             }
-        }
 
-        // non-captures
-        if (lastMoveOrderStage.ordinal() <= MoveOrderStage.NONCAPTURES.ordinal()) {
-            int ind = getIndexOfFirstNonCapture(startIndex);
-            if (ind != -1) {
-                MoveUtils.swap(moves, startIndex, ind);
-                swapScores(startIndex, ind);
-                lastMoveOrderStage = MoveOrderStage.NONCAPTURES;
-                return moves[startIndex];
+            // killer1
+            stage = MoveOrderStage.KILLER1;
+            if (isPlayableKiller(killer1)) {
+                return select(killer1);
             }
+            killer1 = PackedMove.NONE;
         }
 
-        // losing captures
-        lastMoveOrderStage = MoveOrderStage.LOSING_CAPTURES;
-        int loserInd = getIndexOfBestCapture(startIndex);
-        if (loserInd != -1) {
-            assert (scores[loserInd] < 0);
-            MoveUtils.swap(moves, startIndex, loserInd);
-            swapScores(startIndex, loserInd);
+        // killer2
+        if (stage == MoveOrderStage.KILLER1) {
+            stage = MoveOrderStage.KILLER2;
+            if (isPlayableKiller(killer2)) {
+                return select(killer2);
+            }
+            killer2 = PackedMove.NONE;
         }
 
-        return moves[startIndex];
-    }
+        // countermove
+        if (stage == MoveOrderStage.KILLER2) {
+            stage = MoveOrderStage.COUNTER_MOVE;
+            if (isPlayableKiller(counterMove)) {
+                return select(counterMove);
+            }
+            counterMove = PackedMove.NONE;
+        }
 
-    private void scoreMoves(int startIndex) {
-        // up to startIndex has already been played, the score is irrelevant
-        for (int i = startIndex; i < moves.length; i++) {
-            scores[i] = MVVLVA.score(board, moves[i]);
+        // generate and score the remaining moves
+        if (stage == MoveOrderStage.COUNTER_MOVE) {
+            stage = MoveOrderStage.NONCAPTURES;
+            int first = numMoves;
+            numMoves = MoveGen.genPseudoLegalNonCaptures(board, moves, numMoves);
+            for (int i = first; i < numMoves; i++) {
+                scores[i] = history.getScore(moves[i]);
+            }
         }
-    }
 
-    private int getIndexOfBestCapture(int startIndex) {
-        int index = -1;
-        int bestScore = -9999;
-
-        for (int i = startIndex; i < moves.length; i++) {
-            Move m = moves[i];
-            if (m.captured() != null || m.promotion() != null) {
-                int myScore = scores[i];
-                if (myScore > bestScore) {
-                    index = i;
-                    bestScore = myScore;
+        // non-captures, best history first
+        if (stage == MoveOrderStage.NONCAPTURES) {
+            while (nextIndex < numMoves) {
+                int mv = selectBest(nextIndex++);
+                if (!isAlreadySelected(mv) && mv != killer1 && mv != killer2 && mv != counterMove && isLegal(mv)) {
+                    return select(mv);
                 }
             }
+            stage = MoveOrderStage.DONE;
         }
-        return index;
+
+        return PackedMove.NONE;
     }
 
-    private int getIndexOfFirstNonCapture(int startIndex) {
-        int index = -1;
+    private int select(int mv) {
+        lastMoveOrderStage = stage;
+        return mv;
+    }
+
+    private boolean isAlreadySelected(int mv) {
+        return mv == pvMove || mv == hashMove;
+    }
 
-        for (int i = startIndex; i < moves.length; i++) {
-            Move m = moves[i];
-            if (m.captured() == null) {
-                index = i;
-                break;
+    /**
+     * Killers and countermoves come from other nodes, so they may not be playable here, and a square
+     * that was empty there may hold a piece now.
+     */
+    private boolean isPlayableKiller(int killer) {
+        return killer != PackedMove.NONE && !isAlreadySelected(killer) && !PackedMove.isCaptureOrPromotion(killer) && MoveGen.isPseudoLegalMove(board, killer) && isLegal(killer);
+    }
+
+    private boolean isLegal(int mv) {
+        return MoveGen.isLegalMove(board, mv, checkers, pinned);
+    }
+
+    /**
+     * Move the highest scored move from <startIndex> on to <startIndex> and return it.
+     */
+    private int selectBest(int startIndex) {
+        int bestInd = startIndex;
+        for (int i = startIndex + 1; i < numMoves; i++) {
+            if (scores[i] > scores[bestInd]) {
+                bestInd = i;
             }
         }
-
-        return index;
+        if (bestInd != startIndex) {
+            swap(startIndex, bestInd);
+        }
+        return moves[startIndex];
     }
 
-    public void swapScores(int ind1, int ind2) {
-        Integer tmp = scores[ind1];
+    private void swap(int ind1, int ind2) {
+        int tmpMove = moves[ind1];
+        moves[ind1] = moves[ind2];
+        moves[ind2] = tmpMove;
+        int tmpScore = scores[ind1];
         scores[ind1] = scores[ind2];
-        scores[ind2] = tmp;
+        scores[ind2] = tmpScore;
     }
 
+    /**
+     * @return the stage the last move handed out came from
+     */
     public MoveOrderStage getLastMoveOrderStage() {
         return lastMoveOrderStage;
     }
 
-    public void setLastMoveOrderStage(MoveOrderStage lastMoveOrderStage) {
-        this.lastMoveOrderStage = lastMoveOrderStage;
-    }
-
 }
@@ -3,105 +3,99 @@ package com.jamesswafford.chess4j.search;
 
 import com.jamesswafford.chess4j.Color;
 import com.jamesswafford.chess4j.board.*;
-import com.jamesswafford.chess4j.board.squares.Direction;
-import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.eval.Eval;
-import com.jamesswafford.chess4j.pieces.*;
-
-import java.util.HashMap;
-import java.util.Map;
+import com.jamesswafford.chess4j.pieces.Piece;
 
 
+/**
+ * Static exchange evaluation. The exchange on the target square is played out on bitboards: the
+ * attackers of both sides are found with one attackers-to query, each recapture is made with the
+ * least valuable attacker left, and as an attacker is taken off the occupancy the sliders lined up
+ * behind it (x-rays) are added from the magic tables. Nothing is allocated per call.
+ */
 public class SEE {
 
-    private static Map<Class<?>, Integer> pieceMap;
+    // the king is given a large finite value, so a king recapture onto a defended square scores as
+    // a loss instead of overflowing the swap list
+    private static final int[] SEE_VALUES = {0, Eval.PAWN_VAL, Eval.KNIGHT_VAL, Eval.BISHOP_VAL, Eval.ROOK_VAL, Eval.QUEEN_VAL, 20000};
 
-    static {
-        pieceMap = new HashMap<Class<?>, Integer>();
-        pieceMap.put(King.class, 6);
-        pieceMap.put(Queen.class, 5);
-        pieceMap.put(Rook.class, 4);
-        pieceMap.put(Bishop.class, 3);
-        pieceMap.put(Knight.class, 2);
-        pieceMap.put(Pawn.class, 1);
-    }
+    // swap list for scoreCapture, one per thread so scoring a capture allocates nothing
+    private static final ThreadLocal<int[]> swapList = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[32];
+        }
+    };
 
     // note m should already be applied
-    public static int see(Board b, Move m) {
+    public static int see(Board b, int m) {
         int score = 0;
 
-        if (m.promotion() != null) {
+        if (PackedMove.isPromotion(m)) {
             score = scorePromotion(m);
         }
 
-        if (m.captured() != null) {
+        if (PackedMove.isCapture(m)) {
             score += scoreCapture(b, m);
         }
 
         return score;
     }
 
-    private static int scorePromotion(Move m) {
-        int promoVal = pieceMap.get(m.promotion().getClass());
+    private static int scorePromotion(int m) {
+        int promoVal = PackedMove.getPiece(PackedMove.promotion(m)).getType();
 
         return 10000 + promoVal;
     }
 
-    private static int scoreCapture(Board b, Move m) {
-        assert (m.captured() != null);
-        assert (b.getPiece(m.from()) == null);
+    private static int scoreCapture(Board b, int m) {
+        assert (PackedMove.isCapture(m));
+        int toSq = PackedMove.to(m);
+        assert (b.getPieceIndex(PackedMove.from(m)) == 0);
 
-        int[] scores = new int[32];
-        scores[0] = Eval.getPieceValue(m.captured());
+        int[] scores = swapList.get();
+        scores[0] = SEE_VALUES[PackedMove.getPiece(PackedMove.captured(m)).getType()];
         int scoresInd = 1;
 
-        // play out the sequence
-        long whiteAttackersMap = AttackDetector.getAttackers(b, m.to(), Color.WHITE);
-        long blackAttackersMap = AttackDetector.getAttackers(b, m.to(), Color.BLACK);
+        // the mover has already left its square, so sliders behind it are found by the first query
+        long occupied = b.getWhitePieces() | b.getBlackPieces();
+        long attackers = AttackDetector.getAttackers(b, toSq, Color.WHITE, occupied) | AttackDetector.getAttackers(b, toSq, Color.BLACK, occupied);
+        long diagonalSliders = b.getWhiteBishops() | b.getWhiteQueens() | b.getBlackBishops() | b.getBlackQueens();
+        long straightSliders = b.getWhiteRooks() | b.getWhiteQueens() | b.getBlackRooks() | b.getBlackQueens();
 
-        Color sideToMove = b.getPlayerToMove();
-        Square currentSq = m.from();
-        Piece currentPiece = b.getPiece(m.to());
-        int attackedPieceVal = Eval.getPieceValue(currentPiece);
+        boolean whiteToMove = b.getPlayerToMove() == Color.WHITE;
+        int attackedPieceVal = SEE_VALUES[PackedMove.getPiece(b.getPieceIndex(toSq)).getType()];
 
+        // play out the sequence
         while (true) {
-            // add any x-ray attackers back in, behind currentPiece in
-            // the direction of m.to -> currentSq
-            if (!(currentPiece instanceof Knight) && !(currentPiece instanceof King)) {
-                Direction dir = Direction.directionTo[m.to().value()][currentSq.value()];
-
-                assert (dir != null);
-                long targetSquares = Bitboard.rays[currentSq.value()][dir.value()];
-
-                long xrays;
-                if (dir.isDiagonal()) {
-                    xrays = Magic.getBishopMoves(b, currentSq.value(), targetSquares) & (b.getWhiteBishops() | b.getWhiteQueens() | b.getBlackBishops() | b.getBlackQueens());
-                } else {
-                    xrays = Magic.getRookMoves(b, currentSq.value(), targetSquares) & (b.getWhiteRooks() | b.getWhiteQueens() | b.getBlackRooks() | b.getBlackQueens());
-                }
-                if ((xrays & b.getWhitePieces()) != 0) {
-                    whiteAttackersMap |= xrays;
-                } else if ((xrays & b.getBlackPieces()) != 0) {
-                    blackAttackersMap |= xrays;
-                }
-            }
-
-            currentSq = findLeastValuable(b, sideToMove == Color.WHITE ? whiteAttackersMap : blackAttackersMap);
-            if (currentSq == null)
+            long myAttackers = attackers & (whiteToMove ? b.getWhitePieces() : b.getBlackPieces());
+            if (myAttackers == 0) {
                 break;
+            }
 
-            if (sideToMove == Color.WHITE) {
-                whiteAttackersMap ^= Bitboard.squares[currentSq.value()];
-            } else {
-                blackAttackersMap ^= Bitboard.squares[currentSq.value()];
+            // find the least valuable attacker
+            int type = Piece.PAWN;
+            long typeAttackers = myAttackers & getPieces(b, whiteToMove, type);
+            while (typeAttackers == 0) {
+                type++;
+                typeAttackers = myAttackers & getPieces(b, whiteToMove, type);
             }
-            currentPiece = b.getPiece(currentSq);
-            assert (currentPiece != null);
 
             scores[scoresInd] = attackedPieceVal - scores[scoresInd - 1];
             scoresInd++;
-            attackedPieceVal = Eval.getPieceValue(currentPiece);
-            sideToMove = Color.swap(sideToMove);
+            attackedPieceVal = SEE_VALUES[type];
+
+            // take it off the board and add any x-ray attackers behind it
+            occupied ^= Bitboard.squares[Bitboard.lsb(typeAttackers)];
+            if (type == Piece.PAWN || type == Piece.BISHOP || type == Piece.QUEEN) {
+                attackers |= Magic.getBishopAttacks(toSq, occupied) & diagonalSliders;
+            }
+            if (type == Piece.ROOK || type == Piece.QUEEN) {
+                attackers |= Magic.getRookAttacks(toSq, occupied) & straightSliders;
+            }
+            attackers &= occupied;
+
+            whiteToMove = !whiteToMove;
         }
 
         // evaluate the sequence
@@ -114,27 +108,23 @@ public class SEE {
     }
 
     /**
-     * Returns the square with the least valuable piece for <sideToMove>, or NULL
-     * if none of the squares have a piece of that color.
-     *
-     * @return
+     * @return the pieces of type <type> (see {@link Piece#getType()}) of one side
      */
-    private static Square findLeastValuable(Board board, long attackers) {
-        Square lvSq = null;
-        int lvScore = 0;
-
-        while (attackers != 0) {
-            int sqInd = Bitboard.lsb(attackers);
-            Square sq = Square.valueOf(sqInd);
-            int myVal = Eval.getPieceValue(board.getPiece(sq));
-            if (lvSq == null || myVal < lvScore) {
-                lvSq = sq;
-                lvScore = myVal;
-            }
-            attackers ^= Bitboard.squares[sqInd];
+    private static long getPieces(Board b, boolean white, int type) {
+        switch (type) {
+            case Piece.PAWN:
+                return white ? b.getWhitePawns() : b.getBlackPawns();
+            case Piece.KNIGHT:
+                return white ? b.getWhiteKnights() : b.getBlackKnights();
+            case Piece.BISHOP:
+                return white ? b.getWhiteBishops() : b.getBlackBishops();
+            case Piece.ROOK:
+                return white ? b.getWhiteRooks() : b.getBlackRooks();
+            case Piece.QUEEN:
+                return white ? b.getWhiteQueens() : b.getBlackQueens();
+            default:
+                return Bitboard.squares[b.getKingSquare(white ? Color.WHITE : Color.BLACK).value()];
         }
-
-        return lvSq;
     }
 
 }
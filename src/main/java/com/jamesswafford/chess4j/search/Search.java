@@ -5,54 +5,53 @@ import com.jamesswafford.chess4j.Constants;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
 import com.jamesswafford.chess4j.board.ZugzwangDetector;
 import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.eval.Eval;
+import com.jamesswafford.chess4j.eval.KPKBitbase;
 import com.jamesswafford.chess4j.hash.TranspositionTable;
-import com.jamesswafford.chess4j.hash.TranspositionTableEntry;
 import com.jamesswafford.chess4j.hash.TranspositionTableEntryType;
 import com.jamesswafford.chess4j.io.PrintLine;
+import com.jamesswafford.chess4j.pieces.King;
+import com.jamesswafford.chess4j.utils.EngineLog;
 import com.jamesswafford.chess4j.utils.GameStatusChecker;
-import eu.usrv.yamcore.auxiliary.LogHelper;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 
 public final class Search {
-    public static long startTime = 0;
-    public static long stopTime = 0;
-    public static long lastTimeCheck = 0;
-    public static boolean analysisMode = false;
-    public static boolean abortSearch = false;
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    // nodes searched between two reads of the clock
+    private static final long TIME_CHECK_INTERVAL = 10000;
 
     private Search() {
     }
 
-    public static int search(List<Move> parentPV, int alpha, int beta, Board board, int depth, SearchStats stats, boolean showThinking) {
+    public static int search(EngineContext ctx, List<Move> parentPV, int alpha, int beta, Board board, int depth, boolean showThinking) {
 
         assert (depth > 0);
         assert (beta > alpha);
 
+        SearchStats stats = ctx.getSearchStats();
+        SearchStack stack = ctx.getSearchStack();
+
         stats.incNodes();
-        stats.getFirstLine().clear();
+        loadLastPV(stack, stats.getLastPV(), board);
 
-        List<Move> moves = MoveGen.genLegalMoves(board);
-        TranspositionTableEntry te = TranspositionTable.getInstance().probe(board.getZobristKey());
+        long te = ctx.getTranspositionTable().probe(board.getZobristKey());
 
-        List<Move> pv = new ArrayList<Move>();
         int numMovesSearched = 0;
-        int totalMoves = moves.size();
-        Move pvMove = stats.getLastPV().size() > 0 ? stats.getLastPV().get(0) : null;
-        Move hashMove = te == null ? null : te.getMove();
-        MoveOrderer mo = new MoveOrderer(board, moves, pvMove, hashMove, null, null);
-
-        while (numMovesSearched < totalMoves) {
-            Move move = mo.selectNextMove(numMovesSearched);
-            recordFirstLine(true, numMovesSearched, stats, move);
+        int pvMove = stack.lastPVLength > 0 ? stack.lastPV[0] : PackedMove.NONE;
+        int hashMove = te == 0 ? PackedMove.NONE : TranspositionTable.getMove(te);
+        MoveOrderer mo = stack.orderers[0];
+        mo.init(board, pvMove, hashMove, PackedMove.NONE, PackedMove.NONE, PackedMove.NONE);
+
+        int move;
+        while ((move = mo.selectNextMove()) != PackedMove.NONE) {
             board.applyMove(move);
+            assert (!board.isOpponentInCheck());
 
             int score;
             boolean givesCheck = board.isPlayerInCheck();
@@ -60,19 +59,26 @@ public final class Search {
             int extend = Extend.extendDepth(board, move, givesCheck);
             assert (extend >= 0 && extend <= 1);
 
+            // the move is searched with the window shifted down by its bonus, so the score plus the
+            // bonus is compared against the real bounds
+            int bonus = getRandomBonus(ctx, move);
+            int childAlpha = Math.max(alpha - bonus, -Constants.INFINITY);
+            int childBeta = Math.max(beta - bonus, childAlpha + 1);
+
             if (numMovesSearched == 0) {
-                score = -searchHelper(pv, -beta, -alpha, board, depth - 1 + extend, 1, true, givesCheck, false, stats);
+                score = bonus - searchHelper(ctx, -childBeta, -childAlpha, board, depth - 1 + extend, 1, true, givesCheck, false);
             } else {
-                // score = -searchHelper(pv,-(alpha+1),-alpha,board,depth-1+extend,1,false,givesCheck,(extend==0),stats);
-                // if (score > alpha && score < beta) {
-                score = -searchHelper(pv, -beta, -alpha, board, depth - 1 + extend, 1, false, givesCheck, (extend == 0), stats);
-                // }
+                score = bonus - searchHelper(ctx, -(childAlpha + 1), -childAlpha, board, depth - 1 + extend, 1, false, givesCheck, (extend == 0));
+                if (score > alpha && score < beta) {
+                    stats.incPvsResearches();
+                    score = bonus - searchHelper(ctx, -childBeta, -childAlpha, board, depth - 1 + extend, 1, true, givesCheck, false);
+                }
             }
             numMovesSearched++;
             board.undoLastMove();
 
             // if depth==1, we need to continue to search to ensure we have something to play
-            if (depth > 1 && abortSearch) {
+            if (depth > 1 && ctx.isAbortSearch()) {
                 return 0;
             }
 
@@ -81,9 +87,10 @@ public final class Search {
                     return beta;
                 }
                 alpha = score;
-                setParentPV(parentPV, move, pv);
+                stack.setPV(0, move);
+                setParentPV(parentPV, stack);
                 if (showThinking) {
-                    PrintLine.printLine(parentPV, depth, score, startTime, stats.getNodes());
+                    PrintLine.printLine(parentPV, depth, score, ctx.getStartTime(), stats.getNodes());
                 }
             }
         }
@@ -93,37 +100,68 @@ public final class Search {
         return alpha;
     }
 
-    private static void setParentPV(List<Move> parentPV, Move head, List<Move> tail) {
+    /**
+     * A root move's random bonus: between 0 and the context's random margin, fixed for the whole
+     * search so every iteration sees the same bonuses. The best move then is one of those scoring
+     * within the margin of the best.
+     */
+    private static int getRandomBonus(EngineContext ctx, int move) {
+        int margin = ctx.getRandomMargin();
+        if (margin == 0) {
+            return 0;
+        }
+        long hash = (ctx.getRandomSeed() ^ move) * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % (margin + 1));
+    }
+
+    private static void setParentPV(List<Move> parentPV, SearchStack stack) {
         parentPV.clear();
-        parentPV.add(head);
-        parentPV.addAll(tail);
+        for (int i = 0; i < stack.pvLength[0]; i++) {
+            parentPV.add(PackedMove.toMove(stack.pv[0][i]));
+        }
     }
 
-    private static int searchHelper(List<Move> parentPV, int alpha, int beta, Board board, int depth, int ply, boolean pvNode, boolean inCheck, boolean isNullMoveOK, SearchStats stats) {
+    /**
+     * Encode the PV of the previous iteration, so nodes along it can try its moves first.
+     */
+    private static void loadLastPV(SearchStack stack, List<Move> lastPV, Board board) {
+        int n = Math.min(lastPV.size(), SearchStack.MAX_PLY);
+        for (int i = 0; i < n; i++) {
+            stack.lastPV[i] = PackedMove.fromMove(board, lastPV.get(i));
+            board.applyMove(stack.lastPV[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            board.undoLastMove();
+        }
+        stack.lastPVLength = n;
+    }
+
+    private static int searchHelper(EngineContext ctx, int alpha, int beta, Board board, int depth, int ply, boolean pvNode, boolean inCheck, boolean isNullMoveOK) {
 
         assert (ply > 0);
         assert (alpha < beta);
         assert (inCheck == board.isPlayerInCheck());
 
+        SearchStats stats = ctx.getSearchStats();
+        SearchStack stack = ctx.getSearchStack();
         int origAlpha = alpha;
-        parentPV.clear();
+        stack.pvLength[ply] = 0;
         stats.incNodes();
 
         if (depth < 1) {
             assert (!inCheck);
-            return Search.quiescenceSearch(alpha, beta, inCheck, board, stats);
+            return Search.quiescenceSearch(ctx, alpha, beta, inCheck, board, ply);
+        }
+
+        // out of room on the search stack. only very long chains of extensions get here.
+        if (ply >= SearchStack.MAX_PLY - 1) {
+            return Eval.eval(ctx, board);
         }
 
         // Time check
-        if (!analysisMode && lastTimeCheck > 10000) {
-            if (System.currentTimeMillis() > stopTime) {
-                abortSearch = true;
-                mLog.debug("# Aborting search depth=" + depth + ", ply=" + ply + " on time...");
-                return 0;
-            }
-            lastTimeCheck = 0;
-        } else {
-            lastTimeCheck++;
+        if (isOutOfTime(ctx)) {
+            mLog.debug("# Aborting search depth=" + depth + ", ply=" + ply + " on time...");
+            return 0;
         }
 
         // Draw check
@@ -132,22 +170,29 @@ public final class Search {
             return 0;
         }
 
+        // king and pawn against king draws are known without searching them
+        if (KPKBitbase.isAvailable() && KPKBitbase.isKPK(board) && !KPKBitbase.isWin(board)) {
+            return 0;
+        }
+
         // probe the hash table. maybe we won't have to do any work at all!
-        TranspositionTableEntry te = TranspositionTable.getInstance().probe(board.getZobristKey());
-        if (te != null && te.getDepth() >= depth) {
-            if (te.getType() == TranspositionTableEntryType.LOWER_BOUND) {
-                if (te.getScore() >= beta) {
+        long te = ctx.getTranspositionTable().probe(board.getZobristKey());
+        if (te != 0 && TranspositionTable.getDepth(te) >= depth) {
+            TranspositionTableEntryType teType = TranspositionTable.getType(te);
+            int teScore = TranspositionTable.getScore(te);
+            if (teType == TranspositionTableEntryType.LOWER_BOUND) {
+                if (teScore >= beta) {
                     stats.incFailHighs();
                     return beta;
                 }
-            } else if (te.getType() == TranspositionTableEntryType.UPPER_BOUND) {
-                if (te.getScore() <= alpha) {
+            } else if (teType == TranspositionTableEntryType.UPPER_BOUND) {
+                if (teScore <= alpha) {
                     stats.incFailLows();
                     return alpha;
                 }
-            } else if (te.getType() == TranspositionTableEntryType.EXACT_MATCH) {
+            } else if (teType == TranspositionTableEntryType.EXACT_MATCH) {
                 stats.incHashExactScores();
-                return te.getScore();
+                return teScore;
             }
         }
 
@@ -163,14 +208,16 @@ public final class Search {
             if (nullDepth < 1) {
                 nullDepth = 1;
             } // don't drop into q-search
-            int nullScore = -searchHelper(parentPV, 0 - beta, 1 - beta, board, nullDepth, ply, false, false, false, stats);
+            int nullScore = -searchHelper(ctx, 0 - beta, 1 - beta, board, nullDepth, ply, false, false, false);
 
             board.swapPlayer();
             if (nullEP != null) {
                 board.setEP(nullEP);
             }
+            // the null move search ran on this ply, drop the line it left behind
+            stack.pvLength[ply] = 0;
 
-            if (abortSearch) {
+            if (ctx.isAbortSearch()) {
                 return 0;
             }
 
@@ -180,27 +227,25 @@ public final class Search {
         }
         ////////////////////// End Null Move
 
-        // Generate moves
-        List<Move> moves = MoveGen.genPseudoLegalMoves(board);
-
-        List<Move> pv = new ArrayList<Move>(50);
-        int numMovesApplied = 0, numMovesSearched = 0;
-        int totalMoves = moves.size();
-        Move pvMove = (pvNode && stats.getLastPV().size() > ply) ? stats.getLastPV().get(ply) : null;
-        Move hashMove = te == null ? null : te.getMove();
-        MoveOrderer mo = new MoveOrderer(board, moves, pvMove, hashMove, KillerMoves.getInstance().getKiller1(ply), KillerMoves.getInstance().getKiller2(ply));
-        Move bestMove = null;
-
-        while (numMovesApplied < totalMoves) {
-            Move move = mo.selectNextMove(numMovesApplied);
-            recordFirstLine(pvNode, numMovesSearched, stats, move);
+        // Moves are generated by the orderer, in stages, as they are needed
+        int numMovesSearched = 0;
+        int pvMove = (pvNode && stack.lastPVLength > ply) ? stack.lastPV[ply] : PackedMove.NONE;
+        int hashMove = te == 0 ? PackedMove.NONE : TranspositionTable.getMove(te);
+        int killer1 = ctx.getKillerMoves().getKiller1(ply);
+        int killer2 = ctx.getKillerMoves().getKiller2(ply);
+        HistoryTable history = ctx.getHistoryTable();
+        int previousMove = getPreviousMove(board);
+        int counterMove = previousMove == PackedMove.NONE ? PackedMove.NONE : history.getCounterMove(previousMove);
+        MoveOrderer mo = stack.orderers[ply];
+        mo.init(board, pvMove, hashMove, killer1, killer2, counterMove);
+        int bestMove = PackedMove.NONE;
+        int[] quietsTried = stack.quietsTried[ply];
+        int numQuietsTried = 0;
+
+        int move;
+        while ((move = mo.selectNextMove()) != PackedMove.NONE) {
             board.applyMove(move);
-            numMovesApplied++;
-            if (board.isOpponentInCheck()) {
-                // illegal
-                board.undoLastMove();
-                continue;
-            }
+            assert (!board.isOpponentInCheck());
 
             boolean givesCheck = board.isPlayerInCheck();
 
@@ -211,13 +256,15 @@ public final class Search {
             int score;
             if (numMovesSearched == 0) {
                 // this is a PV node.
-                score = -searchHelper(pv, -beta, -alpha, board, depth - 1 + extend, ply + 1, pvNode, givesCheck, !pvNode, stats);
+                score = -searchHelper(ctx, -beta, -alpha, board, depth - 1 + extend, ply + 1, pvNode, givesCheck, !pvNode);
             } else {
                 // if we've searched enough moves and haven't gotten a fail high yet, this is likely
                 // a fail-low node. reduce the remaining moves. if the score comes back above alpha,
                 // then our assumption was wrong and we need to research at full depth.
-                if (numMovesSearched >= 4 && depth >= 3 && !pvNode && !inCheck && !givesCheck && extend == 0 && move.captured() == null && move.promotion() == null && !move.equals(KillerMoves.getInstance().getKiller1(ply)) && !move.equals(KillerMoves.getInstance().getKiller2(ply))) {
-                    score = -searchHelper(pv, -(alpha + 1), -alpha, board, depth - 2, ply + 1, false, false, true, stats);
+                // moves that have mostly failed elsewhere in the tree are reduced by one more ply.
+                if (numMovesSearched >= 4 && depth >= 3 && !pvNode && !inCheck && !givesCheck && extend == 0 && !PackedMove.isCaptureOrPromotion(move) && move != killer1 && move != killer2 && move != counterMove) {
+                    int reduction = depth >= 4 && history.getScore(move) < 0 ? 2 : 1;
+                    score = -searchHelper(ctx, -(alpha + 1), -alpha, board, depth - 1 - reduction, ply + 1, false, false, true);
                 } else {
                     score = alpha + 1; // ensure a full depth search
                 }
@@ -225,10 +272,11 @@ public final class Search {
                 if (score > alpha) {
                     // try a PVS search. since this is not the PV node, our expectation is that it will not improve
                     // alpha. If it does, then we need to research with a full window to establish the real score.
-                    // score = -searchHelper(pv,-(alpha+1),-alpha,board,depth-1+extend,ply+1,false,givesCheck,(extend==0),stats);
-                    // if (score > alpha && score < beta) {
-                    score = -searchHelper(pv, -beta, -alpha, board, depth - 1 + extend, ply + 1, false, givesCheck, (extend == 0), stats);
-                    // }
+                    score = -searchHelper(ctx, -(alpha + 1), -alpha, board, depth - 1 + extend, ply + 1, false, givesCheck, (extend == 0));
+                    if (score > alpha && score < beta) {
+                        stats.incPvsResearches();
+                        score = -searchHelper(ctx, -beta, -alpha, board, depth - 1 + extend, ply + 1, true, givesCheck, false);
+                    }
                 }
             }
             //////
@@ -236,21 +284,30 @@ public final class Search {
             numMovesSearched++;
             board.undoLastMove();
 
-            if (abortSearch) {
+            if (ctx.isAbortSearch()) {
                 return 0;
             }
 
             if (score > alpha) {
                 if (score >= beta) {
-                    TranspositionTable.getInstance().store(TranspositionTableEntryType.LOWER_BOUND, board.getZobristKey(), beta, depth, move);
-                    if (move.captured() == null && move.promotion() == null) {
-                        KillerMoves.getInstance().addKiller(ply, move);
+                    stats.incCutoffs(numMovesSearched == 1);
+                    ctx.getTranspositionTable().store(TranspositionTableEntryType.LOWER_BOUND, board.getZobristKey(), beta, depth, move);
+                    if (!PackedMove.isCaptureOrPromotion(move)) {
+                        ctx.getKillerMoves().addKiller(ply, move);
+                        history.addCutoff(move, depth, quietsTried, numQuietsTried);
+                        if (previousMove != PackedMove.NONE) {
+                            history.setCounterMove(previousMove, move);
+                        }
                     }
                     return beta;
                 }
                 alpha = score;
                 bestMove = move;
-                setParentPV(parentPV, move, pv);
+                stack.setPV(ply, move);
+            }
+
+            if (!PackedMove.isCaptureOrPromotion(move)) {
+                quietsTried[numQuietsTried++] = move;
             }
         }
         assert (numMovesSearched == MoveGen.genLegalMoves(board).size());
@@ -258,31 +315,25 @@ public final class Search {
 
         alpha = adjustFinalScoreForMates(board, alpha, numMovesSearched, ply);
 
-        TranspositionTableEntryType tet = bestMove == null ? TranspositionTableEntryType.UPPER_BOUND : // fail low node - we
+        TranspositionTableEntryType tet = bestMove == PackedMove.NONE ? TranspositionTableEntryType.UPPER_BOUND : // fail low node - we
                 // didn't find a move
                 // > alpha
                 TranspositionTableEntryType.EXACT_MATCH;
-        TranspositionTable.getInstance().store(tet, board.getZobristKey(), alpha, depth, bestMove);
+        ctx.getTranspositionTable().store(tet, board.getZobristKey(), alpha, depth, bestMove);
 
         return alpha;
     }
 
-    public static int quiescenceSearch(int alpha, int beta, boolean inCheck, Board board, SearchStats stats) {
+    public static int quiescenceSearch(EngineContext ctx, int alpha, int beta, boolean inCheck, Board board, int ply) {
         assert (alpha < beta);
 
         // Time check
-        if (!analysisMode && lastTimeCheck > 10000) {
-            if (System.currentTimeMillis() > stopTime) {
-                mLog.debug("# Aborting qsearch on time...");
-                abortSearch = true;
-                return 0;
-            }
-            lastTimeCheck = 0;
-        } else {
-            lastTimeCheck++;
+        if (isOutOfTime(ctx)) {
+            mLog.debug("# Aborting qsearch on time...");
+            return 0;
         }
 
-        int standPat = Eval.eval(board);
+        int standPat = Eval.eval(ctx, board);
         if (standPat > alpha) {
             if (standPat >= beta) {
                 return beta;
@@ -291,32 +342,44 @@ public final class Search {
             alpha = standPat;
         }
 
-        List<Move> moves = MoveGen.genPseudoLegalMoves(board, true);
-        Collections.sort(moves, new MVVLVA(board));
+        if (ply >= SearchStack.MAX_PLY) {
+            return alpha;
+        }
 
-        for (Move mv : moves) {
-            assert (mv.captured() != null || mv.promotion() != null);
+        SearchStack stack = ctx.getSearchStack();
+        int[] moves = stack.moves[ply];
+        int[] scores = stack.scores[ply];
+        int numMoves = MoveGen.genPseudoLegalMoves(board, moves, true);
+        for (int i = 0; i < numMoves; i++) {
+            scores[i] = MVVLVA.score(moves[i]);
+        }
+        // captures that give check come in with inCheck unset, so look for checkers regardless
+        long checkers = MoveGen.getCheckers(board);
+        long pinned = MoveGen.getPinned(board);
 
-            board.applyMove(mv);
-            if (board.isOpponentInCheck()) {
-                // illegal
-                board.undoLastMove();
+        for (int i = 0; i < numMoves; i++) {
+            int mv = selectBestMove(moves, scores, i, numMoves);
+            assert (PackedMove.isCaptureOrPromotion(mv));
+
+            if (!MoveGen.isLegalMove(board, mv, checkers, pinned)) {
                 continue;
             }
+            board.applyMove(mv);
+            assert (!board.isOpponentInCheck());
 
             // if not a promising capture just skip
-            if (!inCheck && mv.promotion() == null && Eval.getPieceValue(board.getPiece(mv.to())) > Eval.getPieceValue(mv.captured()) && SEE.see(board, mv) < 0) {
+            if (!inCheck && !PackedMove.isPromotion(mv) && Eval.getPieceValue(PackedMove.getPiece(PackedMove.piece(mv))) > Eval.getPieceValue(PackedMove.getPiece(PackedMove.captured(mv))) && SEE.see(board, mv) < 0) {
                 board.undoLastMove();
                 continue;
             }
 
             boolean givesCheck = false; // board.isPlayerInCheck();
-            stats.incQNodes();
-            int score = -quiescenceSearch(-beta, -alpha, givesCheck, board, stats);
+            ctx.getSearchStats().incQNodes();
+            int score = -quiescenceSearch(ctx, -beta, -alpha, givesCheck, board, ply + 1);
 
             board.undoLastMove();
 
-            if (abortSearch) {
+            if (ctx.isAbortSearch()) {
                 return 0;
             }
 
@@ -331,10 +394,68 @@ public final class Search {
         return alpha;
     }
 
-    private static void recordFirstLine(boolean isPVNode, int numMovesSearched, SearchStats stats, Move move) {
-        if (isPVNode && numMovesSearched == 0) {
-            stats.getFirstLine().add(move);
+    /**
+     * Move the highest scored of the moves from <startIndex> on to <startIndex> and return it.
+     */
+    private static int selectBestMove(int[] moves, int[] scores, int startIndex, int numMoves) {
+        int bestInd = startIndex;
+        for (int i = startIndex + 1; i < numMoves; i++) {
+            if (scores[i] > scores[bestInd]) {
+                bestInd = i;
+            }
+        }
+        if (bestInd != startIndex) {
+            int tmpMove = moves[startIndex];
+            moves[startIndex] = moves[bestInd];
+            moves[bestInd] = tmpMove;
+            int tmpScore = scores[startIndex];
+            scores[startIndex] = scores[bestInd];
+            scores[bestInd] = tmpScore;
+        }
+        return moves[startIndex];
+    }
+
+    /**
+     * @return the move that led to the position, or {@link PackedMove#NONE} at the root and after a
+     * null move
+     */
+    private static int getPreviousMove(Board board) {
+        int numUndos = board.getNumUndos();
+        if (numUndos == 0) {
+            return PackedMove.NONE;
+        }
+        int previousMove = board.getUndoMove(numUndos - 1);
+        // a null move doesn't go on the undo stack, so the last move there was made by the side to move
+        boolean previousWhite = PackedMove.piece(previousMove) <= King.WHITE_KING.getIndex();
+        return previousWhite == board.getPlayerToMove().isWhite() ? PackedMove.NONE : previousMove;
+    }
+
+    /**
+     * Has the search used up its node budget or passed its stop time? The node budget is checked at
+     * every node, the clock only every {@link #TIME_CHECK_INTERVAL} nodes. That is also where a
+     * search waits while the {@link EngineGovernor} has paused the engine.
+     */
+    private static boolean isOutOfTime(EngineContext ctx) {
+        SearchStats stats = ctx.getSearchStats();
+        long nodes = stats.getNodes() + stats.getQNodes();
+        // the nodes of Lazy-SMP helpers count against the budget too
+        if (!ctx.isAnalysisMode() && ctx.getNodeLimit() > 0 && nodes + ctx.getHelperNodes() >= ctx.getNodeLimit()) {
+            ctx.setAbortSearch(true);
+            return true;
+        }
+
+        if (nodes >= ctx.getNextTimeCheck()) {
+            ctx.setNextTimeCheck(nodes + TIME_CHECK_INTERVAL);
+            if (ctx.isHelper()) {
+                ctx.reportHelperNodes(nodes);
+            }
+            EngineGovernor.checkpoint(ctx);
+            if (!ctx.isAnalysisMode() && System.currentTimeMillis() > ctx.getStopTime()) {
+                ctx.setAbortSearch(true);
+                return true;
+            }
         }
+        return false;
     }
 
     private static int adjustFinalScoreForMates(Board board, int score, int numMovesSearched, int ply) {
@@ -6,23 +6,24 @@ import com.jamesswafford.chess4j.Constants;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.MoveGen;
+import com.jamesswafford.chess4j.board.PackedMove;
 import com.jamesswafford.chess4j.book.BookMove;
 import com.jamesswafford.chess4j.eval.Eval;
-import com.jamesswafford.chess4j.hash.PawnTranspositionTable;
-import com.jamesswafford.chess4j.hash.TranspositionTable;
+import com.jamesswafford.chess4j.hash.PositionCache;
 import com.jamesswafford.chess4j.io.PrintGameResult;
 import com.jamesswafford.chess4j.io.PrintLine;
+import com.jamesswafford.chess4j.utils.EngineLog;
 import com.jamesswafford.chess4j.utils.GameStatus;
 import com.jamesswafford.chess4j.utils.GameStatusChecker;
 import com.jamesswafford.chess4j.utils.MoveUtils;
 import com.jamesswafford.chess4j.utils.TimeUtils;
 import eu.usrv.legacylootgames.chess.ChessEngineProxy;
-import eu.usrv.yamcore.auxiliary.LogHelper;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
@@ -31,63 +32,47 @@ import java.util.List;
  * @author james
  */
 public final class SearchIterator {
-    public static final Object ponderMutex = new Object();
-    private static final SearchIterator INSTANCE = new SearchIterator();
-
-    public static boolean useOpeningBook = false;
-
-    public static boolean ponderEnabled;
-    public static int maxDepth;
-    public static int remainingTimeMS;
-    public static int incrementMS;
-    public static int maxTime;
-    public static boolean showThinking = true;
-    public static boolean abortIterator = false;
-    private static final LogHelper mLog = new LogHelper("LootGames - ChessEngine");
-    private static boolean pondering;
-    private static Move ponderMove;
+    private static final EngineLog mLog = EngineLog.getLog();
+    private static final int ASPIRATION_WINDOW = Eval.PAWN_VAL / 3;
+    private static final int MAX_ASPIRATION_WINDOW = Eval.PAWN_VAL * 4;
+    // from this many reversible moves on, the fifty move rule may decide what a search finds
+    private static final int POSITION_CACHE_MAX_FIFTY_COUNTER = 50;
 
     private SearchIterator() {
     }
 
-    public static SearchIterator getInstance() {
-        return INSTANCE;
-    }
-
     /**
-     * Kick off the iterative deepening search in its own thread.
-     * Returns the thread.
+     * Kick off the iterative deepening search on the engine executor.
+     * Returns the queued task.
      *
      * @return
      */
-    public static Thread think() {
+    public static SearchTask think(final EngineContext ctx) {
 
-        abortIterator = false;
+        ctx.setDeadline(0);
 
         // make a copy of the current position. note that just because we are operating
-        // of a copy of the global position, the global position itself should remain
-        // unchanged until our search is complete.
-        final Board searchPos = Board.INSTANCE.deepCopy();
+        // of a copy of the game position, the game position itself should remain
+        // unchanged until our search is complete. the game board belongs to the server
+        // thread, moves are only ever applied to it there.
+        final Board gameBoard = ctx.getBoard();
+        final Board searchPos = gameBoard.deepCopy();
 
         class Thinker implements Runnable {
             @Override
             public void run() {
-                pondering = false;
-                List<Move> pv = iterate(searchPos, false);
-                assert (Board.INSTANCE.equals(searchPos));
-                Board.INSTANCE.applyMove(pv.get(0));
-                ChessEngineProxy.getInstance().publishAnswer("move " + pv.get(0));
-                GameStatus gs = GameStatusChecker.getGameStatus();
+                ctx.setPondering(false);
+                List<Move> pv = iterate(ctx, searchPos, false);
+                GameStatus gs = playMove(pv.get(0));
 
                 // pondering loop. as long as we guess correctly we'll loop back around
                 // if we don't predict correctly this thread is terminated
                 boolean ponderSuccess = true;
-                while (!abortIterator && gs == GameStatus.INPROGRESS && ponderEnabled && pv.size() > 1 && ponderSuccess) {
-                    ponderMove = pv.get(1);
-                    mLog.info("### START PONDERING: " + ponderMove);
-                    pondering = true;
-                    searchPos.applyMove(pv.get(0)); // apply the move just made so we're in sync
-                    searchPos.applyMove(ponderMove); // apply the predicted move
+                while (!ctx.isAbortIterator() && gs == GameStatus.INPROGRESS && ctx.isPonderEnabled() && pv.size() > 1 && ponderSuccess) {
+                    ctx.setPonderMove(pv.get(1));
+                    mLog.info("### START PONDERING: " + ctx.getPonderMove());
+                    ctx.setPondering(true);
+                    searchPos.applyMove(ctx.getPonderMove()); // apply the predicted move
 
                     // start an iterative search in ponder mode. When the iterative search completes,
                     // if we're not in pondering mode, then a user move was received and we predicted
@@ -95,17 +80,14 @@ public final class SearchIterator {
                     // resolved and exited early or the search was aborted. In either case just terminate
                     // the thread.
 
-                    pv = iterate(searchPos, false);
-                    mLog.info("# ponder search terminated.  analysis mode?: " + Search.analysisMode);
+                    pv = iterate(ctx, searchPos, false);
+                    mLog.info("# ponder search terminated.  analysis mode?: " + ctx.isAnalysisMode());
 
-                    synchronized (ponderMutex) {
-                        if (!pondering) {
-                            assert (Board.INSTANCE.equals(searchPos));
-                            Board.INSTANCE.applyMove(pv.get(0));
-                            ChessEngineProxy.getInstance().publishAnswer("move " + pv.get(0));
-                            gs = GameStatusChecker.getGameStatus();
+                    synchronized (ctx.ponderMutex) {
+                        if (!ctx.isPondering()) {
+                            gs = playMove(pv.get(0));
                         } else {
-                            pondering = false;
+                            ctx.setPondering(false);
                             ponderSuccess = false;
                         }
                     }
@@ -114,21 +96,73 @@ public final class SearchIterator {
                 mLog.info("### exiting search thread");
 
                 if (gs != GameStatus.INPROGRESS) {
-                    PrintGameResult.printResult(gs);
+                    final GameStatus result = gs;
+                    ChessEngineProxy.getInstance().runOnServerThread(() -> {
+                        if (gameBoard.equals(searchPos)) {
+                            PrintGameResult.printResult(ctx, result);
+                        }
+                    });
                 }
             }
+
+            /**
+             * Play the move found in the search position: the game board gets it on the server
+             * thread, unless the game has moved on in the meantime.
+             */
+            private GameStatus playMove(final Move move) {
+                final Board position = searchPos.deepCopy();
+                searchPos.applyMove(move);
+
+                ChessEngineProxy.getInstance().runOnServerThread(() -> {
+                    if (!gameBoard.equals(position)) {
+                        mLog.info("# game position changed, dropping move " + move);
+                        return;
+                    }
+                    gameBoard.applyMove(move);
+                    ChessEngineProxy.getInstance().publishAnswer(ctx.getToken(), "move " + move);
+                });
+
+                return GameStatusChecker.getGameStatus(searchPos);
+            }
         }
 
-        Thread thinkThread = new Thread(new Thinker());
-        thinkThread.start();
+        return submit(ctx, new Thinker());
+    }
+
+    /**
+     * Queue work for the given context on the engine executor. Any task the context still has
+     * queued or running is stopped first, so a context never has more than one search in flight.
+     */
+    public static SearchTask submit(EngineContext ctx, Runnable body) {
+        stop(ctx);
+        ctx.setAbortIterator(false);
+
+        SearchTask task = new SearchTask(ctx, body);
+        ctx.setSearchTask(task);
+        EngineExecutor.execute(task);
 
-        return thinkThread;
+        return task;
     }
 
-    public static void calculateSearchTimes() {
-        maxTime = TimeUtils.getSearchTime(remainingTimeMS, incrementMS);
-        Search.stopTime = Search.startTime + maxTime;
-        mLog.debug("# calculated search time: " + maxTime);
+    public static void stop(EngineContext ctx) {
+        SearchTask task = ctx.getSearchTask();
+        if (task != null) {
+            task.stop();
+            ctx.setSearchTask(null);
+        }
+    }
+
+    public static void calculateSearchTimes(EngineContext ctx) {
+        // a search limited by nodes only watches the clock for the deadline
+        int searchTime = ctx.getMaxNodes() > 0 ? Integer.MAX_VALUE : (int) EngineGovernor.scaleBudget(TimeUtils.getSearchTime(ctx.getRemainingTimeMS(), ctx.getIncrementMS()));
+        if (ctx.getDeadline() > 0) {
+            // leave a little room to hand the move back before the deadline passes
+            long timeToDeadline = ctx.getDeadline() - ctx.getStartTime() - 50;
+            searchTime = (int) Math.max(0, Math.min(searchTime, timeToDeadline));
+        }
+        ctx.setMaxTime(searchTime);
+        ctx.setStopTime(ctx.getStartTime() + ctx.getMaxTime());
+        mLog.debug("# calculated search time: " + ctx.getMaxTime());
     }
 
     /**
@@ -142,9 +176,9 @@ public final class SearchIterator {
      *
      * @return
      */
-    public static List<Move> iterate(Board board, boolean testSuiteMode) {
+    public static List<Move> iterate(EngineContext ctx, Board board, boolean testSuiteMode) {
 
-        if (!testSuiteMode && !pondering && useOpeningBook && ChessEngineApp.getOpeningBook() != null) {
+        if (!testSuiteMode && !ctx.isPondering() && ctx.isUseOpeningBook() && ChessEngineApp.getOpeningBook() != null) {
             BookMove bookMove = ChessEngineApp.getOpeningBook().getMoveWeightedRandomByFrequency(board);
             if (bookMove != null) {
                 mLog.debug("# book move: " + bookMove);
@@ -152,6 +186,22 @@ public final class SearchIterator {
             }
         }
 
+        // positions searched at this level before, in this game or an earlier one. only searches
+        // limited by nodes are cached, what a timed search finds depends on how busy the machine was.
+        // only positions right after a capture, pawn move or change of castling rights are cached,
+        // and none close to the fifty move rule: anywhere else the repetition checks in the tree see
+        // the game's history, so what the search finds depends on more than the position.
+        PositionCache positionCache = PositionCache.getInstance();
+        boolean useCache = positionCache != null && !testSuiteMode && !ctx.isPondering() && ctx.getMaxNodes() > 0 && board.getNumReversibleMoves() == 0 && board.getFiftyCounter() < POSITION_CACHE_MAX_FIFTY_COUNTER;
+        int cacheLevel = PositionCache.getLevel(ctx.getMaxNodes(), ctx.getMaxDepth(), ctx.getRandomMargin());
+        if (useCache) {
+            int cachedMove = positionCache.probe(board, cacheLevel, ctx.getRandomMargin() > 0);
+            if (cachedMove != PackedMove.NONE) {
+                mLog.debug("# position cache move: " + PackedMove.toString(cachedMove));
+                return Arrays.asList(PackedMove.toMove(cachedMove));
+            }
+        }
+
         // if just one legal move don't bother searching
         List<Move> moves = MoveGen.genLegalMoves(board);
         mLog.debug("# position has " + moves.size() + " move(s)");
@@ -159,81 +209,155 @@ public final class SearchIterator {
             return Arrays.asList(moves.get(0));
         }
 
-        TranspositionTable.getInstance().clear();
+        ctx.getTranspositionTable().nextAge();
+        ctx.getTranspositionTable().clearStats();
+        ctx.getPawnTranspositionTable().clearStats();
         List<Move> pv = new ArrayList<Move>();
         SearchStats stats = new SearchStats();
-        Search.analysisMode = pondering;
-        Search.abortSearch = false;
-        Search.startTime = System.currentTimeMillis();
+        ctx.setSearchStats(stats);
+        ctx.setAnalysisMode(ctx.isPondering());
+        ctx.setAbortSearch(ctx.isAbortIterator());
+        ctx.setNextTimeCheck(0);
+        ctx.setNodeLimit(EngineGovernor.scaleBudget(ctx.getMaxNodes()));
+        ctx.setRandomSeed(ThreadLocalRandom.current().nextLong());
+        ctx.setStartTime(System.currentTimeMillis());
         if (testSuiteMode) {
-            Search.stopTime = Search.startTime + maxTime;
+            ctx.setStopTime(ctx.getStartTime() + ctx.getMaxTime());
         } else {
-            calculateSearchTimes();
+            calculateSearchTimes(ctx);
         }
         int depth = 0;
         boolean stopSearching = false;
+        int completedDepth = 0;
+        int completedScore = 0;
+
+        ctx.resetHelperNodes();
+        List<SmpHelper> helpers = startHelpers(ctx, board);
+        stats.setNumHelpers(helpers.size());
 
         int score = 0;
-        do {
-            ++depth;
-
-            // aspiration windows
-            int alphaBound = -Constants.INFINITY;
-            int betaBound = Constants.INFINITY;
-            if (depth > 2) {
-                alphaBound = score - (Eval.PAWN_VAL / 3);
-                betaBound = score + (Eval.PAWN_VAL / 3);
-            }
+        try {
+            do {
+                ++depth;
 
-            score = Search.search(pv, alphaBound, betaBound, board, depth, stats, true);
+                // older history counts for less with every iteration
+                if (depth > 1) {
+                    ctx.getHistoryTable().age();
+                }
 
-            if ((score <= alphaBound || score >= betaBound) && !Search.abortSearch) {
-                mLog.debug("# research depth " + depth + "! alpha=" + alphaBound + ", beta=" + betaBound + ", score=" + score);
-                score = Search.search(pv, -Constants.INFINITY, Constants.INFINITY, board, depth, stats, true);
-            }
+                // aspiration windows. on a fail the window is widened on that side, twice as far each time.
+                int delta = ASPIRATION_WINDOW;
+                int alphaBound = -Constants.INFINITY;
+                int betaBound = Constants.INFINITY;
+                if (depth > 2) {
+                    alphaBound = score - delta;
+                    betaBound = score + delta;
+                }
 
-            assert (pv.size() > 0);
-            if (Search.abortSearch) {
-                break;
-            }
+                score = Search.search(ctx, pv, alphaBound, betaBound, board, depth, true);
 
-            if (showThinking) {
-                PrintLine.printLine(pv, depth, score, Search.startTime, stats.getNodes());
-            }
+                while ((score <= alphaBound || score >= betaBound) && !ctx.isAbortSearch()) {
+                    mLog.debug("# research depth " + depth + "! alpha=" + alphaBound + ", beta=" + betaBound + ", score=" + score);
+                    stats.incAspirationResearches();
+                    delta *= 2;
+                    if (score <= alphaBound) {
+                        alphaBound = delta > MAX_ASPIRATION_WINDOW ? -Constants.INFINITY : score - delta;
+                    } else {
+                        betaBound = delta > MAX_ASPIRATION_WINDOW ? Constants.INFINITY : score + delta;
+                    }
+                    score = Search.search(ctx, pv, alphaBound, betaBound, board, depth, true);
+                }
+
+                assert (pv.size() > 0);
+                if (ctx.isAbortSearch()) {
+                    break;
+                }
 
-            stats.setLastPV(pv);
+                if (ctx.isShowThinking()) {
+                    PrintLine.printLine(pv, depth, score, ctx.getStartTime(), stats.getNodes());
+                }
 
-            // LOGGER.debug("# first line: " + PrintLine.getMoveString(stats.getFirstLine()));
+                stats.setLastPV(pv);
+                completedDepth = depth;
+                completedScore = score;
+                stats.addTimeToDepth(System.currentTimeMillis() - ctx.getStartTime());
+                stats.addNodesToDepth(stats.getNodes() + stats.getQNodes());
 
-            // if this is a mate, stop here
-            if (Math.abs(score) > Constants.CHECKMATE - 500) {
-                mLog.debug("# stopping iterative search because mate found");
-                stopSearching = true;
-            }
+                // if this is a mate, stop here
+                if (Math.abs(score) > Constants.CHECKMATE - 500) {
+                    mLog.debug("# stopping iterative search because mate found");
+                    stopSearching = true;
+                }
 
-            if (maxDepth > 0 && depth >= maxDepth) {
-                mLog.debug("# stopping iterative search on depth");
-                stopSearching = true;
-            }
+                if (ctx.getMaxDepth() > 0 && depth >= ctx.getMaxDepth()) {
+                    mLog.debug("# stopping iterative search on depth");
+                    stopSearching = true;
+                }
+
+                // if we've used more than half our time, don't start a new iteration.
+                long elapsedTime = System.currentTimeMillis() - ctx.getStartTime();
+                if (!ctx.isPondering() && !testSuiteMode && elapsedTime > (ctx.getMaxTime() / 2)) {
+                    mLog.debug("# stopping iterative search because half time expired.");
+                    stopSearching = true;
+                }
 
-            // if we've used more than half our time, don't start a new iteration.
-            long elapsedTime = System.currentTimeMillis() - Search.startTime;
-            if (!pondering && !testSuiteMode && elapsedTime > (maxTime / 2)) {
-                mLog.debug("# stopping iterative search because half time expired.");
-                stopSearching = true;
+                // likewise for the node budget
+                if (!ctx.isPondering() && ctx.getNodeLimit() > 0 && stats.getNodes() + stats.getQNodes() + ctx.getHelperNodes() > ctx.getNodeLimit() / 2) {
+                    mLog.debug("# stopping iterative search because half the node budget is used.");
+                    stopSearching = true;
+                }
             }
+            while (!stopSearching);
+        } finally {
+            stopHelpers(helpers, stats);
         }
-        while (!stopSearching);
 
         assert (pv.size() > 0);
         assert (MoveUtils.isLineValid(pv, board));
 
-        printSearchSummary(stats);
+        printSearchSummary(ctx, stats);
+        EngineMetrics.record(ctx, stats, System.currentTimeMillis() - ctx.getStartTime());
+
+        // running out of nodes is how these searches end. one cut short by the clock, a stop or the
+        // engine governor is weaker than its level though.
+        boolean outOfNodes = stats.getNodes() + stats.getQNodes() + ctx.getHelperNodes() >= ctx.getNodeLimit();
+        if (useCache && completedDepth > 0 && (!ctx.isAbortSearch() || outOfNodes) && !ctx.isAbortIterator() && ctx.getNodeLimit() == ctx.getMaxNodes()) {
+            positionCache.store(board.getZobristKey(), cacheLevel, PackedMove.fromMove(board, pv.get(0)), completedScore, completedDepth);
+        }
 
         return pv;
     }
 
-    private static void printSearchSummary(SearchStats stats) {
+    /**
+     * Start the Lazy-SMP helpers for a search, unless other games are waiting for an engine thread,
+     * the {@link EngineGovernor} is holding the engine back, or the search is limited by nodes at a
+     * level without helpers. The nodes helpers search count against the node budget of the search.
+     */
+    private static List<SmpHelper> startHelpers(EngineContext ctx, Board board) {
+        List<SmpHelper> helpers = new ArrayList<SmpHelper>();
+        int numHelpers = EngineExecutor.getNumHelperThreads();
+        if (numHelpers == 0 || (ctx.getMaxNodes() > 0 && !ctx.isUseHelpers()) || !EngineGovernor.isHelpersAllowed() || EngineExecutor.getQueuedTasks() > 0) {
+            return helpers;
+        }
+
+        for (int i = 0; i < numHelpers; i++) {
+            SmpHelper helper = new SmpHelper(ctx, board, i);
+            if (!EngineExecutor.executeHelper(helper)) {
+                break;
+            }
+            helpers.add(helper);
+        }
+        return helpers;
+    }
+
+    private static void stopHelpers(List<SmpHelper> helpers, SearchStats stats) {
+        for (SmpHelper helper : helpers) {
+            helper.stop();
+            stats.addHelperNodes(helper.getNodes());
+        }
+    }
+
+    private static void printSearchSummary(EngineContext ctx, SearchStats stats) {
         DecimalFormat df = new DecimalFormat("0.00");
         DecimalFormat df2 = new DecimalFormat("#,###,##0");
 
@@ -244,12 +368,23 @@ public final class SearchIterator {
         mLog.info("\n");
         mLog.info("# nodes: " + df2.format(totalNodes) + ", interior: " + df2.format(stats.getNodes()) + " (" + df.format(interiorPct) + "%)" + ", quiescense: " + df2.format(stats.getQNodes()) + " (" + df.format(qnodePct) + "%)");
 
-        long totalSearchTime = System.currentTimeMillis() - Search.startTime;
+        long totalSearchTime = System.currentTimeMillis() - ctx.getStartTime();
         mLog.info("# search time: " + totalSearchTime / 1000.0 + " seconds" + ", rate: " + df2.format(totalNodes / (totalSearchTime / 1000.0)) + " nodes per second");
 
-        long hashHits = TranspositionTable.getInstance().getNumHits();
-        long hashProbes = TranspositionTable.getInstance().getNumProbes();
-        long hashCollisions = TranspositionTable.getInstance().getNumCollisions();
+        StringBuilder timeToDepth = new StringBuilder();
+        for (int i = 0; i < stats.getTimeToDepth().size(); i++) {
+            timeToDepth.append(i == 0 ? "" : ", ").append(i + 1).append(": ").append(stats.getTimeToDepth().get(i)).append("ms");
+        }
+        mLog.info("# depth reached: " + stats.getDepth() + ", time to depth: " + timeToDepth);
+
+        if (stats.getNumHelpers() > 0) {
+            long allNodes = totalNodes + stats.getHelperNodes();
+            mLog.info("# lazy smp helpers: " + stats.getNumHelpers() + ", helper nodes: " + df2.format(stats.getHelperNodes()) + ", all threads: " + df2.format(allNodes) + " (" + df2.format(allNodes / (totalSearchTime / 1000.0)) + " nodes per second)");
+        }
+
+        long hashHits = ctx.getTranspositionTable().getNumHits();
+        long hashProbes = ctx.getTranspositionTable().getNumProbes();
+        long hashCollisions = ctx.getTranspositionTable().getNumCollisions();
         double hashHitPct = hashHits / (hashProbes / 100.0);
         double hashCollisionPct = hashCollisions / (hashProbes / 100.0);
 
@@ -258,28 +393,23 @@ public final class SearchIterator {
         double failHighPct = stats.getFailHighs() / (hashProbes / 100.0);
         double failLowPct = stats.getFailLows() / (hashProbes / 100.0);
         double exactScorePct = stats.getHashExactScores() / (hashProbes / 100.0);
+        double firstMoveCutoffPct = stats.getFirstMoveCutoffs() / (stats.getCutoffs() / 100.0);
+        mLog.info("# cutoffs: " + df2.format(stats.getCutoffs()) + ", on first move: " + df2.format(stats.getFirstMoveCutoffs()) + " (" + df.format(firstMoveCutoffPct) + "%)" + ", pvs researches: " + df2.format(stats.getPvsResearches()) + ", aspiration researches: " + df2.format(stats.getAspirationResearches()));
+
         mLog.info("# fail highs: " + df2.format(stats.getFailHighs()) + " (" + df.format(failHighPct) + "%)" + ", fail lows: " + df2.format(stats.getFailLows()) + " (" + df.format(failLowPct) + "%)" + ", exact scores: " + df2.format(stats.getHashExactScores()) + " (" + df.format(exactScorePct) + "%)");
 
-        long pawnHashHits = PawnTranspositionTable.getInstance().getNumHits();
-        long pawnHashProbes = PawnTranspositionTable.getInstance().getNumProbes();
-        long pawnHashCollisions = PawnTranspositionTable.getInstance().getNumCollisions();
+        long pawnHashHits = ctx.getPawnTranspositionTable().getNumHits();
+        long pawnHashProbes = ctx.getPawnTranspositionTable().getNumProbes();
+        long pawnHashCollisions = ctx.getPawnTranspositionTable().getNumCollisions();
         double pawnHashHitPct = pawnHashHits / (pawnHashProbes / 100.0);
         double pawnHashCollisionPct = pawnHashCollisions / (pawnHashProbes / 100.0);
 
         mLog.info("# pawn hash probes: " + df2.format(pawnHashProbes) + ", hits: " + df2.format(pawnHashHits) + " (" + df.format(pawnHashHitPct) + "%)" + ", collisions: " + df2.format(pawnHashCollisions) + " (" + df.format(pawnHashCollisionPct) + "%)");
     }
 
-    public static Move getPonderMove() {
-        return ponderMove;
-    }
-
-    public static boolean isPondering() {
-        return pondering;
-    }
-
-    public static void stopPondering() {
-        pondering = false;
-        Search.analysisMode = false;
+    public static void stopPondering(EngineContext ctx) {
+        ctx.setPondering(false);
+        ctx.setAnalysisMode(false);
     }
 
 }
@@ -0,0 +1,46 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.board.MoveGen;
+
+
+/**
+ * Per-ply storage for a search, allocated once per context: the moves of every node on the
+ * current path with their ordering scores, the quiet moves tried at each node, the triangular PV
+ * table and the PV of the previous iteration. A node at ply <code>p</code> only ever touches row <code>p</code>, so searching
+ * allocates nothing for moves or lines.
+ */
+final class SearchStack {
+
+    static final int MAX_PLY = 128;
+
+    final int[][] moves = new int[MAX_PLY][MoveGen.MAX_MOVES];
+    final int[][] scores = new int[MAX_PLY][MoveGen.MAX_MOVES];
+    final MoveOrderer[] orderers = new MoveOrderer[MAX_PLY];
+    final int[][] quietsTried = new int[MAX_PLY][MoveGen.MAX_MOVES];
+
+    final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    final int[] pvLength = new int[MAX_PLY];
+
+    final int[] lastPV = new int[MAX_PLY];
+    int lastPVLength = 0;
+
+    SearchStack(HistoryTable history) {
+        for (int i = 0; i < MAX_PLY; i++) {
+            orderers[i] = new MoveOrderer(moves[i], scores[i], history);
+        }
+    }
+
+    /**
+     * Make <move> followed by the line found at <code>ply + 1</code> the line at <ply>.
+     */
+    void setPV(int ply, int move) {
+        int[] line = pv[ply];
+        int childLength = ply + 1 < MAX_PLY ? pvLength[ply + 1] : 0;
+        line[0] = move;
+        if (childLength > 0) {
+            System.arraycopy(pv[ply + 1], 0, line, 1, Math.min(childLength, MAX_PLY - 1));
+        }
+        pvLength[ply] = Math.min(childLength + 1, MAX_PLY);
+    }
+}
@@ -12,11 +12,18 @@ public class SearchStats {
     private long failHighs = 0;
     private long failLows = 0;
     private long hashExactScores = 0;
+    private long cutoffs = 0;
+    private long firstMoveCutoffs = 0;
+    private long pvsResearches = 0;
+    private long aspirationResearches = 0;
 
     private long nodes = 0;
     private long qnodes = 0;
+    private long helperNodes = 0;
+    private int numHelpers = 0;
+    private List<Long> timeToDepth = new ArrayList<Long>();
+    private List<Long> nodesToDepth = new ArrayList<Long>();
     private List<Move> lastPV = new ArrayList<Move>();
-    private List<Move> firstLine = new ArrayList<Move>();
 
     public long getFailHighs() {
         return failHighs;
@@ -26,17 +33,37 @@ public class SearchStats {
         return failLows;
     }
 
-    public List<Move> getFirstLine() {
-        return firstLine;
+    public long getHashExactScores() {
+        return hashExactScores;
     }
 
-    public void setFirstLine(List<Move> firstLine) {
-        this.firstLine.clear();
-        this.firstLine.addAll(firstLine);
+    /**
+     * Beta cutoffs in interior nodes, from searching a move (not from the hash table or a null move).
+     */
+    public long getCutoffs() {
+        return cutoffs;
     }
 
-    public long getHashExactScores() {
-        return hashExactScores;
+    /**
+     * Beta cutoffs by the first move searched; the higher the share of all cutoffs, the better the
+     * move ordering.
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Moves searched again with the full window after beating alpha in a null window search.
+     */
+    public long getPvsResearches() {
+        return pvsResearches;
+    }
+
+    /**
+     * Root searches repeated with a wider window after the score fell outside the aspiration window.
+     */
+    public long getAspirationResearches() {
+        return aspirationResearches;
     }
 
     public List<Move> getLastPV() {
@@ -56,6 +83,52 @@ public class SearchStats {
         return qnodes;
     }
 
+    /**
+     * Nodes (interior and quiescence) searched by Lazy-SMP helper threads.
+     */
+    public long getHelperNodes() {
+        return helperNodes;
+    }
+
+    public void addHelperNodes(long helperNodes) {
+        this.helperNodes += helperNodes;
+    }
+
+    public int getNumHelpers() {
+        return numHelpers;
+    }
+
+    public void setNumHelpers(int numHelpers) {
+        this.numHelpers = numHelpers;
+    }
+
+    /**
+     * Milliseconds from the start of the search until each iteration completed; index 0 is depth 1.
+     */
+    public List<Long> getTimeToDepth() {
+        return timeToDepth;
+    }
+
+    public void addTimeToDepth(long ms) {
+        timeToDepth.add(ms);
+    }
+
+    /**
+     * Nodes (interior and quiescence, without helpers) searched until each iteration completed;
+     * index 0 is depth 1.
+     */
+    public List<Long> getNodesToDepth() {
+        return nodesToDepth;
+    }
+
+    public void addNodesToDepth(long nodes) {
+        nodesToDepth.add(nodes);
+    }
+
+    public int getDepth() {
+        return timeToDepth.size();
+    }
+
     public void incFailHighs() {
         failHighs++;
     }
@@ -68,6 +141,21 @@ public class SearchStats {
         hashExactScores++;
     }
 
+    public void incCutoffs(boolean firstMove) {
+        cutoffs++;
+        if (firstMove) {
+            firstMoveCutoffs++;
+        }
+    }
+
+    public void incPvsResearches() {
+        pvsResearches++;
+    }
+
+    public void incAspirationResearches() {
+        aspirationResearches++;
+    }
+
     public void incNodes() {
         nodes++;
     }
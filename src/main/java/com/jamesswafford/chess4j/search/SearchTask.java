@@ -0,0 +1,85 @@
+package com.jamesswafford.chess4j.search;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A unit of engine work for one context, run on the {@link EngineExecutor}. A task that is still
+ * queued when it is stopped never runs at all; a running task is asked to abort and waited for.
+ */
+public final class SearchTask implements Runnable {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int FINISHED = 2;
+    private static final int CANCELLED = 3;
+
+    private final EngineContext ctx;
+    private final Runnable body;
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    SearchTask(EngineContext ctx, Runnable body) {
+        this.ctx = ctx;
+        this.body = body;
+    }
+
+    @Override
+    public void run() {
+        if (!state.compareAndSet(QUEUED, RUNNING)) {
+            return;
+        }
+        try {
+            body.run();
+        } finally {
+            state.set(FINISHED);
+            finished.countDown();
+        }
+    }
+
+    public void stop() {
+        if (abort()) {
+            return;
+        }
+
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Like {@link #stop()}, but never waits for a running task to finish.
+     *
+     * @return true if the task was still queued and will not run at all
+     */
+    public boolean abort() {
+        if (isDone()) {
+            return false;
+        }
+
+        ctx.setAbortIterator(true);
+        ctx.setAbortSearch(true);
+
+        if (state.compareAndSet(QUEUED, CANCELLED)) {
+            EngineExecutor.remove(this);
+            finished.countDown();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isRunning() {
+        return state.get() == RUNNING;
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    public EngineContext getContext() {
+        return ctx;
+    }
+}
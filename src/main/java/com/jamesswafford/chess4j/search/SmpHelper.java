@@ -0,0 +1,76 @@
+package com.jamesswafford.chess4j.search;
+
+
+import com.jamesswafford.chess4j.Constants;
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Lazy-SMP helper. Searches the root position of the main search on its own board copy, killer
+ * table and stats, sharing only the hash tables. Its results are never played; it exists to fill
+ * the shared transposition table with entries the main thread then cuts off on. Helpers start at
+ * staggered depths so they tend to work ahead of the main thread instead of duplicating it.
+ */
+final class SmpHelper implements Runnable {
+    private static final int MAX_DEPTH = 100;
+
+    private final EngineContext ctx;
+    private final Board board;
+    private final int startDepth;
+    private final int maxDepth;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    SmpHelper(EngineContext parent, Board board, int helperNum) {
+        this.ctx = new EngineContext(parent);
+        this.board = board.deepCopy();
+        // odd helpers run one iteration ahead of the main thread
+        this.startDepth = 1 + (helperNum & 1);
+        this.maxDepth = parent.getMaxDepth() > 0 ? parent.getMaxDepth() + 1 : MAX_DEPTH;
+    }
+
+    @Override
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Move> pv = new ArrayList<Move>();
+            for (int depth = startDepth; depth <= maxDepth && !ctx.isAbortSearch(); depth++) {
+                ctx.getHistoryTable().age();
+                Search.search(ctx, pv, -Constants.INFINITY, Constants.INFINITY, board, depth, false);
+                if (!ctx.isAbortSearch()) {
+                    ctx.getSearchStats().setLastPV(pv);
+                }
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Abort the helper and wait for it to return. A helper still waiting for a thread never runs.
+     */
+    void stop() {
+        ctx.setAbortSearch(true);
+        if (started.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getNodes() {
+        SearchStats stats = ctx.getSearchStats();
+        return stats.getNodes() + stats.getQNodes();
+    }
+}
@@ -0,0 +1,62 @@
+package com.jamesswafford.chess4j.utils;
+
+
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.MoveGen;
+
+
+/**
+ * Measures what the engine pays the first time it is used in a JVM: initializing its static tables
+ * (bitboards, magic attack tables, zobrist keys, evaluation tables) and generating the first moves.
+ * <p>
+ * The engine executor runs it once at startup and logs the result. Running {@link #main} in a fresh JVM
+ * gives comparable numbers between versions.
+ */
+public final class ColdStartBenchmark {
+
+    private static final String[] ENGINE_CLASSES = {"com.jamesswafford.chess4j.board.Bitboard", "com.jamesswafford.chess4j.board.Magic", "com.jamesswafford.chess4j.hash.Zobrist", "com.jamesswafford.chess4j.eval.Eval"};
+
+    private ColdStartBenchmark() {
+    }
+
+    /**
+     * Initialize the engine's static state, timing every step.
+     *
+     * @return a one line report, e.g. "Bitboard 2ms, Magic 11ms, ..., total 20ms"
+     */
+    public static String run() {
+        StringBuilder sb = new StringBuilder();
+        long start = System.nanoTime();
+
+        for (String className : ENGINE_CLASSES) {
+            long t0 = System.nanoTime();
+            try {
+                Class.forName(className, true, ColdStartBenchmark.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("engine class missing: " + className, e);
+            }
+            sb.append(className.substring(className.lastIndexOf('.') + 1)).append(' ').append(millisSince(t0)).append("ms, ");
+        }
+
+        long t0 = System.nanoTime();
+        Board board = new Board();
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int numMoves = MoveGen.genLegalMoves(board, moves);
+        for (int i = 0; i < numMoves; i++) {
+            board.applyMove(moves[i]);
+            board.undoLastMove();
+        }
+        sb.append("first move generation ").append(millisSince(t0)).append("ms, ");
+        sb.append("total ").append(millisSince(start)).append("ms");
+
+        return sb.toString();
+    }
+
+    private static long millisSince(long nanoStart) {
+        return (System.nanoTime() - nanoStart) / 1000000L;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("engine cold start: " + run());
+    }
+}
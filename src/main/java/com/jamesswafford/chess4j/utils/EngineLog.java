@@ -0,0 +1,52 @@
+package com.jamesswafford.chess4j.utils;
+
+
+/**
+ * Logging for the engine classes. The engine itself doesn't depend on any host's logging, so it also runs
+ * headless (benchmarks, tools). The host routes messages wherever it likes by installing a {@link Sink};
+ * until one is installed, info messages go to standard out and debug messages are dropped.
+ */
+public final class EngineLog {
+
+    public interface Sink {
+        void info(String message);
+
+        void debug(String message);
+    }
+
+    private static final Sink STDOUT_SINK = new Sink() {
+        @Override
+        public void info(String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public void debug(String message) {
+        }
+    };
+
+    private static final EngineLog INSTANCE = new EngineLog();
+    private static volatile Sink sink = STDOUT_SINK;
+
+    private EngineLog() {
+    }
+
+    public static EngineLog getLog() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param newSink where engine messages go from now on; null restores the default
+     */
+    public static void setSink(Sink newSink) {
+        sink = newSink == null ? STDOUT_SINK : newSink;
+    }
+
+    public void info(Object message) {
+        sink.info(String.valueOf(message));
+    }
+
+    public void debug(Object message) {
+        sink.debug(String.valueOf(message));
+    }
+}
@@ -4,7 +4,6 @@ package com.jamesswafford.chess4j.utils;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.MoveGen;
-import com.jamesswafford.chess4j.board.Undo;
 import com.jamesswafford.chess4j.board.squares.Square;
 import com.jamesswafford.chess4j.pieces.*;
 
@@ -16,8 +15,7 @@ public final class GameStatusChecker {
     private GameStatusChecker() {
     }
 
-    public static GameStatus getGameStatus() {
-        Board b = Board.INSTANCE;
+    public static GameStatus getGameStatus(Board b) {
         List<Move> moves = MoveGen.genLegalMoves(b);
         if (moves.size() == 0) {
             if (b.isPlayerInCheck()) {
@@ -82,17 +80,7 @@ public final class GameStatusChecker {
     }
 
     public static int getNumberPreviousVisits(Board b) {
-        int visits = 0;
-
-        long currentZobristKey = b.getZobristKey();
-        List<Undo> undos = b.getUndos();
-        for (Undo undo : undos) {
-            if (undo.getZobristKey() == currentZobristKey) {
-                visits++;
-            }
-        }
-
-        return visits;
+        return b.getNumRepetitions();
     }
 
     public static boolean isDrawByRep(Board b) {
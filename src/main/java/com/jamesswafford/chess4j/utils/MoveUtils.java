@@ -4,14 +4,13 @@ package com.jamesswafford.chess4j.utils;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.MoveGen;
-import eu.usrv.yamcore.auxiliary.LogHelper;
 
 import java.util.Collections;
 import java.util.List;
 
 
 public final class MoveUtils {
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
 
     private MoveUtils() {
     }
@@ -22,10 +21,10 @@ public final class MoveUtils {
         }
     }
 
-    public static void putMoveAtTop(Move[] moves, Move m) {
+    public static void putMoveAtTop(int[] moves, int numMoves, int m) {
 
-        for (int i = 1; i < moves.length; i++) {
-            if (moves[i].equals(m)) {
+        for (int i = 1; i < numMoves; i++) {
+            if (moves[i] == m) {
                 swap(moves, 0, i);
                 break;
             }
@@ -36,8 +35,8 @@ public final class MoveUtils {
         Collections.swap(moves, ind1, ind2);
     }
 
-    public static void swap(Move[] moves, int ind1, int ind2) {
-        Move tmp = moves[ind1];
+    public static void swap(int[] moves, int ind1, int ind2) {
+        int tmp = moves[ind1];
         moves[ind1] = moves[ind2];
         moves[ind2] = tmp;
     }
@@ -51,10 +50,10 @@ public final class MoveUtils {
         return -1;
     }
 
-    public static int indexOf(Move[] moves, Move move, int from) {
+    public static int indexOf(int[] moves, int numMoves, int move, int from) {
 
-        for (int i = from; i < moves.length; i++) {
-            if (moves[i].equals(move)) {
+        for (int i = from; i < numMoves; i++) {
+            if (moves[i] == move) {
                 return i;
             }
         }
@@ -69,4 +69,83 @@ public class PawnUtils {
         long friends = isWhite ? board.getWhitePawns() : board.getBlackPawns();
         return (isolated[pawnSq.value()] & friends) == 0;
     }
+
+    /*
+     * Whole board versions of the above: each takes the pawns of one side and returns the set of them
+     * with the property, using shifts of the entire bitboard rather than a loop over the pawns. White
+     * moves north, towards the lower square numbers (A8 is 0).
+     */
+
+    private static final long NOT_FILE_A = ~Bitboard.files[File.FILE_A.getValue()];
+    private static final long NOT_FILE_H = ~Bitboard.files[File.FILE_H.getValue()];
+
+    private static long northFill(long b) {
+        b |= b >>> 8;
+        b |= b >>> 16;
+        b |= b >>> 32;
+        return b;
+    }
+
+    private static long southFill(long b) {
+        b |= b << 8;
+        b |= b << 16;
+        b |= b << 32;
+        return b;
+    }
+
+    /**
+     * @return the squares one file to the left or right of <b>
+     */
+    private static long adjacentFiles(long b) {
+        return ((b << 1) & NOT_FILE_A) | ((b >>> 1) & NOT_FILE_H);
+    }
+
+    /**
+     * @return the squares ahead of the pawns on their own files, not including the pawns themselves
+     */
+    private static long frontSpan(long pawns, boolean isWhite) {
+        return isWhite ? northFill(pawns) >>> 8 : southFill(pawns) << 8;
+    }
+
+    private static long attacks(long pawns, boolean isWhite) {
+        return adjacentFiles(isWhite ? pawns >>> 8 : pawns << 8);
+    }
+
+    /**
+     * @return the pawns with no enemy pawn ahead of them on their own or an adjacent file
+     */
+    public static long getPassedPawns(long pawns, long enemyPawns, boolean isWhite) {
+        long enemySpan = frontSpan(enemyPawns, !isWhite);
+        return pawns & ~(enemySpan | adjacentFiles(enemySpan));
+    }
+
+    /**
+     * @return the pawns with no friendly pawn on an adjacent file
+     */
+    public static long getIsolatedPawns(long pawns) {
+        long files = northFill(pawns) | southFill(pawns);
+        return pawns & ~adjacentFiles(files);
+    }
+
+    /**
+     * @return the pawns sharing their file with a friendly pawn, all of them
+     */
+    public static long getDoubledPawns(long pawns) {
+        return pawns & (frontSpan(pawns, true) | frontSpan(pawns, false));
+    }
+
+    /**
+     * @return the pawns that can't advance without being taken by an enemy pawn, and that no friendly
+     * pawn can come to defend, since none of those on the adjacent files is level with or behind them.
+     * Isolated pawns are not included, they are penalized for that already.
+     */
+    public static long getBackwardPawns(long pawns, long enemyPawns, boolean isWhite) {
+        long stops = isWhite ? pawns >>> 8 : pawns << 8;
+        // every square a friendly pawn attacks now or after advancing
+        long attackSpans = attacks(pawns, isWhite);
+        attackSpans |= frontSpan(attackSpans, isWhite);
+        long backwardStops = stops & attacks(enemyPawns, !isWhite) & ~attackSpans;
+        long backward = isWhite ? backwardStops << 8 : backwardStops >>> 8;
+        return backward & ~getIsolatedPawns(pawns);
+    }
 }
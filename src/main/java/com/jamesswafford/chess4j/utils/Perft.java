@@ -4,13 +4,16 @@ package com.jamesswafford.chess4j.utils;
 import com.jamesswafford.chess4j.board.Board;
 import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.board.MoveGen;
-import eu.usrv.yamcore.auxiliary.LogHelper;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import com.jamesswafford.chess4j.board.PackedMove;
+import com.jamesswafford.chess4j.hash.PerftHashTable;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /*	Initial position
 Depth 	Perft(Depth) 	Total Nodes
@@ -36,77 +39,164 @@ Note: this exceeds 32 bits 	8,229,523,927
 */
 
 
-class PerftCallable implements Callable<Long> {
+/**
+ * Counts the leaves below one position. Above the split depth each child position becomes a task of
+ * its own, so idle workers steal subtrees; at or below it the count is done sequentially on the task's
+ * board.
+ */
+class PerftTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
 
-    private Board board;
-    private int depth;
+    private final Board board;
+    private final int depth;
+    private final int splitDepth;
+    private final PerftHashTable hashTable;
 
-    public PerftCallable(Board board, int depth) {
+    PerftTask(Board board, int depth, int splitDepth, PerftHashTable hashTable) {
         this.board = board;
         this.depth = depth;
+        this.splitDepth = splitDepth;
+        this.hashTable = hashTable;
     }
 
-    private long perft(int myDepth) {
+    @Override
+    protected Long compute() {
+        if (depth <= splitDepth) {
+            return perft(new int[Math.max(depth, 1)][MoveGen.MAX_MOVES], depth);
+        }
+
+        long n = probe(depth);
+        if (n >= 0) {
+            return n;
+        }
+
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int numMoves = MoveGen.genLegalMoves(board, moves);
+        List<PerftTask> children = new ArrayList<PerftTask>(numMoves);
+        for (int i = 0; i < numMoves; i++) {
+            Board child = board.deepCopy();
+            child.applyMove(moves[i]);
+            children.add(new PerftTask(child, depth - 1, splitDepth, hashTable));
+        }
+        invokeAll(children);
+
+        n = 0;
+        for (PerftTask child : children) {
+            n += child.join();
+        }
+        store(depth, n);
+        return n;
+    }
+
+    private long perft(int[][] moveStack, int myDepth) {
         if (myDepth <= 0) {
             return 1;
         }
 
-        List<Move> moves = MoveGen.genLegalMoves(board);
-        long n = 0;
+        int[] moves = moveStack[myDepth - 1];
+        if (myDepth == 1) {
+            // bulk count: the leaves are exactly the legal moves
+            return MoveGen.genLegalMoves(board, moves);
+        }
 
-        for (Move m : moves) {
-            board.applyMove(m);
-            n += perft(myDepth - 1);
+        long n = probe(myDepth);
+        if (n >= 0) {
+            return n;
+        }
+
+        int numMoves = MoveGen.genLegalMoves(board, moves);
+        n = 0;
+        for (int i = 0; i < numMoves; i++) {
+            board.applyMove(moves[i]);
+            n += perft(moveStack, myDepth - 1);
             board.undoLastMove();
         }
 
+        store(myDepth, n);
         return n;
     }
 
-    @Override
-    public Long call() throws Exception {
-        return perft(depth);
+    private long probe(int myDepth) {
+        return hashTable == null ? -1 : hashTable.probe(board.getZobristKey(), myDepth);
     }
 
+    private void store(int myDepth, long n) {
+        if (hashTable != null) {
+            hashTable.store(board.getZobristKey(), myDepth, n);
+        }
+    }
 }
 
 
 public final class Perft {
-    private static final Log LOGGERX = LogFactory.getLog(Perft.class);
-    private static LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+    private static final EngineLog mLog = EngineLog.getLog();
+
+    /**
+     * Subtrees this many plies from the leaves or fewer are counted by a single task.
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 3;
 
     private Perft() {
     }
 
     public static long perft(Board b, int depth) {
+        return perft(b, depth, DEFAULT_SPLIT_DEPTH, null);
+    }
+
+    /**
+     * Count the leaves of the move tree <depth> plies deep, on all available processors.
+     *
+     * @param splitDepth subtrees at most this deep are not split further
+     * @param hashTable  table to share subtree counts through, or null to count every subtree
+     */
+    public static long perft(Board b, int depth, int splitDepth, PerftHashTable hashTable) {
         if (depth <= 0) {
             return 1;
         }
 
-        int processors = Runtime.getRuntime().availableProcessors();
-        mLog.info("detected " + processors + " processors.");
-        ExecutorService executor = Executors.newFixedThreadPool(processors);
-        List<Future<Long>> futures = new ArrayList<Future<Long>>();
-        List<Move> moves = MoveGen.genLegalMoves(b);
-
-        for (Move m : moves) {
-            Board b2 = b.deepCopy();
-            b2.applyMove(m);
-            PerftCallable pc = new PerftCallable(b2, depth - 1);
-            futures.add(executor.submit(pc));
+        ForkJoinPool pool = newPool();
+        try {
+            return pool.invoke(new PerftTask(b.deepCopy(), depth, Math.max(splitDepth, 1), hashTable));
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        long n = 0;
+    /**
+     * Like {@link #perft(Board, int, int, PerftHashTable)}, but counted separately for each legal move
+     * of the position, in move generator order. When the counts disagree with a reference, this shows
+     * which move to follow down.
+     */
+    public static Map<Move, Long> divide(Board b, int depth, int splitDepth, PerftHashTable hashTable) {
+        Map<Move, Long> counts = new LinkedHashMap<Move, Long>();
+        if (depth <= 0) {
+            return counts;
+        }
 
-        for (Future<Long> future : futures) {
-            try {
-                n += future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int numMoves = MoveGen.genLegalMoves(b, moves);
+        List<ForkJoinTask<Long>> tasks = new ArrayList<ForkJoinTask<Long>>(numMoves);
+        ForkJoinPool pool = newPool();
+        try {
+            for (int i = 0; i < numMoves; i++) {
+                Board child = b.deepCopy();
+                child.applyMove(moves[i]);
+                tasks.add(pool.submit(new PerftTask(child, depth - 1, Math.max(splitDepth, 1), hashTable)));
             }
+            for (int i = 0; i < numMoves; i++) {
+                counts.put(PackedMove.toMove(moves[i]), tasks.get(i).join());
+            }
+        } finally {
+            pool.shutdown();
         }
 
-        return n;
+        return counts;
+    }
+
+    private static ForkJoinPool newPool() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        mLog.debug("# perft running on " + processors + " processors.");
+        return new ForkJoinPool(processors);
     }
 
 }
@@ -1,16 +1,30 @@
 package eu.usrv.legacylootgames;
 
+import com.jamesswafford.chess4j.eval.KPKBitbase;
+import com.jamesswafford.chess4j.hash.PawnTranspositionTable;
+import com.jamesswafford.chess4j.hash.TranspositionTable;
+import com.jamesswafford.chess4j.search.EngineExecutor;
+import com.jamesswafford.chess4j.search.EngineGovernor;
+import com.jamesswafford.chess4j.utils.EngineLog;
+import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
 import cpw.mods.fml.common.event.FMLServerStartingEvent;
+import cpw.mods.fml.common.event.FMLServerStoppingEvent;
 import cpw.mods.fml.common.registry.GameRegistry;
 import eu.usrv.legacylootgames.auxiliary.ProfilingStorage;
+import eu.usrv.legacylootgames.chess.ChessEngineLogSink;
+import eu.usrv.legacylootgames.chess.ChessEngineProxy;
+import eu.usrv.legacylootgames.chess.ChessTickHandler;
+import eu.usrv.legacylootgames.command.ChessEngineCommand;
 import eu.usrv.legacylootgames.command.PeacefulEntityCommand;
 import eu.usrv.legacylootgames.command.ProfilingCommand;
 import eu.usrv.legacylootgames.gol.blocks.LegacyLightGameBlock;
 import eu.usrv.legacylootgames.gol.tiles.LegacyGameOfLightTile;
 import eu.usrv.legacylootgames.worldgen.LootGamesWorldGen;
 import eu.usrv.yamcore.YAMCore;
+import net.minecraftforge.common.DimensionManager;
 import ru.timeconqueror.lootgames.LootGames;
+import ru.timeconqueror.lootgames.common.config.LGConfigs;
 
 import java.io.IOException;
 import java.util.Random;
@@ -39,11 +53,29 @@ public class LootGamesLegacy {
 
         WorldGen = new LootGamesWorldGen();
         GameRegistry.registerWorldGenerator(WorldGen, Integer.MAX_VALUE);
+
+        EngineLog.setSink(new ChessEngineLogSink());
+        EngineExecutor.setNumThreads(LGConfigs.CHESS.engineThreads);
+        EngineExecutor.setNumHelperThreads(LGConfigs.CHESS.helperThreads);
+        EngineGovernor.setThresholds(LGConfigs.CHESS.throttleTickTime, LGConfigs.CHESS.pauseTickTime);
+        TranspositionTable.setDefaultSize(LGConfigs.CHESS.hashSize, LGConfigs.CHESS.hashBucketSize);
+        PawnTranspositionTable.setDefaultSize(LGConfigs.CHESS.pawnHashSize);
+        FMLCommonHandler.instance().bus().register(new ChessTickHandler());
     }
 
     public static void serverLoad(FMLServerStartingEvent pEvent) {
+        ChessEngineProxy.getInstance().loadOpeningBook();
+        ChessEngineProxy.getInstance().loadPositionCache(DimensionManager.getCurrentSaveRootDirectory());
+        // only servers search, dedicated or integrated, so clients never pay for the engine's tables
+        EngineExecutor.warmUp();
+        KPKBitbase.generateInBackground();
         pEvent.registerServerCommand(new ProfilingCommand());
+        pEvent.registerServerCommand(new ChessEngineCommand());
         if (YAMCore.isDebug())
             pEvent.registerServerCommand(new PeacefulEntityCommand());
     }
+
+    public static void serverStop(FMLServerStoppingEvent pEvent) {
+        ChessEngineProxy.getInstance().savePositionCache();
+    }
 }
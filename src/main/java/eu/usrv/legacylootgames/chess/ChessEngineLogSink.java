@@ -0,0 +1,23 @@
+package eu.usrv.legacylootgames.chess;
+
+
+import com.jamesswafford.chess4j.utils.EngineLog;
+import eu.usrv.yamcore.auxiliary.LogHelper;
+
+
+/**
+ * Sends the chess engine's log messages to the mod log.
+ */
+public class ChessEngineLogSink implements EngineLog.Sink {
+    private final LogHelper mLog = new LogHelper("LootGames - ChessEngine");
+
+    @Override
+    public void info(String message) {
+        mLog.info(message);
+    }
+
+    @Override
+    public void debug(String message) {
+        mLog.debug(message);
+    }
+}
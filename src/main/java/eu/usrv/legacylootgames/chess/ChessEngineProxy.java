@@ -1,14 +1,29 @@
 package eu.usrv.legacylootgames.chess;
 
 
+import com.jamesswafford.chess4j.ChessEngineApp;
+import com.jamesswafford.chess4j.board.Board;
+import com.jamesswafford.chess4j.board.Move;
 import com.jamesswafford.chess4j.exceptions.IllegalMoveException;
 import com.jamesswafford.chess4j.exceptions.ParseException;
+import com.jamesswafford.chess4j.hash.PositionCache;
 import com.jamesswafford.chess4j.io.InputParser;
+import com.jamesswafford.chess4j.search.Difficulty;
+import com.jamesswafford.chess4j.search.EngineContext;
+import com.jamesswafford.chess4j.search.SearchIterator;
 import ru.timeconqueror.lootgames.LootGames;
+import ru.timeconqueror.lootgames.common.config.LGConfigs;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
 
 
 interface IChessEventListener {
@@ -16,39 +31,242 @@ interface IChessEventListener {
 }
 
 public class ChessEngineProxy {
+    private static final String POSITION_CACHE_FILE = "lootgames_chess_positions.dat";
     private static ChessEngineProxy _mInstance;
-    private UUID _mCurrentAttachedChessGame = null;
-    private final List<IChessEventListener> listeners = new ArrayList<IChessEventListener>();
+    private final Map<UUID, InputParser> _mAttachedChessGames = new ConcurrentHashMap<UUID, InputParser>();
+    private final List<IChessEventListener> listeners = new CopyOnWriteArrayList<IChessEventListener>();
+    private final Map<UUID, EngineMoveFuture> _mPendingMoves = new ConcurrentHashMap<UUID, EngineMoveFuture>();
+    private final Queue<Runnable> _mServerThreadTasks = new ConcurrentLinkedQueue<Runnable>();
+    private File _mPositionCacheFile;
 
     private ChessEngineProxy() {
     }
 
-    public static ChessEngineProxy getInstance() {
+    public static synchronized ChessEngineProxy getInstance() {
         if (_mInstance == null)
             _mInstance = new ChessEngineProxy();
 
         return _mInstance;
     }
 
+    /**
+     * Attach a new chess game to the engine. Every game gets its own {@link EngineContext}, so any
+     * number of games can think at the same time.
+     */
     public UUID getEngineToken() {
-        if (_mCurrentAttachedChessGame != null)
-            return null;
-        else
-            _mCurrentAttachedChessGame = UUID.randomUUID();
+        UUID tToken = UUID.randomUUID();
+        _mAttachedChessGames.put(tToken, new InputParser(new EngineContext(tToken)));
 
-        return _mCurrentAttachedChessGame;
+        return tToken;
     }
 
-    public void resetEngine() {
-        sendCommand("force");
-        sendCommand("new");
-        sendCommand("level 10 99 0");
-        sendCommand("easy");
+    /**
+     * @return whether any game has a board keyed with the engine's current Zobrist keys
+     */
+    public boolean hasAttachedGames() {
+        return !_mAttachedChessGames.isEmpty();
     }
 
-    private boolean sendCommand(String pCommand) {
+    /**
+     * Stop any search running for the given game and drop its context
+     */
+    public void releaseEngineToken(UUID pToken) {
+        InputParser tParser = _mAttachedChessGames.remove(pToken);
+        if (tParser != null)
+            sendCommand(tParser, "force");
+
+        EngineMoveFuture tPending = _mPendingMoves.remove(pToken);
+        if (tPending != null)
+            tPending.cancel(false);
+    }
+
+    public EngineContext getEngineContext(UUID pToken) {
+        InputParser tParser = _mAttachedChessGames.get(pToken);
+        return tParser == null ? null : tParser.getContext();
+    }
+
+    public EngineMoveFuture requestMove(UUID pToken) {
+        return requestMove(pToken, LGConfigs.CHESS.moveTimeout * 1000L);
+    }
+
+    /**
+     * Ask the engine for a move in the current position of the given game. The search is queued on
+     * the shared engine executor; the returned future is always completed on the server thread, from
+     * {@link #processServerThreadTasks()}, with the move already applied to the game's board.
+     * <p>
+     * The future fails with a {@link TimeoutException} once the deadline passes, a search still queued
+     * for it is dropped then. It is cancelled if the game's position changes or the search is stopped
+     * while the engine thinks, or if a newer request for the same game replaces it.
+     *
+     * @param pToken     the game's engine token
+     * @param pTimeoutMS how long, from now, the engine may take to answer
+     */
+    public EngineMoveFuture requestMove(final UUID pToken, long pTimeoutMS) {
+        final long tDeadline = System.currentTimeMillis() + pTimeoutMS;
+        final EngineMoveFuture tFuture = new EngineMoveFuture(pToken, tDeadline);
+        final EngineContext tContext = getEngineContext(pToken);
+        if (tContext == null) {
+            tFuture.completeExceptionally(new IllegalStateException("No chess game attached for token " + pToken));
+            return tFuture;
+        }
+
+        SearchIterator.stop(tContext);
+        EngineMoveFuture tPrevious = _mPendingMoves.put(pToken, tFuture);
+        if (tPrevious != null)
+            tPrevious.cancel(false);
+        tFuture.whenComplete((pMove, pError) -> _mPendingMoves.remove(pToken, tFuture));
+
+        final Board tSearchPos = tContext.getBoard().deepCopy();
+        tContext.setDeadline(tDeadline);
+
+        tFuture.setTask(SearchIterator.submit(tContext, () -> {
+            if (System.currentTimeMillis() >= tDeadline) {
+                runOnServerThread(() -> tFuture.completeExceptionally(new TimeoutException("Chess engine request for " + pToken + " expired in queue")));
+                return;
+            }
+
+            final Move tMove = SearchIterator.iterate(tContext, tSearchPos, false).get(0);
+            if (tContext.isAbortIterator()) {
+                runOnServerThread(() -> tFuture.cancel(false));
+                return;
+            }
+
+            runOnServerThread(() -> {
+                if (tFuture.isDone())
+                    return;
+
+                if (getEngineContext(pToken) != tContext || !tContext.getBoard().equals(tSearchPos)) {
+                    tFuture.cancel(false);
+                    return;
+                }
+
+                tContext.getBoard().applyMove(tMove);
+                tFuture.complete(tMove);
+                publishAnswer(pToken, "move " + tMove);
+            });
+        }));
+
+        return tFuture;
+    }
+
+    /**
+     * Hand results from the engine threads over to the caller's thread, and fail the requests whose
+     * deadline has passed. Called once per server tick.
+     */
+    public void processServerThreadTasks() {
+        long tNow = System.currentTimeMillis();
+        for (EngineMoveFuture tPending : _mPendingMoves.values()) {
+            if (tNow < tPending.getDeadline())
+                continue;
+
+            // a search that is running already stops by itself at the deadline, don't wait for it here
+            if (tPending.getTask() != null)
+                tPending.getTask().abort();
+            tPending.completeExceptionally(new TimeoutException("Chess engine request for " + tPending.getToken() + " timed out"));
+        }
+
+        Runnable tTask;
+        while ((tTask = _mServerThreadTasks.poll()) != null) {
+            try {
+                tTask.run();
+            } catch (Exception e) {
+                LootGames.LOGGER.error("Chess engine callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Run the given task on the server thread, during the next {@link #processServerThreadTasks()}.
+     * Engine threads use this for everything that touches a game's board or its listeners.
+     */
+    public void runOnServerThread(Runnable pTask) {
+        _mServerThreadTasks.add(pTask);
+    }
+
+    /**
+     * Start a new game. The engine's strength comes from the configured {@link Difficulty} preset,
+     * which limits every search by nodes and depth rather than by time.
+     */
+    public void resetEngine(UUID pToken) {
+        sendCommand(pToken, "force");
+        sendCommand(pToken, "new");
+        sendCommand(pToken, "difficulty " + LGConfigs.CHESS.difficulty);
+        sendCommand(pToken, "easy");
+
+        InputParser tParser = _mAttachedChessGames.get(pToken);
+        if (tParser != null)
+            tParser.getContext().setUseOpeningBook(ChessEngineApp.getOpeningBook() != null);
+    }
+
+    /**
+     * Open the opening book set in the config, if any. Opened before the position cache, as a book
+     * may switch the engine's Zobrist keys; a book that would while games are attached is refused.
+     */
+    public void loadOpeningBook() {
+        if (LGConfigs.CHESS.openingBook.isEmpty())
+            return;
+
+        try {
+            ChessEngineApp.initBook(LGConfigs.CHESS.openingBook, hasAttachedGames());
+            LootGames.LOGGER.info("Opened chess opening book " + LGConfigs.CHESS.openingBook);
+        } catch (Exception e) {
+            LootGames.LOGGER.error("Unable to open the chess opening book " + LGConfigs.CHESS.openingBook + ", playing without one", e);
+        }
+    }
+
+    /**
+     * Load the engine's position cache of the world in <pWorldDir>, creating an empty cache if there
+     * is no file yet. Does nothing if the cache is disabled.
+     */
+    public void loadPositionCache(File pWorldDir) {
+        if (LGConfigs.CHESS.positionCacheSize == 0) {
+            PositionCache.setInstance(null);
+            _mPositionCacheFile = null;
+            return;
+        }
+
+        PositionCache tCache = new PositionCache(LGConfigs.CHESS.positionCacheSize);
+        _mPositionCacheFile = new File(pWorldDir, POSITION_CACHE_FILE);
+        if (_mPositionCacheFile.exists()) {
+            try {
+                int tEntries = tCache.load(_mPositionCacheFile);
+                LootGames.LOGGER.info("Loaded " + tEntries + " chess positions from " + _mPositionCacheFile);
+            } catch (IOException e) {
+                LootGames.LOGGER.error("Unable to read the chess position cache, starting with an empty one", e);
+            }
+        }
+        PositionCache.setInstance(tCache);
+    }
+
+    /**
+     * Save the position cache to the world it was loaded from and drop it.
+     */
+    public void savePositionCache() {
+        PositionCache tCache = PositionCache.getInstance();
+        PositionCache.setInstance(null);
+        if (tCache == null || _mPositionCacheFile == null)
+            return;
+
+        try {
+            tCache.save(_mPositionCacheFile);
+        } catch (IOException e) {
+            LootGames.LOGGER.error("Unable to save the chess position cache", e);
+        }
+        _mPositionCacheFile = null;
+    }
+
+    public boolean sendCommand(UUID pToken, String pCommand) {
+        InputParser tParser = _mAttachedChessGames.get(pToken);
+        if (tParser == null) {
+            LootGames.LOGGER.error("No chess game attached for token " + pToken);
+            return false;
+        }
+        return sendCommand(tParser, pCommand);
+    }
+
+    private boolean sendCommand(InputParser pParser, String pCommand) {
         try {
-            InputParser.getInstance().parseCommand(pCommand);
+            pParser.parseCommand(pCommand);
         } catch (IllegalMoveException ime) {
             LootGames.LOGGER.error("Illegal move");
         } catch (ParseException pe) {
@@ -63,8 +281,8 @@ public class ChessEngineProxy {
         listeners.add(toAdd);
     }
 
-    public void publishAnswer(String pMessage) {
+    public void publishAnswer(UUID pToken, String pMessage) {
         for (IChessEventListener hl : listeners)
-            hl.chessEngineMessage(_mCurrentAttachedChessGame, pMessage);
+            hl.chessEngineMessage(pToken, pMessage);
     }
-}
\ No newline at end of file
+}
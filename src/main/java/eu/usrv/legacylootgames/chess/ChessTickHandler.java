@@ -0,0 +1,22 @@
+package eu.usrv.legacylootgames.chess;
+
+
+import com.jamesswafford.chess4j.search.EngineGovernor;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+
+
+public class ChessTickHandler {
+    private long mTickStart;
+
+    @SubscribeEvent
+    public void serverTickEvent(TickEvent.ServerTickEvent pEvent) {
+        if (pEvent.phase == TickEvent.Phase.START) {
+            mTickStart = System.nanoTime();
+        } else if (pEvent.phase == TickEvent.Phase.END) {
+            ChessEngineProxy.getInstance().processServerThreadTasks();
+            if (mTickStart != 0)
+                EngineGovernor.onServerTick(System.nanoTime() - mTickStart);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package eu.usrv.legacylootgames.chess;
+
+
+import com.jamesswafford.chess4j.board.Move;
+import com.jamesswafford.chess4j.search.SearchTask;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * The engine's answer for one game, tagged with that game's token
+ */
+public class EngineMoveFuture extends CompletableFuture<Move> {
+    private final UUID _mToken;
+    private final long _mDeadline;
+    private SearchTask _mTask;
+
+    public EngineMoveFuture(UUID pToken, long pDeadline) {
+        _mToken = pToken;
+        _mDeadline = pDeadline;
+    }
+
+    public UUID getToken() {
+        return _mToken;
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, by which the engine has to answer
+     */
+    public long getDeadline() {
+        return _mDeadline;
+    }
+
+    SearchTask getTask() {
+        return _mTask;
+    }
+
+    void setTask(SearchTask pTask) {
+        _mTask = pTask;
+    }
+}
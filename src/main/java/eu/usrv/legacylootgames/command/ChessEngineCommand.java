@@ -0,0 +1,80 @@
+package eu.usrv.legacylootgames.command;
+
+
+import com.jamesswafford.chess4j.search.EngineGovernor;
+import com.jamesswafford.chess4j.search.EngineMetrics;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.util.ChatComponentText;
+import net.minecraftforge.common.DimensionManager;
+import ru.timeconqueror.lootgames.LootGames;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Shows what the chess engine has been doing: search statistics, time to depth and the current load.
+ * The statistics of the latest searches can be dumped to a CSV file in the world folder.
+ */
+public class ChessEngineCommand extends CommandBase {
+    private static final String USAGE = "/lootgameschess <stats|depth|load|dump|reset>";
+    private static final String[] SUB_COMMANDS = {"stats", "depth", "load", "dump", "reset"};
+    private static final String METRICS_FILE = "lootgames_chess_metrics.csv";
+
+    @Override
+    public String getCommandName() {
+        return "lootgameschess";
+    }
+
+    @Override
+    public String getCommandUsage(ICommandSender pCommandSender) {
+        return USAGE;
+    }
+
+    @Override
+    public void processCommand(ICommandSender pCommandSender, String[] pArgs) {
+        String tSubCommand = pArgs.length == 0 ? "stats" : pArgs[0];
+
+        if (tSubCommand.equals("stats")) {
+            send(pCommandSender, EngineMetrics.getSummary());
+        } else if (tSubCommand.equals("depth")) {
+            List<String> tLines = EngineMetrics.getTimeToDepth();
+            if (tLines.isEmpty())
+                tLines.add("No searches recorded yet");
+            send(pCommandSender, tLines);
+        } else if (tSubCommand.equals("load")) {
+            pCommandSender.addChatMessage(new ChatComponentText(EngineGovernor.getLoad()));
+        } else if (tSubCommand.equals("dump")) {
+            File tFile = new File(DimensionManager.getCurrentSaveRootDirectory(), METRICS_FILE);
+            try {
+                int tSearches = EngineMetrics.writeCSV(tFile);
+                pCommandSender.addChatMessage(new ChatComponentText(String.format("Wrote %d searches to %s", tSearches, tFile.getName())));
+            } catch (IOException e) {
+                LootGames.LOGGER.error("Unable to write the chess engine metrics", e);
+                pCommandSender.addChatMessage(new ChatComponentText("Unable to write " + tFile.getName() + ", see the server log"));
+            }
+        } else if (tSubCommand.equals("reset")) {
+            EngineMetrics.reset();
+            pCommandSender.addChatMessage(new ChatComponentText("Chess engine metrics reset"));
+        } else {
+            throw new WrongUsageException(USAGE);
+        }
+    }
+
+    private static void send(ICommandSender pCommandSender, List<String> pLines) {
+        for (String tLine : pLines)
+            pCommandSender.addChatMessage(new ChatComponentText(tLine));
+    }
+
+    @Override
+    public List<String> addTabCompletionOptions(ICommandSender sender, String[] args) {
+        if (args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, SUB_COMMANDS);
+        }
+
+        return null;
+    }
+}
@@ -104,6 +104,11 @@ public class LootGames {
         event.registerServerCommand(new LootGamesCommand());
     }
 
+    @Mod.EventHandler
+    public void onServerStopping(FMLServerStoppingEvent event) {
+        LootGamesLegacy.serverStop(event);
+    }
+
     public static String namespaced(String name) {
         return LootGames.MODID + ":" + name;
     }
@@ -0,0 +1,62 @@
+package ru.timeconqueror.lootgames.common.config;
+
+import ru.timeconqueror.timecore.api.common.config.Config;
+
+public class ConfigChess extends Config {
+    public int engineThreads;
+    public int moveTimeout;
+    public int helperThreads;
+    public int hashSize;
+    public int hashBucketSize;
+    public int pawnHashSize;
+    public String difficulty;
+    public int throttleTickTime;
+    public int pauseTickTime;
+    public int positionCacheSize;
+    public String openingBook;
+
+    public ConfigChess() {
+        super(Names.CATEGORY_CHESS);
+    }
+
+    @Override
+    public void init() {
+        engineThreads = config.getInt(Names.ENGINE_THREADS, getKey(), 0, 0, 64, "How many threads the chess engine may use for all chess games together. Searches beyond that wait in line.\nSet to 0 to use the number of CPU cores minus two (at least one).");
+        moveTimeout = config.getInt(Names.MOVE_TIMEOUT, getKey(), 10, 1, 300, "How long the engine may take to answer a move, counted from the request. Includes time spent waiting for a free engine thread. Value is in seconds.");
+        helperThreads = config.getInt(Names.HELPER_THREADS, getKey(), 0, 0, 63, "Extra threads helping a single search (Lazy-SMP). They share the game's transposition table and are only used while no other game waits for an engine thread. Only the EXPERT difficulty uses them, and the nodes they search count against its budget, so they make it answer sooner without costing more CPU per move.\nSet to 0 to disable.");
+        hashSize = config.getInt(Names.HASH_SIZE, getKey(), 8, 1, 1024, "Size of the transposition table of each chess game, in megabytes. Every running game allocates its own table.");
+        hashBucketSize = config.getInt(Names.HASH_BUCKET_SIZE, getKey(), 4, 2, 4, "How many entries share one transposition table bucket. Valid options: 2, 4");
+        if (hashBucketSize != 2 && hashBucketSize != 4)
+            hashBucketSize = 4;
+        pawnHashSize = config.getInt(Names.PAWN_HASH_SIZE, getKey(), 1, 1, 256, "Size of the pawn structure hash table of each chess game, in megabytes. Every running game allocates its own table.");
+
+        difficulty = config.getString(Names.DIFFICULTY, getKey(), "MEDIUM", "How strong the chess engine plays. Every level caps the nodes and depth searched per move, so a move costs the same CPU time however busy the server is. The lower levels also pick at random among nearly equal moves.\nValid options: BEGINNER (3k nodes), EASY (15k), MEDIUM (60k), HARD (250k), EXPERT (1M, shared with helper_threads)", new String[]{"BEGINNER", "EASY", "MEDIUM", "HARD", "EXPERT"});
+        throttleTickTime = config.getInt(Names.THROTTLE_TICK_TIME, getKey(), 35, 0, 1000, "While server ticks take longer than this on average, new chess searches only get half their budget and no helper threads. Value is in milliseconds; a tick has 50 to stay at 20 TPS.\nSet to 0 to disable.");
+        pauseTickTime = config.getInt(Names.PAUSE_TICK_TIME, getKey(), 50, 0, 1000, "While server ticks take longer than this on average, running chess searches pause until the server has recovered. A paused search still answers before its move timeout. Value is in milliseconds.\nSet to 0 to disable.");
+        positionCacheSize = config.getInt(Names.POSITION_CACHE_SIZE, getKey(), 65536, 0, 4194304, "How many positions the engine remembers its answers for, across games and restarts (saved in the world folder). Common positions, like the first moves of a game, are then answered without searching. Every position takes about 80 bytes.\nSet to 0 to disable.");
+        openingBook = config.getString(Names.OPENING_BOOK, getKey(), "", "Opening book the engine plays its first moves from, relative to the server folder. Files ending in .bin are binary books, built from PGN files or SQLite books with the engine's book2bin command; anything else is opened as an SQLite book.\nLeave empty to play without a book.");
+
+        config.setCategoryComment(getKey(), "Regulates the chess engine.");
+    }
+
+    @Override
+    public String getRelativePath() {
+        return LGConfigs.resolve("games/" + getKey());
+    }
+
+    public static class Names {
+        public static final String CATEGORY_CHESS = "chess";
+
+        public static final String ENGINE_THREADS = "engine_threads";
+        public static final String MOVE_TIMEOUT = "move_timeout";
+        public static final String HELPER_THREADS = "helper_threads";
+        public static final String HASH_SIZE = "hash_size";
+        public static final String HASH_BUCKET_SIZE = "hash_bucket_size";
+        public static final String PAWN_HASH_SIZE = "pawn_hash_size";
+        public static final String DIFFICULTY = "difficulty";
+        public static final String THROTTLE_TICK_TIME = "throttle_tick_time";
+        public static final String PAUSE_TICK_TIME = "pause_tick_time";
+        public static final String POSITION_CACHE_SIZE = "position_cache_size";
+        public static final String OPENING_BOOK = "opening_book";
+    }
+}
@@ -8,6 +8,7 @@ public class LGConfigs {
     public static final ConfigMS MINESWEEPER = new ConfigMS();
     public static final ConfigGOL GOL = new ConfigGOL();
     public static final ConfigRewards REWARDS = new ConfigRewards();
+    public static final ConfigChess CHESS = new ConfigChess();
 
     public static String resolve(String path) {
         return LootGames.MODID + "/" + path + ".cfg";
@@ -22,5 +23,6 @@ public class LGConfigs {
         MINESWEEPER.load();
         GOL.load();
         REWARDS.load();
+        CHESS.load();
     }
 }
\ No newline at end of file